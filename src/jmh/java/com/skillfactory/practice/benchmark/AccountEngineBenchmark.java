@@ -0,0 +1,84 @@
+package com.skillfactory.practice.benchmark;
+
+import com.skillfactory.practice.service.AccountEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Пропускная способность движка счетов: изменения балансов, подтверждённые журналом (fsync на пакет),
+// без БД (AccountEngine.standalone) - клиенты загружаются из памяти, фоновая запись в БД отключена. Устойчивую скорость на реальной БД
+// ограничивает фоновая запись, её отставание видно по метрике engine.unpersisted.
+// Команды подаются конвейером по PIPELINE без ожидания каждой: так работают много одновременных запросов
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountEngineBenchmark {
+
+    private static final int CUSTOMERS = 100_000;
+    private static final int PIPELINE = 10_000;
+    private static final long INITIAL_BALANCE = 1_000_000_000_00L;
+
+    @Param({"1", "4", "8"})
+    public int shards;
+
+    private AccountEngine engine;
+    private Path journalDir;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final CompletableFuture<?>[] pending = new CompletableFuture<?>[PIPELINE];
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        journalDir = Files.createTempDirectory("engine-benchmark");
+        engine = AccountEngine.standalone(shards, journalDir, INITIAL_BALANCE, new SimpleMeterRegistry());
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        engine.stop();
+        FileSystemUtils.deleteRecursively(journalDir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE)
+    public void deposits() {
+        for (int i = 0; i < PIPELINE; i++) {
+            long customerId = random.nextInt(CUSTOMERS);
+            pending[i] = engine.deposit(customerId, 1_00);
+        }
+        CompletableFuture.allOf(pending).join();
+    }
+
+    // Случайные пары клиентов: при нескольких шардах большинство переводов идут между шардами
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE)
+    public void transfers() {
+        for (int i = 0; i < PIPELINE; i++) {
+            long senderId = random.nextInt(CUSTOMERS);
+            long recipientId = random.nextInt(CUSTOMERS);
+            pending[i] = engine.transfer(senderId, recipientId, 1_00);
+        }
+        CompletableFuture.allOf(pending).join();
+    }
+}
@@ -0,0 +1,73 @@
+package com.skillfactory.practice.benchmark;
+
+import com.skillfactory.practice.PracticeApplication;
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.service.CustomerService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Контекст приложения на локальной PostgreSQL (настройки из application.properties,
+// переопределяются -Dspring.datasource.url=...) и набор клиентов, создаваемый на время прогона
+@State(Scope.Benchmark)
+public class ApplicationState {
+
+    static final int CUSTOMERS = 1000;
+    static final int HISTORY_SIZE = 1000;
+
+    // Баланс, которого хватает на все списания за прогон
+    private static final Money INITIAL_BALANCE = Money.of("1000000000.00");
+
+    ConfigurableApplicationContext context;
+    CustomerService customerService;
+    long[] customerIds;
+    // Клиент с историей из HISTORY_SIZE операций для чтения истории
+    long historyCustomerId;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(PracticeApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("app.generator.mode=off", "spring.jpa.show-sql=false", "logging.level.root=warn")
+                .run();
+        customerService = context.getBean(CustomerService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        CustomerRepository customerRepository = context.getBean(CustomerRepository.class);
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers.add(new Customer(INITIAL_BALANCE));
+        }
+        customerIds = customerRepository.saveAll(customers).stream().mapToLong(Customer::getId).toArray();
+
+        historyCustomerId = customerRepository.save(new Customer(INITIAL_BALANCE)).getId();
+        jdbcTemplate.update("insert into operations (customer_id, type, amount, created_at)"
+                + " select ?, 'DEPOSIT', 1.00, now() - make_interval(secs => g) from generate_series(1, ?) g",
+                historyCustomerId, HISTORY_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        Long[] ids = new Long[customerIds.length + 1];
+        for (int i = 0; i < customerIds.length; i++) {
+            ids[i] = customerIds[i];
+        }
+        ids[customerIds.length] = historyCustomerId;
+        jdbcTemplate.update("delete from operations where customer_id = any(?)", (Object) ids);
+        jdbcTemplate.update("delete from customer where id = any(?)", (Object) ids);
+        context.close();
+    }
+}
@@ -0,0 +1,42 @@
+package com.skillfactory.practice.benchmark;
+
+import com.skillfactory.practice.entity.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Встречные переводы восьми потоков между несколькими «горячими» клиентами:
+// стоимость ожидания блокировок клиента и строк в БД
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ContendedTransferBenchmark {
+
+    private static final Money AMOUNT = Money.of("1.00");
+
+    @Param({"2", "8"})
+    public int hotCustomers;
+
+    @Benchmark
+    public boolean transferMoney(ApplicationState state) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long senderId = state.customerIds[random.nextInt(hotCustomers)];
+        long recipientId = state.customerIds[random.nextInt(hotCustomers)];
+        return state.customerService.transferMoney(senderId, recipientId, AMOUNT);
+    }
+}
@@ -0,0 +1,86 @@
+package com.skillfactory.practice.benchmark;
+
+import com.skillfactory.practice.dto.OperationHistory;
+import com.skillfactory.practice.dto.OperationView;
+import com.skillfactory.practice.entity.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Основные операции CustomerService на случайных клиентах из ApplicationState.
+// Пропускная способность в операциях в секунду, с -prof gc - ещё и выделение памяти на операцию
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerServiceBenchmark {
+
+    private static final Money AMOUNT = Money.of("1.00");
+
+    private final LocalDateTime closedUntil = LocalDateTime.now().minusMinutes(11);
+
+    @Benchmark
+    public Optional<Money> getBalance(ApplicationState state) {
+        return state.customerService.getBalance(randomCustomer(state));
+    }
+
+    @Benchmark
+    public void putMoney(ApplicationState state) {
+        state.customerService.putMoney(randomCustomer(state), AMOUNT);
+    }
+
+    @Benchmark
+    public boolean takeMoney(ApplicationState state) {
+        return state.customerService.takeMoney(randomCustomer(state), AMOUNT);
+    }
+
+    // Переводы между случайными клиентами: конфликты по блокировкам редки
+    @Benchmark
+    @Threads(4)
+    public boolean transferMoney(ApplicationState state) {
+        long senderId = randomCustomer(state);
+        long recipientId = randomCustomer(state);
+        return state.customerService.transferMoney(senderId, recipientId, AMOUNT);
+    }
+
+    @Benchmark
+    public List<OperationView> getOperationList(ApplicationState state) {
+        return state.customerService.getOperationList(state.historyCustomerId, null, null);
+    }
+
+    // Опрос панели за прошлый период (около 400 операций истории старше closed-after): чтение из БД
+    // против ответа из кэша закрытых периодов и против повтора с If-None-Match (только версия)
+    @Benchmark
+    public List<OperationView> getOperationListClosed(ApplicationState state) {
+        return state.customerService.getOperationList(state.historyCustomerId, null, closedUntil);
+    }
+
+    @Benchmark
+    public OperationHistory getOperationHistoryClosed(ApplicationState state) {
+        return state.customerService.getOperationHistory(state.historyCustomerId, null, closedUntil, version -> false);
+    }
+
+    @Benchmark
+    public OperationHistory getOperationHistoryNotModified(ApplicationState state) {
+        return state.customerService.getOperationHistory(state.historyCustomerId, null, closedUntil, version -> true);
+    }
+
+    private static long randomCustomer(ApplicationState state) {
+        return state.customerIds[ThreadLocalRandom.current().nextInt(state.customerIds.length)];
+    }
+}
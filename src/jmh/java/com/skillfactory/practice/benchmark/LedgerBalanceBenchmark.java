@@ -0,0 +1,83 @@
+package com.skillfactory.practice.benchmark;
+
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.service.LedgerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// Чтение баланса по журналу операций у клиента с длинной историей: со снимком (снимок + хвост
+// из TAIL операций) и без снимков (сумма всей истории)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LedgerBalanceBenchmark {
+
+    private static final int TAIL = 50;
+
+    @Param({"1000", "100000"})
+    public int historySize;
+
+    private LedgerService ledgerService;
+    private JdbcTemplate jdbcTemplate;
+    // Клиенты с одинаковой историей: у первого есть снимок, у второго нет
+    private long snapshotCustomerId;
+    private long plainCustomerId;
+
+    @Setup(Level.Trial)
+    public void createHistory(ApplicationState state) {
+        ledgerService = state.context.getBean(LedgerService.class);
+        jdbcTemplate = state.context.getBean(JdbcTemplate.class);
+        CustomerRepository customerRepository = state.context.getBean(CustomerRepository.class);
+
+        snapshotCustomerId = customerRepository.save(new Customer(Money.ZERO)).getId();
+        plainCustomerId = customerRepository.save(new Customer(Money.ZERO)).getId();
+
+        insertOperations(snapshotCustomerId, historySize - TAIL);
+        ledgerService.takeSnapshots(snapshotCustomerId, snapshotCustomerId);
+        insertOperations(snapshotCustomerId, TAIL);
+        insertOperations(plainCustomerId, historySize);
+        jdbcTemplate.execute("analyze operations");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteHistory() {
+        jdbcTemplate.update("delete from operations where customer_id in (?, ?)", snapshotCustomerId, plainCustomerId);
+        jdbcTemplate.update("delete from customer where id in (?, ?)", snapshotCustomerId, plainCustomerId);
+    }
+
+    @Benchmark
+    public Optional<BigDecimal> withSnapshot() {
+        return ledgerService.getLedgerBalance(snapshotCustomerId);
+    }
+
+    @Benchmark
+    public Optional<BigDecimal> withoutSnapshot() {
+        return ledgerService.getLedgerBalance(plainCustomerId);
+    }
+
+    private void insertOperations(long customerId, int count) {
+        jdbcTemplate.update("insert into operations (customer_id, type, amount, created_at)"
+                + " select ?, 'DEPOSIT', 1.00, now() from generate_series(1, ?)", customerId, count);
+    }
+}
@@ -0,0 +1,81 @@
+package com.skillfactory.practice.benchmark;
+
+import com.skillfactory.practice.entity.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+// Денежная арифметика перевода (проверка средств, списание, зачисление) и разбор суммы из запроса:
+// BigDecimal против Money. Среднее время операции, с -prof gc - выделение памяти на операцию
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoneyBenchmark {
+
+    // Суммы меняются между вызовами, чтобы JIT не свернул вычисления в константы
+    private BigDecimal senderDecimal = new BigDecimal("1000000000.00");
+    private BigDecimal recipientDecimal = new BigDecimal("0.00");
+    private final BigDecimal amountDecimal = new BigDecimal("1.25");
+    private Money sender = Money.of("1000000000.00");
+    private Money recipient = Money.ZERO;
+    private final Money amount = Money.of("1.25");
+    private final String requestAmount = "1234.56";
+
+    @Benchmark
+    public BigDecimal transferBigDecimal() {
+        if (senderDecimal.compareTo(amountDecimal) < 0) {
+            BigDecimal swap = senderDecimal;
+            senderDecimal = recipientDecimal;
+            recipientDecimal = swap;
+        }
+        senderDecimal = senderDecimal.subtract(amountDecimal);
+        recipientDecimal = recipientDecimal.add(amountDecimal);
+        return recipientDecimal;
+    }
+
+    @Benchmark
+    public Money transferMoney() {
+        if (sender.isLessThan(amount)) {
+            Money swap = sender;
+            sender = recipient;
+            recipient = swap;
+        }
+        sender = sender.minus(amount);
+        recipient = recipient.plus(amount);
+        return recipient;
+    }
+
+    // Как Spring разбирал @RequestParam BigDecimal amount
+    @Benchmark
+    public BigDecimal parseBigDecimal() {
+        return new BigDecimal(requestAmount);
+    }
+
+    @Benchmark
+    public Money parseMoney() {
+        return Money.of(requestAmount);
+    }
+
+    // Форматирование баланса для ответа GET /balance
+    @Benchmark
+    public String formatBigDecimal() {
+        return String.format("%.2f", senderDecimal);
+    }
+
+    @Benchmark
+    public String formatMoney() {
+        return sender.toString(',');
+    }
+}
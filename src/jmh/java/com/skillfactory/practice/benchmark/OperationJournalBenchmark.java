@@ -0,0 +1,86 @@
+package com.skillfactory.practice.benchmark;
+
+import com.skillfactory.practice.service.AccountJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Долговечная запись одной операции: INSERT в operations своей транзакцией (текущий путь saveOperation,
+// fsync WAL PostgreSQL на операцию) против записи в журнал движка счетов с force на каждую запись
+// и с групповой фиксацией пакета из BATCH записей
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OperationJournalBenchmark {
+
+    private static final int BATCH = 256;
+
+    private JdbcTemplate jdbcTemplate;
+    private AccountJournal journal;
+    private Path journalDir;
+
+    @Setup(Level.Trial)
+    public void start(ApplicationState state) throws Exception {
+        jdbcTemplate = state.context.getBean(JdbcTemplate.class);
+        journalDir = Files.createTempDirectory("operation-journal-benchmark");
+        journal = new AccountJournal(journalDir, 1, 64L << 20, BATCH);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        journal.close();
+        FileSystemUtils.deleteRecursively(journalDir);
+    }
+
+    @Benchmark
+    public int insertPerOperation(ApplicationState state) {
+        return jdbcTemplate.update("insert into operations (customer_id, type, amount, created_at)"
+                + " values (?, 'DEPOSIT', 1.00, now())", randomCustomer(state));
+    }
+
+    @Benchmark
+    public long journalPerOperation(ApplicationState state) throws Exception {
+        journal.append(AccountJournal.Kind.DEPOSIT, randomCustomer(state), 0, 1_00, micros());
+        journal.commit();
+        return journal.lastSeq();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long journalGroupCommit(ApplicationState state) throws Exception {
+        long now = micros();
+        for (int i = 0; i < BATCH; i++) {
+            journal.append(AccountJournal.Kind.DEPOSIT, randomCustomer(state), 0, 1_00, now);
+        }
+        journal.commit();
+        return journal.lastSeq();
+    }
+
+    private static long micros() {
+        return System.currentTimeMillis() * 1000;
+    }
+
+    private static long randomCustomer(ApplicationState state) {
+        return state.customerIds[ThreadLocalRandom.current().nextInt(state.customerIds.length)];
+    }
+}
@@ -0,0 +1,140 @@
+package com.skillfactory.practice.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.skillfactory.practice.config.ApiJsonConfig;
+import com.skillfactory.practice.config.MoneyJsonComponent;
+import com.skillfactory.practice.dto.BalanceView;
+import com.skillfactory.practice.dto.OperationView;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.enums.OperationType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Тело ответа баланса и страницы истории (100 операций) через те же HttpMessageConverter, что и в MVC:
+// прежний текст баланса (String.format и Money) против JSON, операции объектами против компактного формата v1.
+// Среднее время записи ответа, с -prof gc - выделение памяти на ответ. Размеры тел печатаются при запуске
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseBodyBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    private final Long customerId = 123456L;
+    private final Money balance = Money.of("1000.50");
+    private final List<OperationView> operations = new ArrayList<>();
+    private final StringHttpMessageConverter text = new StringHttpMessageConverter(StandardCharsets.UTF_8);
+    private MappingJackson2HttpMessageConverter json;
+    private MappingJackson2HttpMessageConverter v1;
+    private final ResponseBody body = new ResponseBody();
+
+    @Setup
+    public void setup() throws IOException {
+        // Как ObjectMapper приложения: даты строкой, Money через MoneyJsonComponent
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+                .serializerByType(Money.class, new MoneyJsonComponent.Serializer())
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        json = new MappingJackson2HttpMessageConverter(objectMapper);
+        v1 = new MappingJackson2HttpMessageConverter(ApiJsonConfig.v1Mapper(objectMapper));
+        v1.setSupportedMediaTypes(List.of(ApiJsonConfig.V1_JSON));
+
+        LocalDateTime createdAt = LocalDateTime.parse("2025-08-15T18:43:50.400311");
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            operations.add(new OperationView(1_000_000L + i, i % 2 == 0 ? OperationType.DEPOSIT : OperationType.WITHDRAWAL,
+                    Money.ofMinorUnits(10_000 + i), createdAt.plusSeconds(i)));
+        }
+
+        System.out.printf("Тело ответа, байт: баланс текстом %d, JSON %d, v1 %d; 100 операций JSON %d, v1 %d%n",
+                balanceFormat(), balanceJson(), balanceV1(), operationsJson(), operationsV1());
+    }
+
+    // Прежний ответ: String.format с локалью JVM
+    @Benchmark
+    public int balanceFormat() throws IOException {
+        return write(text, String.format("Баланс клиента %d: %.2f руб.", customerId, balance.toBigDecimal()),
+                MediaType.TEXT_PLAIN);
+    }
+
+    @Benchmark
+    public int balanceText() throws IOException {
+        return write(text, "Баланс клиента " + customerId + ": " + balance.toString(',') + " руб.", MediaType.TEXT_PLAIN);
+    }
+
+    @Benchmark
+    public int balanceJson() throws IOException {
+        return write(json, BalanceView.rub(customerId, balance), MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public int balanceV1() throws IOException {
+        return write(v1, BalanceView.rub(customerId, balance), ApiJsonConfig.V1_JSON);
+    }
+
+    @Benchmark
+    public int operationsJson() throws IOException {
+        return write(json, operations, MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public int operationsV1() throws IOException {
+        return write(v1, operations, ApiJsonConfig.V1_JSON);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> int write(HttpMessageConverter<T> converter, Object value, MediaType mediaType) throws IOException {
+        body.reset();
+        converter.write((T) value, mediaType, body);
+        return body.bytes.size();
+    }
+
+    // Ответ сервера без сети: заголовки новые на каждый ответ, буфер тела переиспользуется
+    private static final class ResponseBody implements HttpOutputMessage {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * 1024);
+        private HttpHeaders headers;
+
+        private void reset() {
+            bytes.reset();
+            headers = new HttpHeaders();
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return bytes;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.skillfactory.practice.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.skillfactory.practice.dto.OperationView;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+// Версионированный JSON-контракт API (Accept: application/vnd.investor.v1+json): баланс - {customerId, balance,
+// currency}, операция - компактная запись-массив [operationId, type, amount, createdAt] без имён полей
+// (CompactOperationSerializer). Обычный application/json отдаёт операции объектами, как раньше
+@Configuration
+@Profile("!reactive")
+public class ApiJsonConfig implements WebMvcConfigurer {
+
+    public static final String V1_JSON_VALUE = "application/vnd.investor.v1+json";
+    public static final MediaType V1_JSON = MediaType.parseMediaType(V1_JSON_VALUE);
+
+    private final ObjectMapper objectMapper;
+
+    public ApiJsonConfig(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // Копия ObjectMapper приложения (модули, MoneyJsonComponent) с форматом операций v1: общий не меняется,
+    // сериализаторы строятся один раз и переиспользуются всеми запросами
+    public static ObjectMapper v1Mapper(ObjectMapper objectMapper) {
+        return objectMapper.copy().registerModule(new SimpleModule("api-v1")
+                .addSerializer(OperationView.class, new CompactOperationSerializer()));
+    }
+
+    // Перед обычным конвертером Jackson, иначе v1 (application/*+json) записал бы он. Строковые ответы
+    // по-прежнему пишет StringHttpMessageConverter, который стоит раньше
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        MappingJackson2HttpMessageConverter v1 = new MappingJackson2HttpMessageConverter(v1Mapper(objectMapper));
+        v1.setSupportedMediaTypes(List.of(V1_JSON));
+        int jackson = 0;
+        while (jackson < converters.size() && !(converters.get(jackson) instanceof MappingJackson2HttpMessageConverter)) {
+            jackson++;
+        }
+        converters.add(jackson, v1);
+    }
+}
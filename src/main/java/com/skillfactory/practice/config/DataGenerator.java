@@ -1,86 +1,118 @@
 package com.skillfactory.practice.config;
 
 import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
 import com.skillfactory.practice.entity.Operation;
 import com.skillfactory.practice.enums.OperationType;
 import com.skillfactory.practice.repository.CustomerRepository;
 import com.skillfactory.practice.repository.OperationRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
+// Заполнение базы при старте, режим задаётся app.generator.mode:
+// off - ничего не создаётся (по умолчанию), demo - 100 клиентов с небольшой историей,
+// load - большой набор данных для нагрузочного тестирования (см. LoadDataGenerator)
 @Component
 public class DataGenerator implements CommandLineRunner {
 
     private final CustomerRepository customerRepository;
     private final OperationRepository operationRepository;
-
-    public DataGenerator(CustomerRepository customerRepository, OperationRepository operationRepository) {
+    private final LoadDataGenerator loadDataGenerator;
+    private final String mode;
+    private final int loadCustomers;
+
+    public DataGenerator(CustomerRepository customerRepository, OperationRepository operationRepository,
+                         LoadDataGenerator loadDataGenerator,
+                         @Value("${app.generator.mode:off}") String mode,
+                         @Value("${app.generator.load.customers:100000}") int loadCustomers) {
         this.customerRepository = customerRepository;
         this.operationRepository = operationRepository;
+        this.loadDataGenerator = loadDataGenerator;
+        this.mode = mode;
+        this.loadCustomers = loadCustomers;
     }
 
     @Override
     public void run(String... args) throws Exception {
-        generateAdditionalCustomersIfNeeded();
-        generateAdditionalTransactionsForNewCustomers();
-        generateTransferOperationsBetweenCustomers();
+        switch (mode) {
+            case "off" -> {
+            }
+            case "demo" -> {
+                generateAdditionalTransactionsForNewCustomers(generateAdditionalCustomersIfNeeded());
+                generateTransferOperationsBetweenCustomers();
+            }
+            case "load" -> {
+                // Как и в demo, повторный запуск не добавляет данных, если клиентов уже достаточно
+                if (customerRepository.count() < loadCustomers) {
+                    loadDataGenerator.generate();
+                }
+            }
+            default -> throw new IllegalArgumentException("Unsupported app.generator.mode: " + mode);
+        }
     }
 
-    private void generateAdditionalCustomersIfNeeded() {
+    private List<Customer> generateAdditionalCustomersIfNeeded() {
         long currentCustomerCount = customerRepository.count();
         int neededCustomers = Math.max(100 - (int)currentCustomerCount, 0);
 
         if (neededCustomers <= 0) {
-            return;
+            return List.of();
         }
 
-        Random random = new Random();
         List<Customer> additionalCustomers = new ArrayList<>();
 
         for (int i = 0; i < neededCustomers; i++) {
-            Customer customer = new Customer();
-            customer.setBalance(BigDecimal.valueOf(random.nextInt(10_000)));
-            additionalCustomers.add(customer);
+            additionalCustomers.add(new Customer(Money.ZERO));
         }
 
-        customerRepository.saveAll(additionalCustomers);
+        return customerRepository.saveAll(additionalCustomers);
     }
 
-    private void generateAdditionalTransactionsForNewCustomers() {
-        long totalCustomers = customerRepository.count();
-        long existingTransactionsCount = operationRepository.count();
-
-        if (totalCustomers == 0 || existingTransactionsCount > 0) {
+    // Начальный баланс и история новых клиентов записываются операциями, и баланс меняется вместе с ними,
+    // поэтому он сходится с журналом операций
+    private void generateAdditionalTransactionsForNewCustomers(List<Customer> newCustomers) {
+        if (newCustomers.isEmpty()) {
             return;
         }
 
         Random random = new Random();
-        List<Customer> allCustomers = (List<Customer>) customerRepository.findAll();
+        List<Operation> transactions = new ArrayList<>();
+
+        for (Customer customer : newCustomers) {
+            // Начальный баланс - пополнение до 10 000
+            Money initialBalance = Money.ofMinorUnits((random.nextInt(10_000) + 1) * 100L);
+            transactions.add(newOperation(customer, OperationType.DEPOSIT, initialBalance));
+            customer.setBalance(initialBalance);
 
-        for (Customer customer : allCustomers) {
             int numberOfTransactions = random.nextInt(20) + 10; // От 10 до 29 транзакций
-            List<Operation> transactions = new ArrayList<>();
 
             for (int j = 0; j < numberOfTransactions; j++) {
-                Operation transaction = new Operation();
-                transaction.setCustomer(customer);
-                transaction.setType(getRandomTransactionType());
-                transaction.setAmount(BigDecimal.valueOf(random.nextInt(1000) + 1)); // Суммы от 1 до 1000
-                transactions.add(transaction);
+                OperationType type = getRandomTransactionType();
+                Money amount = Money.ofMinorUnits((random.nextInt(1000) + 1) * 100L); // Суммы от 1 до 1000
+
+                // Списание больше баланса не проходит и в истории не появляется
+                if (type == OperationType.WITHDRAWAL && customer.getBalance().isLessThan(amount)) {
+                    continue;
+                }
+                transactions.add(newOperation(customer, type, amount));
+                customer.setBalance(type == OperationType.DEPOSIT
+                        ? customer.getBalance().plus(amount)
+                        : customer.getBalance().minus(amount));
             }
-
-            operationRepository.saveAll(transactions);
         }
+
+        // Все операции сохраняются одной транзакцией, INSERT уходят пакетами
+        operationRepository.saveAll(transactions);
+        customerRepository.saveAll(newCustomers);
     }
 
     private void generateTransferOperationsBetweenCustomers() {
-        List<Customer> allCustomers = (List<Customer>) customerRepository.findAll();
+        List<Customer> allCustomers = customerRepository.findAll();
         if (allCustomers.size() < 2) {
             return;
         }
@@ -100,9 +132,8 @@ public class DataGenerator implements CommandLineRunner {
                 recipient = allCustomers.get(random.nextInt(allCustomers.size()));
             } while (recipient.getId() == sender.getId());
 
-            // Генерируем сумму перевода (примерно половина баланса отправителя)
-            BigDecimal amount = sender.getBalance()
-                    .divide(BigDecimal.valueOf(2), 2, RoundingMode.HALF_UP);
+            // Генерируем сумму перевода (половина баланса отправителя с округлением копеек вверх)
+            Money amount = Money.ofMinorUnits((sender.getBalance().minorUnits() + 1) / 2);
 
             // Создаем операцию списания у отправителя
             Operation withdrawal = new Operation();
@@ -119,8 +150,8 @@ public class DataGenerator implements CommandLineRunner {
             transfers.add(deposit);
 
             // Обновляем балансы клиентов
-            sender.setBalance(sender.getBalance().subtract(amount));
-            recipient.setBalance(recipient.getBalance().add(amount));
+            sender.setBalance(sender.getBalance().minus(amount));
+            recipient.setBalance(recipient.getBalance().plus(amount));
         }
 
         // Сохраняем все операции и обновленных клиентов
@@ -128,6 +159,14 @@ public class DataGenerator implements CommandLineRunner {
         customerRepository.saveAll(allCustomers);
     }
 
+    private static Operation newOperation(Customer customer, OperationType type, Money amount) {
+        Operation operation = new Operation();
+        operation.setCustomer(customer);
+        operation.setType(type);
+        operation.setAmount(amount);
+        return operation;
+    }
+
     private static OperationType getRandomTransactionType() {
         Random rand = new Random();
         return rand.nextBoolean() ? OperationType.DEPOSIT : OperationType.WITHDRAWAL;
@@ -0,0 +1,38 @@
+package com.skillfactory.practice.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+// Количество SQL-запросов на один HTTP-запрос: распределение http.server.requests.db.statements
+// с тегами method и uri (шаблон пути, как у http.server.requests)
+public class DbStatementsInterceptor implements HandlerInterceptor {
+
+    private final MeterRegistry registry;
+
+    public DbStatementsInterceptor(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        StatementCounter.reset();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        DistributionSummary.builder("http.server.requests.db.statements")
+                .description("SQL-запросы к БД (JPA и JDBC) на один HTTP-запрос")
+                .tag("method", request.getMethod())
+                .tag("uri", uri != null ? uri.toString() : "UNKNOWN")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(StatementCounter.current());
+    }
+}
@@ -0,0 +1,288 @@
+package com.skillfactory.practice.config;
+
+import com.skillfactory.practice.enums.OperationType;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Генератор больших наборов данных для нагрузочного тестирования (app.generator.mode=load).
+// Клиенты и операции пишутся командой COPY параллельными потоками, порциями по chunk-size клиентов,
+// каждая порция - отдельная транзакция. ID берутся из тех же последовательностей, что и у JPA.
+// Баланс клиента равен сумме его пополнений за вычетом списаний, время операций разнесено на spread-days дней назад
+@Component
+public class LoadDataGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadDataGenerator.class);
+
+    // Шаг последовательностей customer_seq и operations_seq (allocationSize у сущностей)
+    private static final int SEQUENCE_BLOCK = 50;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final DataSource dataSource;
+    private final int customers;
+    private final int operationsPerCustomer;
+    private final int spreadDays;
+    private final double skew;
+    private final int threads;
+    private final int chunkSize;
+    private final long seed;
+
+    public LoadDataGenerator(DataSource dataSource,
+                             @Value("${app.generator.load.customers:100000}") int customers,
+                             @Value("${app.generator.load.operations-per-customer:100}") int operationsPerCustomer,
+                             @Value("${app.generator.load.spread-days:365}") int spreadDays,
+                             @Value("${app.generator.load.skew:0.8}") double skew,
+                             @Value("${app.generator.load.threads:4}") int threads,
+                             @Value("${app.generator.load.chunk-size:1000}") int chunkSize,
+                             @Value("${app.generator.load.seed:42}") long seed) {
+        if (customers <= 0 || operationsPerCustomer <= 0 || spreadDays <= 0 || threads <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("Параметры app.generator.load.* должны быть положительными");
+        }
+        if (skew < 0) {
+            throw new IllegalArgumentException("app.generator.load.skew не может быть отрицательным");
+        }
+        this.dataSource = dataSource;
+        this.customers = customers;
+        this.operationsPerCustomer = operationsPerCustomer;
+        this.spreadDays = spreadDays;
+        this.skew = skew;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.seed = seed;
+    }
+
+    // Создаёт customers клиентов с историей операций и возвращает ID созданных клиентов
+    public long[] generate() throws InterruptedException {
+        long started = System.nanoTime();
+        double[] weights = activityWeights();
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> chunks = new ArrayList<>();
+        try {
+            createPartitions(now);
+            for (int from = 0; from < customers; from += chunkSize) {
+                int chunkFrom = from;
+                int chunkTo = Math.min(from + chunkSize, customers);
+                chunks.add(executor.submit(() -> writeChunk(chunkFrom, chunkTo, weights, now)));
+            }
+
+            long[] customerIds = new long[customers];
+            int position = 0;
+            for (Future<long[]> chunk : chunks) {
+                long[] ids = chunk.get();
+                System.arraycopy(ids, 0, customerIds, position, ids.length);
+                position += ids.length;
+            }
+
+            analyze();
+            log.info("Сгенерировано {} клиентов за {} c", customers,
+                    Duration.ofNanos(System.nanoTime() - started).toSeconds());
+            return customerIds;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка генерации данных", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Количество операций клиента под номером i (от 0) по закону Ципфа: вес ранга r пропорционален 1 / r^skew.
+    // При skew = 0 у всех клиентов по operations-per-customer операций, в среднем их примерно столько же при любом skew
+    int operationCount(int customerIndex, double[] weights) {
+        return Math.max(1, (int) Math.round(weights[customerIndex] * operationsPerCustomer * customers));
+    }
+
+    private double[] activityWeights() {
+        double[] weights = new double[customers];
+        double total = 0;
+        for (int i = 0; i < customers; i++) {
+            weights[i] = Math.pow(i + 1, -skew);
+            total += weights[i];
+        }
+        for (int i = 0; i < customers; i++) {
+            weights[i] /= total;
+        }
+        // Ранги перемешиваются, чтобы активные клиенты распределились по порциям равномерно
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = customers - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            double weight = weights[i];
+            weights[i] = weights[j];
+            weights[j] = weight;
+        }
+        return weights;
+    }
+
+    // Одна порция клиентов [from, to) в одной транзакции. Операции ссылаются на клиентов внешним ключом,
+    // поэтому клиенты вставляются первыми с нулевым балансом, а итоговые балансы проставляются одним UPDATE
+    private long[] writeChunk(int from, int to, double[] weights, LocalDateTime now) throws SQLException, IOException {
+        SplittableRandom random = new SplittableRandom(seed + from);
+        int chunkCustomers = to - from;
+        int[] operationCounts = new int[chunkCustomers];
+        int chunkOperations = 0;
+        for (int i = 0; i < chunkCustomers; i++) {
+            operationCounts[i] = operationCount(from + i, weights);
+            chunkOperations += operationCounts[i];
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                long[] customerIds = reserveIds(connection, "customer_seq", chunkCustomers);
+                long[] operationIds = reserveIds(connection, "operations_seq", chunkOperations);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+
+                try (Writer customerRows = copyWriter(pgConnection, "COPY customer (id, balance) FROM STDIN")) {
+                    for (long customerId : customerIds) {
+                        customerRows.write(Long.toString(customerId));
+                        customerRows.write("\t0\n");
+                    }
+                }
+
+                BigDecimal[] balances = new BigDecimal[chunkCustomers];
+                try (Writer operationRows = copyWriter(pgConnection,
+                        "COPY operations (operation_id, customer_id, type, amount, created_at) FROM STDIN")) {
+                    int operationIndex = 0;
+                    for (int i = 0; i < chunkCustomers; i++) {
+                        long balance = writeHistory(operationRows, random, customerIds[i], operationIds,
+                                operationIndex, operationCounts[i], now);
+                        balances[i] = BigDecimal.valueOf(balance, 2);
+                        operationIndex += operationCounts[i];
+                    }
+                }
+
+                try (PreparedStatement statement = connection.prepareStatement("update customer c set balance = b.balance"
+                        + " from unnest(?::bigint[], ?::numeric[]) as b(id, balance) where c.id = b.id")) {
+                    statement.setArray(1, connection.createArrayOf("bigint",
+                            Arrays.stream(customerIds).boxed().toArray()));
+                    statement.setArray(2, connection.createArrayOf("numeric", balances));
+                    statement.executeUpdate();
+                }
+
+                connection.commit();
+                return customerIds;
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // История одного клиента в хронологическом порядке. Первая операция - пополнение,
+    // списание генерируется только при достаточном балансе. Возвращает итоговый баланс в копейках
+    private long writeHistory(Writer out, SplittableRandom random, long customerId, long[] operationIds,
+                              int firstOperation, int count, LocalDateTime now) throws IOException {
+        long spreadSeconds = spreadDays * 86_400L;
+        long[] secondsAgo = new long[count];
+        for (int i = 0; i < count; i++) {
+            secondsAgo[i] = random.nextLong(spreadSeconds);
+        }
+        Arrays.sort(secondsAgo);
+
+        long balance = 0;
+        for (int i = 0; i < count; i++) {
+            long amount = random.nextLong(100, 100_001); // От 1 до 1000 рублей
+            OperationType type = balance >= amount && random.nextBoolean()
+                    ? OperationType.WITHDRAWAL
+                    : OperationType.DEPOSIT;
+            balance += type == OperationType.DEPOSIT ? amount : -amount;
+
+            out.write(Long.toString(operationIds[firstOperation + i]));
+            out.write('\t');
+            out.write(Long.toString(customerId));
+            out.write('\t');
+            out.write(type.name());
+            out.write('\t');
+            writeKopecks(out, amount);
+            out.write('\t');
+            // Самая старая операция - первая: отсчёт от конца отсортированного массива
+            out.write(TIMESTAMP.format(now.minusSeconds(secondsAgo[count - 1 - i])));
+            out.write('\n');
+        }
+        return balance;
+    }
+
+    // Секции operations для всех месяцев истории (operations секционирована по created_at, секции по умолчанию нет)
+    private void createPartitions(LocalDateTime now) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("select create_operations_partition(month::date)"
+                     + " from generate_series(?::date, ?::date, interval '1 month') as month")) {
+            statement.setObject(1, now.minusDays(spreadDays).toLocalDate().withDayOfMonth(1));
+            statement.setObject(2, now.toLocalDate().withDayOfMonth(1));
+            statement.executeQuery().close();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось создать секции operations", e);
+        }
+    }
+
+    // ID для count строк: каждое значение последовательности открывает блок из SEQUENCE_BLOCK ID (как pooled-lo в Hibernate)
+    private static long[] reserveIds(Connection connection, String sequence, int count) throws SQLException {
+        int blocks = (count + SEQUENCE_BLOCK - 1) / SEQUENCE_BLOCK;
+        long[] ids = new long[count];
+        try (PreparedStatement statement = connection.prepareStatement(
+                "select nextval('" + sequence + "') from generate_series(1, ?)")) {
+            statement.setInt(1, blocks);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                int position = 0;
+                while (resultSet.next()) {
+                    long blockStart = resultSet.getLong(1);
+                    for (int i = 0; i < SEQUENCE_BLOCK && position < count; i++) {
+                        ids[position++] = blockStart + i;
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static Writer copyWriter(PGConnection connection, String sql) throws SQLException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new PGCopyOutputStream(connection, sql, 1 << 16), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static void writeKopecks(Writer out, long kopecks) throws IOException {
+        out.write(Long.toString(kopecks / 100));
+        out.write('.');
+        long rest = kopecks % 100;
+        if (rest < 10) {
+            out.write('0');
+        }
+        out.write(Long.toString(rest));
+    }
+
+    // Свежая статистика планировщика после массовой вставки
+    private void analyze() {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE customer, operations");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось обновить статистику таблиц", e);
+        }
+    }
+}
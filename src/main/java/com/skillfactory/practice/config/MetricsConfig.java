@@ -0,0 +1,48 @@
+package com.skillfactory.practice.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+
+// Метрики приложения сверх стандартных (HTTP, Hikari, JVM): таймеры @Timed и запросы к БД на HTTP-запрос.
+// Всё публикуется в /actuator/prometheus
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+
+    private final MeterRegistry registry;
+
+    public MetricsConfig(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    // Обработка аннотации @Timed на бинах (CustomerService)
+    @Bean
+    public TimedAspect timedAspect() {
+        return new TimedAspect(registry);
+    }
+
+    // Подсчёт SQL-запросов на источнике соединений приложения (бин dataSource: пул или маршрутизация
+    // по репликам), через который работают JPA, JdbcTemplate и Flyway
+    @Bean
+    public static BeanPostProcessor statementCounterPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource dataSource && beanName.equals("dataSource")
+                        ? StatementCounter.wrap(dataSource)
+                        : bean;
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry interceptors) {
+        interceptors.addInterceptor(new DbStatementsInterceptor(registry));
+    }
+}
@@ -0,0 +1,153 @@
+package com.skillfactory.practice.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Соединения для транзакций только для чтения: реплики по кругу, с учётом доступности и отставания.
+// Состояние реплик проверяется раз в check-interval в отдельном потоке (недоступная реплика отвечает
+// только по таймауту и не должна задерживать задачи по расписанию). Реплика, которая не отвечает или отстаёт
+// больше max-staleness, пропускается до следующей успешной проверки. Если подходящих реплик нет,
+// соединение выдаёт основная БД (метрика db.replica.fallback)
+public class ReplicaDataSource extends AbstractDataSource implements Closeable {
+
+    // Отставание в миллисекундах: время с последней применённой транзакции, если реплика получила
+    // не всё применённое (на основной БД и на догнавшей реплике - 0)
+    public static final String DEFAULT_LAG_QUERY = "select case when not pg_is_in_recovery()"
+            + " or pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0"
+            + " else (extract(epoch from now() - pg_last_xact_replay_timestamp()) * 1000)::bigint end";
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaDataSource.class);
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxStalenessMillis;
+    private final String lagQuery;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter fallbacks;
+    private final ScheduledExecutorService checker;
+
+    public ReplicaDataSource(DataSource primary, List<HikariDataSource> replicaPools, Duration maxStaleness,
+                             Duration checkInterval, String lagQuery, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.maxStalenessMillis = maxStaleness.toMillis();
+        this.lagQuery = lagQuery;
+        for (HikariDataSource pool : replicaPools) {
+            replicas.add(new Replica(pool, meterRegistry));
+        }
+        this.fallbacks = Counter.builder("db.replica.fallback")
+                .description("Соединения для чтения, выданные основной БД: нет доступной реплики с допустимым отставанием")
+                .register(meterRegistry);
+
+        // Состояние реплик известно до первого запроса
+        checkReplicas();
+        this.checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::checkReplicas, checkInterval.toMillis(), checkInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        int start = next.getAndIncrement();
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+            if (!replica.up || replica.lagMillis > maxStalenessMillis) {
+                continue;
+            }
+            try {
+                Connection connection = replica.pool.getConnection();
+                replica.connections.increment();
+                return connection;
+            } catch (SQLException e) {
+                replica.markDown(e);
+            }
+        }
+        fallbacks.increment();
+        return primary.getConnection();
+    }
+
+    // Пулы реплик открывают соединения с учётными данными основной БД, поэтому соединение с явными
+    // учётными данными запрашивается у основного источника (пул Hikari отвечает SQLFeatureNotSupportedException)
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    // Доступность и отставание каждой реплики
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.pool.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery(lagQuery)) {
+                result.next();
+                replica.lagMillis = result.getLong(1);
+                if (!replica.up) {
+                    log.info("Реплика {} доступна, отставание {} мс", replica.pool.getPoolName(), replica.lagMillis);
+                    replica.up = true;
+                }
+            } catch (SQLException | RuntimeException e) {
+                replica.markDown(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        checker.shutdownNow();
+        replicas.forEach(replica -> replica.pool.close());
+    }
+
+    private static final class Replica {
+
+        private final HikariDataSource pool;
+        private final Counter connections;
+        private volatile boolean up;
+        private volatile long lagMillis;
+
+        private Replica(HikariDataSource pool, MeterRegistry meterRegistry) {
+            this.pool = pool;
+            this.connections = Counter.builder("db.replica.connections")
+                    .description("Соединения для чтения, выданные репликой")
+                    .tag("replica", pool.getPoolName())
+                    .register(meterRegistry);
+            Gauge.builder("db.replica.lag", this, replica -> replica.lagMillis)
+                    .description("Отставание реплики по последней проверке, мс")
+                    .tag("replica", pool.getPoolName())
+                    .register(meterRegistry);
+            Gauge.builder("db.replica.available", this, replica -> replica.up ? 1 : 0)
+                    .description("Реплика отвечала при последней проверке")
+                    .tag("replica", pool.getPoolName())
+                    .register(meterRegistry);
+        }
+
+        private void markDown(Exception e) {
+            if (up) {
+                log.warn("Реплика {} недоступна, чтение переходит на другие реплики или основную БД: {}",
+                        pool.getPoolName(), e.getMessage());
+            }
+            up = false;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.skillfactory.practice.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Чтение с реплик включается списком app.replicas.urls. Транзакции @Transactional(readOnly = true) получают
+// соединение реплики (ReplicaDataSource), остальные и работа вне транзакций - основной БД.
+// Соединение берётся при первом запросе в транзакции (LazyConnectionDataSourceProxy), когда признак
+// readOnly уже выставлен. Данные реплики могут отставать от основной БД не больше чем на max-staleness
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty("app.replicas.urls")
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class ReplicaRoutingConfig {
+
+    // Пул основной БД с настройками spring.datasource.*, как при автоконфигурации
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    // Пулы реплик с учётными данными основной БД. Недоступная при старте реплика не мешает запуску
+    @Bean(destroyMethod = "close")
+    public ReplicaDataSource replicaDataSource(HikariDataSource primaryDataSource, DataSourceProperties properties,
+                                               @Value("${app.replicas.urls}") List<String> urls,
+                                               @Value("${app.replicas.max-staleness:5s}") Duration maxStaleness,
+                                               @Value("${app.replicas.check-interval:1s}") Duration checkInterval,
+                                               @Value("${app.replicas.connection-timeout:1s}") Duration connectionTimeout,
+                                               @Value("${app.replicas.maximum-pool-size:10}") int maximumPoolSize,
+                                               @Value("${app.replicas.lag-query:}") String lagQuery,
+                                               MeterRegistry meterRegistry) {
+        List<HikariDataSource> pools = new ArrayList<>();
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName(primaryDataSource.getPoolName() + "-replica-" + (pools.size() + 1));
+            pool.setJdbcUrl(url.trim());
+            pool.setUsername(properties.determineUsername());
+            pool.setPassword(properties.determinePassword());
+            pool.setMaximumPoolSize(maximumPoolSize);
+            pool.setConnectionTimeout(connectionTimeout.toMillis());
+            pool.setInitializationFailTimeout(-1);
+            pool.setReadOnly(true);
+            pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            pools.add(pool);
+        }
+        return new ReplicaDataSource(primaryDataSource, pools, maxStaleness, checkInterval,
+                lagQuery.isBlank() ? ReplicaDataSource.DEFAULT_LAG_QUERY : lagQuery, meterRegistry);
+    }
+
+    // Источник соединений для JPA, JdbcTemplate и Flyway
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaDataSource replicaDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+}
@@ -0,0 +1,95 @@
+package com.skillfactory.practice.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Счётчик SQL-запросов, выполненных в текущем потоке (для метрики запросов к БД на HTTP-запрос).
+// Считается на уровне JDBC: источник соединений приложения оборачивается (wrap), поэтому видны запросы
+// Hibernate, JdbcTemplate, outbox и движка счетов. Каждый вызов execute* оператора - один запрос,
+// пакет executeBatch - тоже один. BEGIN/COMMIT драйвера не считаются
+public final class StatementCounter {
+
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    private StatementCounter() {
+    }
+
+    public static DataSource wrap(DataSource dataSource) {
+        return new CountingDataSource(dataSource);
+    }
+
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    public static int current() {
+        return COUNT.get()[0];
+    }
+
+    // Соединения с подсчётом. close закрывает исходный источник (пул), если он закрывается
+    private static final class CountingDataSource extends DelegatingDataSource implements Closeable {
+
+        private CountingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return counting(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return counting(super.getConnection(username, password));
+        }
+
+        @Override
+        public void close() {
+            if (obtainTargetDataSource() instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    // Операторы, которые создаёт соединение, оборачиваются с тем же интерфейсом (Statement, PreparedStatement,
+    // CallableStatement); остальные вызовы, в том числе unwrap, уходят к исходному соединению
+    private static Connection counting(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(StatementCounter.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    return result instanceof Statement statement ? counting(statement, method.getReturnType()) : result;
+                });
+    }
+
+    private static Object counting(Statement statement, Class<?> type) {
+        return Proxy.newProxyInstance(StatementCounter.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (method.getName().startsWith("execute")) {
+                        COUNT.get()[0]++;
+                    }
+                    return invoke(statement, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
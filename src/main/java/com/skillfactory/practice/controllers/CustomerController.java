@@ -1,66 +1,183 @@
 package com.skillfactory.practice.controllers;
 
-import com.skillfactory.practice.entity.Operation;
+import com.skillfactory.practice.config.ApiJsonConfig;
+import com.skillfactory.practice.dto.BalanceView;
+import com.skillfactory.practice.dto.OperationCursor;
+import com.skillfactory.practice.dto.OperationHistory;
+import com.skillfactory.practice.dto.OperationPage;
+import com.skillfactory.practice.dto.OperationSummary;
+import com.skillfactory.practice.dto.OperationView;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.enums.SummaryGranularity;
 import com.skillfactory.practice.service.CustomerService;
+import com.skillfactory.practice.service.IdempotencyService;
+import com.skillfactory.practice.service.OperationTotalsService;
 import org.apache.coyote.BadRequestException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import java.math.BigDecimal;
+import java.text.DecimalFormatSymbols;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
+@Profile("!reactive")
 @RestController
 @RequestMapping("/api/customers")
 public class CustomerController {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    // Повтор запроса с тем же ключом возвращает ответ первого выполнения, деньги повторно не движутся
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final String RESULT_TRUNCATED = "X-Result-Truncated";
+
     private final CustomerService service;
+    private final IdempotencyService idempotencyService;
+    private final OperationTotalsService totalsService;
+    // Сколько клиент может не перепроверять историю закрытого периода
+    private final Duration historyMaxAge;
+    // Разделитель дробной части в балансе - как у String.format("%.2f") в локали JVM
+    private final char decimalSeparator = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT))
+            .getDecimalSeparator();
 
-    public CustomerController(CustomerService service) {
+    public CustomerController(CustomerService service, IdempotencyService idempotencyService,
+                              OperationTotalsService totalsService,
+                              @Value("${app.history-cache.max-age:5m}") Duration historyMaxAge) {
         this.service = service;
+        this.idempotencyService = idempotencyService;
+        this.totalsService = totalsService;
+        this.historyMaxAge = historyMaxAge;
     }
 
-    // GET /api/customers/{customersId}/balance
-    @GetMapping("/{customersId}/balance")
-    public ResponseEntity<String> getBalance(@PathVariable("customersId") Long customersId) {
+    // GET /api/customers/{customersId}/balance - {"customerId":1,"balance":1000.50,"currency":"RUB"}
+    @GetMapping(value = "/{customersId}/balance",
+            produces = {MediaType.APPLICATION_JSON_VALUE, ApiJsonConfig.V1_JSON_VALUE})
+    public ResponseEntity<BalanceView> getBalance(@PathVariable("customersId") Long customersId) {
         return service.getBalance(customersId)
-                .map(balance -> new ResponseEntity<>(String.format("Баланс клиента %d: %.2f руб.", customersId, balance),
-                        HttpStatus.OK))
+                .map(balance -> ResponseEntity.ok(BalanceView.rub(customersId, balance)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // GET /api/customers/{customersId}/balance с Accept: text/plain - прежний текстовый ответ
+    @GetMapping(value = "/{customersId}/balance", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> getBalanceText(@PathVariable("customersId") Long customersId) {
+        return service.getBalance(customersId)
+                .map(balance -> new ResponseEntity<>("Баланс клиента " + customersId + ": "
+                        + balance.toString(decimalSeparator) + " руб.", HttpStatus.OK))
                 .orElse(new ResponseEntity<>("Клиент не найден", HttpStatus.NOT_FOUND));
     }
 
     // POST /api/customers/{customersId}/putmoney
     @PostMapping("/{customersId}/putmoney")
-    public ResponseEntity<String> putMoney(@PathVariable("customersId") Long customersId, @RequestParam BigDecimal amount) {
-        service.putMoney(customersId, amount);
-        return new ResponseEntity<>("Пополнение успешно выполнено", HttpStatus.OK);
+    public ResponseEntity<String> putMoney(@PathVariable("customersId") Long customersId, @RequestParam String amount,
+                                           @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey)
+            throws BadRequestException {
+        Money money = parseAmount(amount);
+        return idempotencyService.execute(idempotencyKey, "putmoney:" + customersId + ":" + money, () -> {
+            service.putMoney(customersId, money);
+            return new ResponseEntity<>("Пополнение успешно выполнено", HttpStatus.OK);
+        });
     }
 
     // POST /api/customers/{customersId}/takemoney
     @PostMapping("/{customersId}/takemoney")
-    public ResponseEntity<String> takeMoney(@PathVariable("customersId") Long customersId, @RequestParam BigDecimal amount) {
-        if (service.takeMoney(customersId, amount)) {
-            return new ResponseEntity<>("Операция снятия выполнена успешно", HttpStatus.OK);
-        } else {
-            return new ResponseEntity<>("Недостаточно средств на счете", HttpStatus.BAD_REQUEST);
-        }
+    public ResponseEntity<String> takeMoney(@PathVariable("customersId") Long customersId, @RequestParam String amount,
+                                            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey)
+            throws BadRequestException {
+        Money money = parseAmount(amount);
+        return idempotencyService.execute(idempotencyKey, "takemoney:" + customersId + ":" + money, () -> {
+            if (service.takeMoney(customersId, money)) {
+                return new ResponseEntity<>("Операция снятия выполнена успешно", HttpStatus.OK);
+            } else {
+                return new ResponseEntity<>("Недостаточно средств на счете", HttpStatus.BAD_REQUEST);
+            }
+        });
     }
 
     // GET /api/customers/{customersId}/operations
-    @GetMapping("/{customersId}/operations")
-    public ResponseEntity<List<Operation>> getOperationList(
+    // GET /api/customers/{customersId}/operations?limit=100&after=2025-08-15T18:43:50.400311,2144 - постранично по курсору
+    // С Accept: application/vnd.investor.v1+json операции - компактные записи-массивы (ApiJsonConfig).
+    // История за период отдаётся с ETag по версии истории: повтор запроса с If-None-Match получает 304
+    // без чтения операций. Закрытый период можно хранить у клиента max-age, открытый - только с проверкой.
+    // Если операций MAX_OPERATION_LIST, история могла быть обрезана: ответ помечается заголовком
+    // X-Result-Truncated, а Link rel="next" указывает страницу по курсору после последней операции
+    @GetMapping(value = "/{customersId}/operations",
+            produces = {MediaType.APPLICATION_JSON_VALUE, ApiJsonConfig.V1_JSON_VALUE})
+    public ResponseEntity<?> getOperationList(
             @PathVariable("customersId") Long customersId,
             @RequestParam(required = false) String from,
-            @RequestParam(required = false) String to)
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader HttpHeaders headers)
             throws BadRequestException {
 
+        if (after != null || limit != null) {
+            if (from != null || to != null) {
+                throw new BadRequestException("Cursor pagination cannot be combined with from/to");
+            }
+            OperationPage page = service.getOperationPage(customersId, parseCursor(after), parseLimit(limit));
+            return new ResponseEntity<>(page, HttpStatus.OK);
+        }
+
         LocalDateTime startDate = parseLocalDateTime(from);
         LocalDateTime endDate = parseLocalDateTime(to);
 
-        List<Operation> result = service.getOperationList(customersId, startDate, endDate);
-        return new ResponseEntity<>(result, HttpStatus.OK);
+        // У разных представлений одной истории разные ETag
+        String representation = prefersV1(headers.getAccept()) ? "v1" : "json";
+        List<String> ifNoneMatch = headers.getIfNoneMatch();
+        OperationHistory history = service.getOperationHistory(customersId, startDate, endDate,
+                version -> matches(ifNoneMatch, historyETag(version, representation)));
+
+        ResponseEntity.BodyBuilder response = ResponseEntity
+                .status(history.notModified() ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+                .eTag(historyETag(history.version(), representation))
+                .cacheControl(history.closed() ? CacheControl.maxAge(historyMaxAge).cachePrivate()
+                        : CacheControl.noCache().cachePrivate())
+                .varyBy(HttpHeaders.ACCEPT);
+        if (history.notModified()) {
+            return response.build();
+        }
+        if (history.operations().size() >= CustomerService.MAX_OPERATION_LIST) {
+            OperationView last = history.operations().getLast();
+            response.header(RESULT_TRUNCATED, "true")
+                    .header(HttpHeaders.LINK, "<" + UriComponentsBuilder.fromPath("/api/customers/{id}/operations")
+                            .queryParam("after", new OperationCursor(last.createdAt(), last.operationId()))
+                            .queryParam("limit", MAX_PAGE_SIZE)
+                            .buildAndExpand(customersId).encode().toUriString() + ">; rel=\"next\"");
+        }
+        return response.body(history.operations());
+    }
+
+    // GET /api/customers/{customersId}/operations/summary?from=2025-08-01&to=2025-08-31&granularity=day|month
+    @GetMapping("/{customersId}/operations/summary")
+    public ResponseEntity<?> getOperationSummary(
+            @PathVariable("customersId") Long customersId,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(defaultValue = "day") String granularity)
+            throws BadRequestException {
+
+        List<OperationSummary> summary = totalsService.getSummary(customersId, parseLocalDate(from), parseLocalDate(to),
+                parseGranularity(granularity)).orElse(null);
+        if (summary == null) {
+            return new ResponseEntity<>("Клиент не найден", HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(summary, HttpStatus.OK);
     }
 
     // POST /api/customers/{senderId}/transfermoney/{recipientId}
@@ -68,12 +185,58 @@ public class CustomerController {
     public ResponseEntity<String> transferMoney(
             @PathVariable("senderId") Long senderId,
             @PathVariable("recipientId") Long recipientId,
-            @RequestParam BigDecimal amount) {
+            @RequestParam String amount,
+            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey)
+            throws BadRequestException {
+
+        Money money = parseAmount(amount);
+        String fingerprint = "transfermoney:" + senderId + ":" + recipientId + ":" + money;
+        return idempotencyService.execute(idempotencyKey, fingerprint, () -> {
+            if (service.transferMoney(senderId, recipientId, money)) {
+                return new ResponseEntity<>("Перевод выполнен успешно", HttpStatus.OK);
+            } else {
+                return new ResponseEntity<>("Ошибка перевода: недостаточно средств или клиент не найден", HttpStatus.BAD_REQUEST);
+            }
+        });
+    }
+
+    private static String historyETag(String version, String representation) {
+        return "\"" + version + "-" + representation + "\"";
+    }
+
+    // Сравнение ETag с If-None-Match: слабое сравнение, как для GET по RFC 9110
+    private static boolean matches(List<String> ifNoneMatch, String eTag) {
+        for (String candidate : ifNoneMatch) {
+            if (candidate.equals("*") || candidate.equals(eTag) || candidate.equals("W/" + eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        if (service.transferMoney(senderId, recipientId, amount)) {
-            return new ResponseEntity<>("Перевод выполнен успешно", HttpStatus.OK);
-        } else {
-            return new ResponseEntity<>("Ошибка перевода: недостаточно средств или клиент не найден", HttpStatus.BAD_REQUEST);
+    // Какое представление выберет согласование по Accept среди produces (application/json первым):
+    // первый по качеству и точности тип из Accept, подходящий к одному из них
+    private static boolean prefersV1(List<MediaType> accept) {
+        List<MediaType> sorted = new ArrayList<>(accept);
+        MimeTypeUtils.sortBySpecificity(sorted);
+        for (MediaType type : sorted) {
+            if (type.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return false;
+            }
+            if (type.isCompatibleWith(ApiJsonConfig.V1_JSON)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Вспомогательная функция парсинга суммы: не больше двух знаков после точки.
+    // Money.toString всегда с двумя знаками: 100 и 100.00 - один и тот же запрос для Idempotency-Key
+    private Money parseAmount(String amount) throws BadRequestException {
+        try {
+            return Money.of(amount.trim());
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new BadRequestException("Invalid amount: at most 2 decimal places");
         }
     }
 
@@ -88,4 +251,47 @@ public class CustomerController {
         return null;
     }
 
+    // Вспомогательная функция парсинга даты без времени
+    private LocalDate parseLocalDate(String dateStr) throws BadRequestException {
+        try {
+            if (dateStr != null && !dateStr.trim().isEmpty())
+                return LocalDate.parse(dateStr);
+        } catch (Exception e) {
+            throw new BadRequestException("Invalid date format");
+        }
+        return null;
+    }
+
+    // Вспомогательная функция парсинга периода сводки
+    private SummaryGranularity parseGranularity(String granularity) throws BadRequestException {
+        try {
+            return SummaryGranularity.valueOf(granularity.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid granularity");
+        }
+    }
+
+    // Вспомогательная функция парсинга курсора страницы
+    private OperationCursor parseCursor(String cursor) throws BadRequestException {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            return OperationCursor.parse(cursor);
+        } catch (Exception e) {
+            throw new BadRequestException("Invalid cursor format");
+        }
+    }
+
+    // Размер страницы по умолчанию и ограничение сверху
+    private int parseLimit(Integer limit) throws BadRequestException {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (limit < 1) {
+            throw new BadRequestException("Limit must be positive");
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
 }
\ No newline at end of file
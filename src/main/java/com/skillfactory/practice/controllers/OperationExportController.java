@@ -0,0 +1,129 @@
+package com.skillfactory.practice.controllers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.skillfactory.practice.dto.OperationExportRow;
+import com.skillfactory.practice.service.CustomerService;
+import org.apache.coyote.BadRequestException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// Потоковая выгрузка истории операций в NDJSON или CSV.
+// Ответ пишется по мере чтения строк из БД, поэтому расход памяти не зависит от объёма истории
+@Profile("!reactive")
+@RestController
+public class OperationExportController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final MediaType CSV = MediaType.parseMediaType("text/csv;charset=UTF-8");
+
+    private final CustomerService service;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter rowWriter;
+
+    public OperationExportController(CustomerService service, ObjectMapper objectMapper) {
+        this.service = service;
+        this.objectMapper = objectMapper;
+        // Без сброса буфера после каждой строки: в сеть уходят полные блоки, а не строки по отдельности
+        this.rowWriter = objectMapper.writerFor(OperationExportRow.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    // GET /api/customers/{customersId}/operations/export?format=ndjson|csv
+    @GetMapping("/api/customers/{customersId}/operations/export")
+    public ResponseEntity<StreamingResponseBody> exportCustomerOperations(
+            @PathVariable("customersId") Long customersId,
+            @RequestParam(defaultValue = "ndjson") String format) throws BadRequestException {
+        return export(customersId, format, "operations-" + customersId);
+    }
+
+    // GET /api/operations/export?format=ndjson|csv - все операции всех клиентов (ночная сверка)
+    @GetMapping("/api/operations/export")
+    public ResponseEntity<StreamingResponseBody> exportAllOperations(
+            @RequestParam(defaultValue = "ndjson") String format) throws BadRequestException {
+        return export(null, format, "operations");
+    }
+
+    private ResponseEntity<StreamingResponseBody> export(Long customerId, String format, String fileName)
+            throws BadRequestException {
+        StreamingResponseBody body;
+        MediaType mediaType;
+        switch (format) {
+            case "ndjson" -> {
+                body = out -> writeNdjson(customerId, out);
+                mediaType = NDJSON;
+            }
+            case "csv" -> {
+                body = out -> writeCsv(customerId, out);
+                mediaType = CSV;
+            }
+            default -> throw new BadRequestException("Unsupported export format: " + format);
+        }
+
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "." + format + "\"")
+                .body(body);
+    }
+
+    // Один JSON-объект на строку, генератор переиспользуется для всех строк
+    private void writeNdjson(Long customerId, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            service.exportOperations(customerId, row -> {
+                try {
+                    rowWriter.writeValue(generator, row);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private void writeCsv(Long customerId, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("operation_id,customer_id,type,amount,created_at\n");
+        service.exportOperations(customerId, row -> {
+            try {
+                writeCsvRow(writer, row);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+
+    private static void writeCsvRow(Writer writer, OperationExportRow row) throws IOException {
+        writer.write(String.valueOf(row.operationId()));
+        writer.write(',');
+        writer.write(String.valueOf(row.customerId()));
+        writer.write(',');
+        writer.write(row.type().name());
+        writer.write(',');
+        writer.write(row.amount().toString());
+        writer.write(',');
+        if (row.createdAt() != null) {
+            writer.write(row.createdAt().toString());
+        }
+        writer.write('\n');
+    }
+}
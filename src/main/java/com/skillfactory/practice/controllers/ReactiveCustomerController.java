@@ -0,0 +1,163 @@
+package com.skillfactory.practice.controllers;
+
+import com.skillfactory.practice.config.ApiJsonConfig;
+import com.skillfactory.practice.dto.BalanceView;
+import com.skillfactory.practice.dto.OperationCursor;
+import com.skillfactory.practice.dto.OperationPage;
+import com.skillfactory.practice.dto.OperationView;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.service.ReactiveCustomerService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+// Реактивный вариант CustomerController (профиль reactive): те же пути, ответы и форматы JSON.
+// Заголовок Idempotency-Key и ETag истории операций в этом варианте не поддерживаются
+@Profile("reactive")
+@RestController
+@RequestMapping("/api/customers")
+public class ReactiveCustomerController {
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final ReactiveCustomerService service;
+    // Разделитель дробной части в балансе - как у String.format("%.2f") в локали JVM
+    private final char decimalSeparator = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT))
+            .getDecimalSeparator();
+
+    public ReactiveCustomerController(ReactiveCustomerService service) {
+        this.service = service;
+    }
+
+    // GET /api/customers/{customersId}/balance - {"customerId":1,"balance":1000.50,"currency":"RUB"}
+    @GetMapping(value = "/{customersId}/balance",
+            produces = {MediaType.APPLICATION_JSON_VALUE, ApiJsonConfig.V1_JSON_VALUE})
+    public Mono<ResponseEntity<BalanceView>> getBalance(@PathVariable("customersId") Long customersId) {
+        return service.getBalance(customersId)
+                .map(balance -> ResponseEntity.ok(BalanceView.rub(customersId, balance)))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    // GET /api/customers/{customersId}/balance с Accept: text/plain - прежний текстовый ответ
+    @GetMapping(value = "/{customersId}/balance", produces = MediaType.TEXT_PLAIN_VALUE)
+    public Mono<ResponseEntity<String>> getBalanceText(@PathVariable("customersId") Long customersId) {
+        return service.getBalance(customersId)
+                .map(balance -> new ResponseEntity<>("Баланс клиента " + customersId + ": "
+                        + balance.toString(decimalSeparator) + " руб.", HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>("Клиент не найден", HttpStatus.NOT_FOUND));
+    }
+
+    // POST /api/customers/{customersId}/putmoney
+    @PostMapping("/{customersId}/putmoney")
+    public Mono<ResponseEntity<String>> putMoney(@PathVariable("customersId") Long customersId,
+                                                 @RequestParam String amount) {
+        return service.putMoney(customersId, parseAmount(amount))
+                .thenReturn(new ResponseEntity<>("Пополнение успешно выполнено", HttpStatus.OK));
+    }
+
+    // POST /api/customers/{customersId}/takemoney
+    @PostMapping("/{customersId}/takemoney")
+    public Mono<ResponseEntity<String>> takeMoney(@PathVariable("customersId") Long customersId,
+                                                  @RequestParam String amount) {
+        return service.takeMoney(customersId, parseAmount(amount))
+                .map(success -> success
+                        ? new ResponseEntity<>("Операция снятия выполнена успешно", HttpStatus.OK)
+                        : new ResponseEntity<>("Недостаточно средств на счете", HttpStatus.BAD_REQUEST));
+    }
+
+    // GET /api/customers/{customersId}/operations - история потоком, без накопления списка в памяти
+    @GetMapping(value = "/{customersId}/operations", params = {"!after", "!limit"},
+            produces = {MediaType.APPLICATION_JSON_VALUE, ApiJsonConfig.V1_JSON_VALUE})
+    public Flux<OperationView> getOperationList(
+            @PathVariable("customersId") Long customersId,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to) {
+        return service.getOperationList(customersId, parseLocalDateTime(from), parseLocalDateTime(to));
+    }
+
+    // GET /api/customers/{customersId}/operations?limit=100&after=2025-08-15T18:43:50.400311,2144 - постранично по курсору
+    @GetMapping(value = "/{customersId}/operations",
+            produces = {MediaType.APPLICATION_JSON_VALUE, ApiJsonConfig.V1_JSON_VALUE})
+    public Mono<OperationPage> getOperationPage(
+            @PathVariable("customersId") Long customersId,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+        if (from != null || to != null) {
+            throw badRequest("Cursor pagination cannot be combined with from/to");
+        }
+        return service.getOperationPage(customersId, parseCursor(after), parseLimit(limit));
+    }
+
+    // POST /api/customers/{senderId}/transfermoney/{recipientId}
+    @PostMapping("/{senderId}/transfermoney/{recipientId}")
+    public Mono<ResponseEntity<String>> transferMoney(
+            @PathVariable("senderId") Long senderId,
+            @PathVariable("recipientId") Long recipientId,
+            @RequestParam String amount) {
+        return service.transferMoney(senderId, recipientId, parseAmount(amount))
+                .map(success -> success
+                        ? new ResponseEntity<>("Перевод выполнен успешно", HttpStatus.OK)
+                        : new ResponseEntity<>("Ошибка перевода: недостаточно средств или клиент не найден",
+                                HttpStatus.BAD_REQUEST));
+    }
+
+    // Вспомогательная функция парсинга суммы: не больше двух знаков после точки
+    private Money parseAmount(String amount) {
+        try {
+            return Money.of(amount.trim());
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw badRequest("Invalid amount: at most 2 decimal places");
+        }
+    }
+
+    // Вспомогательная функция парсинга даты
+    private LocalDateTime parseLocalDateTime(String dateStr) {
+        try {
+            if (dateStr != null && !dateStr.trim().isEmpty())
+                return LocalDateTime.parse(dateStr, DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
+        } catch (Exception e) {
+            throw badRequest("Invalid date format");
+        }
+        return null;
+    }
+
+    // Вспомогательная функция парсинга курсора страницы
+    private OperationCursor parseCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            return OperationCursor.parse(cursor);
+        } catch (Exception e) {
+            throw badRequest("Invalid cursor format");
+        }
+    }
+
+    // Размер страницы по умолчанию и ограничение сверху
+    private int parseLimit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (limit < 1) {
+            throw badRequest("Limit must be positive");
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    private static ResponseStatusException badRequest(String reason) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, reason);
+    }
+}
@@ -0,0 +1,42 @@
+package com.skillfactory.practice.controllers;
+
+import com.skillfactory.practice.dto.TransferRequest;
+import com.skillfactory.practice.dto.TransferResult;
+import com.skillfactory.practice.service.TransferBatchService;
+import org.apache.coyote.BadRequestException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@Profile("!reactive")
+@RestController
+@RequestMapping("/api/transfers")
+public class TransferController {
+
+    private final TransferBatchService transferBatchService;
+    private final int maxBatchSize;
+
+    public TransferController(TransferBatchService transferBatchService,
+                              @Value("${app.transfers.batch.max-size:10000}") int maxBatchSize) {
+        this.transferBatchService = transferBatchService;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    // POST /api/transfers/batch
+    // [{"senderId": 1, "recipientId": 2, "amount": 100.00}, ...] -> результат по каждому переводу
+    @PostMapping("/batch")
+    public ResponseEntity<List<TransferResult>> transferBatch(@RequestBody List<TransferRequest> transfers)
+            throws BadRequestException {
+        if (transfers.size() > maxBatchSize) {
+            throw new BadRequestException("Batch size exceeds " + maxBatchSize);
+        }
+        return new ResponseEntity<>(transferBatchService.transfer(transfers), HttpStatus.OK);
+    }
+}
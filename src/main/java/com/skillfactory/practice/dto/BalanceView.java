@@ -0,0 +1,14 @@
+package com.skillfactory.practice.dto;
+
+import com.skillfactory.practice.entity.Money;
+
+// Баланс клиента в JSON-ответе: {"customerId":1,"balance":1000.50,"currency":"RUB"}
+public record BalanceView(Long customerId, Money balance, String currency) {
+
+    // Все счета в рублях
+    public static final String RUB = "RUB";
+
+    public static BalanceView rub(Long customerId, Money balance) {
+        return new BalanceView(customerId, balance, RUB);
+    }
+}
@@ -0,0 +1,13 @@
+package com.skillfactory.practice.dto;
+
+import java.math.BigDecimal;
+
+// Расхождение при сверке: баланс клиента в customer и баланс по журналу операций
+public interface LedgerMismatch {
+
+    Long getCustomerId();
+
+    BigDecimal getBalance();
+
+    BigDecimal getLedgerBalance();
+}
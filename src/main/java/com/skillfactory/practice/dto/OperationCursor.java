@@ -0,0 +1,23 @@
+package com.skillfactory.practice.dto;
+
+import java.time.LocalDateTime;
+
+// Курсор постраничного вывода истории: позиция последней выданной операции в порядке (createdAt, operationId).
+// В запросе передаётся строкой вида "2025-08-15T18:43:50.400311,2144"
+public record OperationCursor(LocalDateTime createdAt, Long operationId) {
+
+    public static OperationCursor parse(String value) {
+        int separator = value.lastIndexOf(',');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + value);
+        }
+        return new OperationCursor(
+                LocalDateTime.parse(value.substring(0, separator).trim()),
+                Long.parseLong(value.substring(separator + 1).trim()));
+    }
+
+    @Override
+    public String toString() {
+        return createdAt + "," + operationId;
+    }
+}
@@ -0,0 +1,12 @@
+package com.skillfactory.practice.dto;
+
+import com.skillfactory.practice.enums.OperationType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Операция, перенесённая из outbox в журнал: событие для внутренних подписчиков (@EventListener).
+// События одного клиента публикуются в порядке ledgerSeq
+public record OperationEvent(Long operationId, Long ledgerSeq, Long customerId, OperationType type,
+                             BigDecimal amount, LocalDateTime createdAt) {
+}
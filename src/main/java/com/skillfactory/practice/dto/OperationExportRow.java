@@ -0,0 +1,11 @@
+package com.skillfactory.practice.dto;
+
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.enums.OperationType;
+
+import java.time.LocalDateTime;
+
+// Строка выгрузки истории операций. Читается проекцией, без загрузки сущностей Operation и Customer
+public record OperationExportRow(Long operationId, Long customerId, OperationType type, Money amount,
+                                 LocalDateTime createdAt) {
+}
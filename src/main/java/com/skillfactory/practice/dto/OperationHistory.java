@@ -0,0 +1,12 @@
+package com.skillfactory.practice.dto;
+
+import java.util.List;
+
+// История за период с версией для ETag. closed - период закончился и больше не меняется (кэшируется).
+// operations == null - у клиента уже есть история этой версии, операции не читались
+public record OperationHistory(String version, boolean closed, List<OperationView> operations) {
+
+    public boolean notModified() {
+        return operations == null;
+    }
+}
@@ -0,0 +1,7 @@
+package com.skillfactory.practice.dto;
+
+import java.util.List;
+
+// Страница истории операций и курсор для запроса следующей страницы (null - страниц больше нет)
+public record OperationPage(List<OperationView> items, String nextCursor) {
+}
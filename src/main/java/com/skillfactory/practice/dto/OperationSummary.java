@@ -0,0 +1,9 @@
+package com.skillfactory.practice.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Итоги операций клиента за период (день или месяц, period - его первый день)
+public record OperationSummary(LocalDate period, BigDecimal deposited, BigDecimal withdrawn,
+                               long deposits, long withdrawals) {
+}
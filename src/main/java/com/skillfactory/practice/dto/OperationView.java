@@ -0,0 +1,10 @@
+package com.skillfactory.practice.dto;
+
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.enums.OperationType;
+
+import java.time.LocalDateTime;
+
+// Операция в ответах API чтения истории: только собственные поля, без вложенного клиента
+public record OperationView(Long operationId, OperationType type, Money amount, LocalDateTime createdAt) {
+}
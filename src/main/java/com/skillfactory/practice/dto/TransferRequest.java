@@ -0,0 +1,7 @@
+package com.skillfactory.practice.dto;
+
+import com.skillfactory.practice.entity.Money;
+
+// Один перевод в пакетном запросе POST /api/transfers/batch
+public record TransferRequest(Long senderId, Long recipientId, Money amount) {
+}
@@ -0,0 +1,8 @@
+package com.skillfactory.practice.dto;
+
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.enums.TransferStatus;
+
+// Результат одного перевода из пакета, index - позиция перевода в запросе
+public record TransferResult(int index, Long senderId, Long recipientId, Money amount, TransferStatus status) {
+}
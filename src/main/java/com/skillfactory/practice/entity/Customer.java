@@ -1,11 +1,8 @@
 package com.skillfactory.practice.entity;
 
 import jakarta.persistence.*;
-import jakarta.validation.constraints.Min;
 import lombok.*;
 
-import java.math.BigDecimal;
-
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -13,15 +10,17 @@ import java.math.BigDecimal;
 @Table(name = "customer")
 public class Customer {
 
+    // Последовательность с выдачей блоками по 50 (pooled-lo), как у Operation
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_seq")
+    @SequenceGenerator(name = "customer_seq", sequenceName = "customer_seq", allocationSize = 50)
     private long id;
 
+    // Копейки в long, в БД - numeric(38,2) (MoneyConverter)
     @Column(nullable = false)
-    @Min(value = 0, message = "Баланс не может быть отрицательным.")
-    private BigDecimal balance;
+    private Money balance;
 
-    public Customer(BigDecimal balance) {
+    public Customer(Money balance) {
         this.balance = balance;
     }
 }
@@ -0,0 +1,33 @@
+package com.skillfactory.practice.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// Выполненный запрос с ключом идемпотентности: повтор запроса с тем же ключом получает сохранённый ответ
+@Entity
+@Table(name = "idempotency_keys")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdempotencyKey {
+
+    @Id
+    @Column(name = "idempotency_key", length = 255)
+    private String key;
+
+    // Описание запроса (операция, клиенты, сумма): тот же ключ с другим запросом отклоняется
+    @Column(nullable = false)
+    private String fingerprint;
+
+    @Column(nullable = false)
+    private int statusCode;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String responseBody;
+
+    @Column(columnDefinition = "TIMESTAMP WITH TIME ZONE", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+}
@@ -0,0 +1,35 @@
+package com.skillfactory.practice.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Снимок баланса клиента: баланс после всех его операций с ledger_seq <= ledgerSeq.
+// Снимки только добавляются (LedgerSnapshotRepository.takeSnapshots), баланс по журналу -
+// последний снимок плюс операции после него
+@Entity
+@Table(name = "ledger_snapshots")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LedgerSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long snapshotId;
+
+    @Column(nullable = false)
+    private Long customerId;
+
+    @Column(nullable = false)
+    private Long ledgerSeq;
+
+    @Column(nullable = false)
+    private BigDecimal balance;
+
+    @Column(columnDefinition = "TIMESTAMP WITH TIME ZONE", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+}
@@ -0,0 +1,135 @@
+package com.skillfactory.practice.entity;
+
+import java.math.BigDecimal;
+
+// Денежная сумма в копейках (фиксированная точка, два знака после запятой). Арифметика на long без
+// промежуточных BigDecimal, переполнение - ArithmeticException. В БД - numeric(38,2) через MoneyConverter,
+// в JSON - число с двумя знаками (MoneyJsonComponent)
+public record Money(long minorUnits) implements Comparable<Money> {
+
+    public static final Money ZERO = new Money(0);
+
+    // Наибольшая длина суммы текстом: "-92233720368547758.08"
+    public static final int MAX_LENGTH = 21;
+
+    private static final int SCALE = 2;
+
+    public static Money ofMinorUnits(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    // Больше двух знаков после запятой или сумма вне диапазона long копеек - ArithmeticException
+    public static Money of(BigDecimal amount) {
+        return ofMinorUnits(amount.setScale(SCALE).unscaledValue().longValueExact());
+    }
+
+    // Разбор "123", "-123.4", "123.45" без BigDecimal. Другие форматы (экспонента, больше двух знаков
+    // после точки) - NumberFormatException, выход за диапазон - ArithmeticException
+    public static Money of(String amount) {
+        int length = amount.length();
+        int index = 0;
+        boolean negative = false;
+        if (length > 0 && (amount.charAt(0) == '-' || amount.charAt(0) == '+')) {
+            negative = amount.charAt(0) == '-';
+            index++;
+        }
+        long units = 0;
+        int integerDigits = 0;
+        while (index < length && isDigit(amount.charAt(index))) {
+            units = Math.addExact(Math.multiplyExact(units, 10), amount.charAt(index++) - '0');
+            integerDigits++;
+        }
+        int fractionDigits = 0;
+        if (index < length && amount.charAt(index) == '.') {
+            index++;
+            while (index < length && isDigit(amount.charAt(index)) && fractionDigits < SCALE) {
+                units = Math.addExact(Math.multiplyExact(units, 10), amount.charAt(index++) - '0');
+                fractionDigits++;
+            }
+        }
+        if (index != length || integerDigits + fractionDigits == 0) {
+            throw new NumberFormatException("Неверная сумма: " + amount);
+        }
+        for (; fractionDigits < SCALE; fractionDigits++) {
+            units = Math.multiplyExact(units, 10);
+        }
+        return ofMinorUnits(negative ? -units : units);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    public Money plus(Money other) {
+        return ofMinorUnits(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return ofMinorUnits(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money negate() {
+        return ofMinorUnits(Math.negateExact(minorUnits));
+    }
+
+    public boolean isLessThan(Money other) {
+        return minorUnits < other.minorUnits;
+    }
+
+    public int signum() {
+        return Long.signum(minorUnits);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    // "-1234.05"
+    @Override
+    public String toString() {
+        return toString('.');
+    }
+
+    // Сумма с заданным разделителем дробной части, без разделителей разрядов
+    public String toString(char decimalSeparator) {
+        char[] buffer = new char[MAX_LENGTH];
+        return new String(buffer, 0, format(buffer, decimalSeparator));
+    }
+
+    // Сумма текстом в начало buffer (не меньше MAX_LENGTH), результат - число символов. Для записи в JSON
+    // без промежуточной строки
+    public int format(char[] buffer, char decimalSeparator) {
+        // Для Long.MIN_VALUE модуль отрицателен, поэтому деление и остаток - беззнаковые
+        long units = Math.abs(minorUnits);
+        long fraction = Long.remainderUnsigned(units, 100);
+        long integer = Long.divideUnsigned(units, 100);
+        int length = (minorUnits < 0 ? 1 : 0) + digits(integer) + 3;
+        int index = length;
+        buffer[--index] = (char) ('0' + fraction % 10);
+        buffer[--index] = (char) ('0' + fraction / 10);
+        buffer[--index] = decimalSeparator;
+        do {
+            buffer[--index] = (char) ('0' + integer % 10);
+            integer /= 10;
+        } while (integer != 0);
+        if (minorUnits < 0) {
+            buffer[--index] = '-';
+        }
+        return length;
+    }
+
+    // Целая часть не больше Long.MIN_VALUE / 100 по модулю, поэтому дальше деление знаковое
+    private static int digits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
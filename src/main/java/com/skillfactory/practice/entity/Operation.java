@@ -2,10 +2,8 @@ package com.skillfactory.practice.entity;
 
 import com.skillfactory.practice.enums.OperationType;
 import jakarta.persistence.*;
-import jakarta.validation.constraints.Min;
 import lombok.*;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
@@ -15,13 +13,18 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 public class Operation {
 
+    // Последовательность с выдачей блоками по 50 (pooled-lo): ID известен до INSERT, и вставки идут JDBC-пакетами
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "operations_seq")
+    @SequenceGenerator(name = "operations_seq", sequenceName = "operations_seq", allocationSize = 50)
     @Setter(AccessLevel.NONE)
     private Long operationId;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    // Клиент загружается только по обращению: история читается проекциями и клиента не требует
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "customer_id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private Customer customer;
 
     @Enumerated(EnumType.STRING)
@@ -29,8 +32,7 @@ public class Operation {
     private OperationType type;
 
     @Column(nullable = false)
-    @Min(value = 0, message = "Сумма операции не может быть отрицательной.")
-    private BigDecimal amount;
+    private Money amount;
 
     @Column(columnDefinition = "TIMESTAMP WITH TIME ZONE", updatable = false)
     @Setter(AccessLevel.NONE)
@@ -0,0 +1,6 @@
+package com.skillfactory.practice.enums;
+
+public enum SummaryGranularity {
+    DAY,   // Итоги по дням
+    MONTH  // Итоги по месяцам
+}
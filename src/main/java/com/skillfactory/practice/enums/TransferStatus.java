@@ -0,0 +1,8 @@
+package com.skillfactory.practice.enums;
+
+public enum TransferStatus {
+    COMPLETED,           // Перевод выполнен
+    INSUFFICIENT_FUNDS,  // Недостаточно средств у отправителя
+    CUSTOMER_NOT_FOUND,  // Отправитель или получатель не найден
+    INVALID_AMOUNT       // Сумма не указана или не положительна
+}
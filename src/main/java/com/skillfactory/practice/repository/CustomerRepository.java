@@ -1,9 +1,47 @@
 package com.skillfactory.practice.repository;
 
 import com.skillfactory.practice.entity.Customer;
-import org.springframework.data.repository.CrudRepository;
+import com.skillfactory.practice.entity.Money;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
-public interface CustomerRepository extends CrudRepository<Customer, Long> {
+public interface CustomerRepository extends JpaRepository<Customer, Long> {
+
+    // SELECT ... FOR UPDATE: строка клиента блокируется до конца транзакции
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Customer c where c.id = :id")
+    Optional<Customer> findByIdForUpdate(@Param("id") Long id);
+
+    // Блокировка набора клиентов: строки блокируются в порядке возрастания ID
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Customer c where c.id in :ids order by c.id")
+    List<Customer> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    // Атомарное пополнение одним UPDATE, возвращает количество изменённых строк (0 - клиент не найден)
+    @Modifying
+    @Query("update Customer c set c.balance = c.balance + :amount where c.id = :id")
+    int deposit(@Param("id") Long id, @Param("amount") Money amount);
+
+    // Атомарное списание одним UPDATE: строка изменяется только при достаточном балансе
+    @Modifying
+    @Query("update Customer c set c.balance = c.balance - :amount where c.id = :id and c.balance >= :amount")
+    int withdraw(@Param("id") Long id, @Param("amount") Money amount);
+
+    // Диапазон ID клиентов для обработки по частям (0 - клиентов нет)
+    @Query("select coalesce(min(c.id), 0) from Customer c")
+    long findMinId();
+
+    @Query("select coalesce(max(c.id), 0) from Customer c")
+    long findMaxId();
+
 }
@@ -0,0 +1,40 @@
+package com.skillfactory.practice.repository;
+
+import com.skillfactory.practice.entity.IdempotencyKey;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, String> {
+
+    // Один INSERT по первичному ключу: 1 - ключ сохранён, 0 - ключ уже занят.
+    // Если ключ вставлен параллельной незавершённой транзакцией, INSERT дожидается её завершения
+    @Modifying
+    @Query(value = "insert into idempotency_keys (idempotency_key, fingerprint, status_code, response_body, created_at)"
+            + " values (:key, :fingerprint, :statusCode, :responseBody, now())"
+            + " on conflict (idempotency_key) do nothing", nativeQuery = true)
+    int insertIfAbsent(@Param("key") String key, @Param("fingerprint") String fingerprint,
+                       @Param("statusCode") int statusCode, @Param("responseBody") String responseBody);
+
+    // Ответ для ключа, занятого insertIfAbsent со статусом IdempotencyService.PENDING
+    @Modifying
+    @Query("update IdempotencyKey k set k.statusCode = :statusCode, k.responseBody = :responseBody where k.key = :key")
+    int saveResponse(@Param("key") String key, @Param("statusCode") int statusCode,
+                     @Param("responseBody") String responseBody);
+
+    // Последние ключи для заполнения кэша при старте
+    @Query("select k from IdempotencyKey k where k.createdAt > :since order by k.createdAt desc")
+    List<IdempotencyKey> findCreatedAfter(@Param("since") LocalDateTime since, Limit limit);
+
+    @Modifying
+    @Query("delete from IdempotencyKey k where k.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+
+}
@@ -0,0 +1,57 @@
+package com.skillfactory.practice.repository;
+
+import com.skillfactory.practice.dto.LedgerMismatch;
+import com.skillfactory.practice.entity.LedgerSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+// Баланс по журналу считается одним запросом: последний снимок клиента (по первичному ключу индекса
+// uk_ledger_snapshots_customer_seq) и сумма хвоста операций после него (idx_operations_customer_ledger_seq).
+// Каждый запрос видит согласованный срез БД, поэтому снимок и хвост не расходятся при параллельной записи
+@Repository
+public interface LedgerSnapshotRepository extends JpaRepository<LedgerSnapshot, Long> {
+
+    String LATEST_SNAPSHOT = " left join lateral (select s.ledger_seq, s.balance from ledger_snapshots s"
+            + " where s.customer_id = c.id order by s.ledger_seq desc limit 1) snapshot on true";
+
+    // Хвост журнала - операции после снимка, включая ещё не перенесённые из outbox (OperationOutbox).
+    // Перенос строки из outbox в operations атомарен, поэтому операция попадает в хвост ровно один раз
+    String TAIL = " cross join lateral (select count(*) as operations, max(o.ledger_seq) as last_seq,"
+            + " coalesce(sum(case when o.type = 'DEPOSIT' then o.amount else -o.amount end), 0) as delta"
+            + " from (select ledger_seq, type, amount from operations"
+            + " where customer_id = c.id and ledger_seq > coalesce(snapshot.ledger_seq, 0)"
+            + " union all select ledger_seq, type, amount from operation_outbox"
+            + " where customer_id = c.id and ledger_seq > coalesce(snapshot.ledger_seq, 0)) o) tail";
+
+    String LEDGER_BALANCE = "coalesce(snapshot.balance, 0) + tail.delta";
+
+    // Баланс клиента по журналу (пусто - клиент не найден)
+    @Query(value = "select " + LEDGER_BALANCE + " from customer c" + LATEST_SNAPSHOT + TAIL + " where c.id = :customerId",
+            nativeQuery = true)
+    Optional<BigDecimal> findLedgerBalance(@Param("customerId") Long customerId);
+
+    // Новые снимки для клиентов из диапазона ID, у которых после последнего снимка накопилось не меньше
+    // minOperations операций. Возвращает количество созданных снимков
+    @Modifying
+    @Query(value = "insert into ledger_snapshots (customer_id, ledger_seq, balance, created_at)"
+            + " select c.id, tail.last_seq, " + LEDGER_BALANCE + ", now() from customer c" + LATEST_SNAPSHOT + TAIL
+            + " where c.id between :fromId and :toId and tail.operations >= :minOperations",
+            nativeQuery = true)
+    int takeSnapshots(@Param("fromId") long fromId, @Param("toId") long toId,
+                      @Param("minOperations") long minOperations);
+
+    // Клиенты из диапазона ID, у которых баланс расходится с журналом
+    @Query(value = "select c.id as customerId, c.balance as balance, " + LEDGER_BALANCE + " as ledgerBalance"
+            + " from customer c" + LATEST_SNAPSHOT + TAIL
+            + " where c.id between :fromId and :toId and c.balance <> " + LEDGER_BALANCE
+            + " order by c.id", nativeQuery = true)
+    List<LedgerMismatch> findMismatches(@Param("fromId") long fromId, @Param("toId") long toId);
+
+}
@@ -1,15 +1,83 @@
 package com.skillfactory.practice.repository;
 
+import com.skillfactory.practice.dto.OperationExportRow;
+import com.skillfactory.practice.dto.OperationView;
 import com.skillfactory.practice.entity.Operation;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface OperationRepository extends CrudRepository<Operation, Long> {
 
     List<Operation> findAllByCustomer_Id(Long customerId);
 
-    List<Operation> findByCustomer_IdAndCreatedAtBetween(Long customerId, LocalDateTime startDate, LocalDateTime endDate);
+    // Баланс по всей истории клиента: пополнения минус списания
+    @Query("select coalesce(sum(case when o.type = com.skillfactory.practice.enums.OperationType.DEPOSIT"
+            + " then o.amount else -o.amount end), 0) from Operation o where o.customer.id = :customerId")
+    BigDecimal sumByCustomerId(@Param("customerId") Long customerId);
+
+    // История клиента проекцией OperationView: читаются только поля операции, клиент не загружается.
+    // Для каждого набора границ периода - свой запрос: условие с отсутствующей границей не использует индекс.
+    // Все четыре запроса читают только покрывающий индекс idx_operations_customer_created_at (Index Only Scan)
+    // по порядку и останавливаются на limit строк
+    @Query("select new com.skillfactory.practice.dto.OperationView(o.operationId, o.type, o.amount, o.createdAt)"
+            + " from Operation o where o.customer.id = :customerId order by o.createdAt, o.operationId")
+    List<OperationView> findViewsByCustomerId(@Param("customerId") Long customerId, Limit limit);
+
+    @Query("select new com.skillfactory.practice.dto.OperationView(o.operationId, o.type, o.amount, o.createdAt)"
+            + " from Operation o where o.customer.id = :customerId and o.createdAt >= :startDate"
+            + " order by o.createdAt, o.operationId")
+    List<OperationView> findViewsByCustomerIdAndCreatedAtFrom(@Param("customerId") Long customerId,
+                                                              @Param("startDate") LocalDateTime startDate,
+                                                              Limit limit);
+
+    @Query("select new com.skillfactory.practice.dto.OperationView(o.operationId, o.type, o.amount, o.createdAt)"
+            + " from Operation o where o.customer.id = :customerId and o.createdAt <= :endDate"
+            + " order by o.createdAt, o.operationId")
+    List<OperationView> findViewsByCustomerIdAndCreatedAtUntil(@Param("customerId") Long customerId,
+                                                               @Param("endDate") LocalDateTime endDate,
+                                                               Limit limit);
+
+    @Query("select new com.skillfactory.practice.dto.OperationView(o.operationId, o.type, o.amount, o.createdAt)"
+            + " from Operation o where o.customer.id = :customerId and o.createdAt between :startDate and :endDate"
+            + " order by o.createdAt, o.operationId")
+    List<OperationView> findViewsByCustomerIdAndCreatedAtBetween(@Param("customerId") Long customerId,
+                                                                 @Param("startDate") LocalDateTime startDate,
+                                                                 @Param("endDate") LocalDateTime endDate,
+                                                                 Limit limit);
+
+    // Следующая страница после курсора: сравнение пары (createdAt, operationId) выполняется по тому же индексу,
+    // поэтому время ответа не зависит от длины истории. Условие createdAt >= :createdAt повторяет сравнение пары
+    // отдельно: по нему PostgreSQL отбрасывает секции месяцев до курсора
+    @Query("select new com.skillfactory.practice.dto.OperationView(o.operationId, o.type, o.amount, o.createdAt)"
+            + " from Operation o where o.customer.id = :customerId"
+            + " and o.createdAt >= :createdAt and (o.createdAt, o.operationId) > (:createdAt, :operationId)"
+            + " order by o.createdAt, o.operationId")
+    List<OperationView> findPageAfter(@Param("customerId") Long customerId,
+                                      @Param("createdAt") LocalDateTime createdAt,
+                                      @Param("operationId") Long operationId,
+                                      Limit limit);
+
+    // Потоковое чтение истории клиента для выгрузки: курсор БД с порциями по 1000 строк.
+    // Работает только внутри транзакции, поток нужно закрыть после чтения
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.skillfactory.practice.dto.OperationExportRow(o.operationId, o.customer.id, o.type, o.amount, o.createdAt)"
+            + " from Operation o where o.customer.id = :customerId order by o.createdAt, o.operationId")
+    Stream<OperationExportRow> streamByCustomerId(@Param("customerId") Long customerId);
+
+    // Потоковое чтение операций всех клиентов (ночная сверка)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.skillfactory.practice.dto.OperationExportRow(o.operationId, o.customer.id, o.type, o.amount, o.createdAt)"
+            + " from Operation o order by o.operationId")
+    Stream<OperationExportRow> streamAll();
 
 }
@@ -0,0 +1,346 @@
+package com.skillfactory.practice.service;
+
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.enums.OperationType;
+import com.skillfactory.practice.enums.TransferStatus;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.Stream;
+
+// Движок счетов в памяти (app.engine.enabled) для CustomerService: балансы клиентов в копейках (long)
+// разбиты по ID на shards шардов, каждый шард выполняет свои команды в одном потоке без блокировок (AccountShard).
+// Подтверждённая операция записана в журнал шарда (AccountJournal, fsync на пакет команд), в customer и operations
+// она попадает позже, пакетами в фоне. При запуске несохранённые записи журналов дописываются в БД.
+// Клиент загружается из БД при первом обращении. Движок - единственный писатель балансов: записи в customer
+// в обход него (другие экземпляры приложения, ручные UPDATE, LedgerService.rebuildBalance) в памяти не видны.
+// История операций и сводки отстают от балансов на время фоновой записи (метрика engine.unpersisted)
+@Component
+public class AccountEngine implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountEngine.class);
+
+    private final boolean enabled;
+    private final int shardCount;
+    private final Path journalDir;
+    private final long segmentSize;
+    private final int maxBatch;
+    private final int persistBatch;
+    private final int maxUnpersisted;
+    private final Duration shutdownTimeout;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Timer commitTimer;
+    private final DistributionSummary batchSizes;
+
+    private volatile AccountShard[] shards;
+
+    public AccountEngine(@Value("${app.engine.enabled:false}") boolean enabled,
+                         @Value("${app.engine.shards:8}") int shardCount,
+                         @Value("${app.engine.journal-dir:engine-journal}") Path journalDir,
+                         @Value("${app.engine.segment-size:64MB}") DataSize segmentSize,
+                         @Value("${app.engine.max-batch:4096}") int maxBatch,
+                         @Value("${app.engine.persist-batch-size:5000}") int persistBatch,
+                         @Value("${app.engine.max-unpersisted:1000000}") int maxUnpersisted,
+                         @Value("${app.engine.shutdown-timeout:30s}") Duration shutdownTimeout,
+                         JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.shardCount = shardCount;
+        this.journalDir = journalDir;
+        this.segmentSize = segmentSize.toBytes();
+        this.maxBatch = maxBatch;
+        this.persistBatch = persistBatch;
+        this.maxUnpersisted = maxUnpersisted;
+        this.shutdownTimeout = shutdownTimeout;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.commitTimer = Timer.builder("engine.journal.commit")
+                .description("Запись пакета команд шарда в журнал с fsync")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("engine.journal.batch")
+                .description("Команды в одном пакете шарда (на один fsync журнала)")
+                .register(meterRegistry);
+        Gauge.builder("engine.unpersisted", this, AccountEngine::unpersisted)
+                .description("Подтверждённые операции движка, ещё не записанные в БД")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Баланс в копейках, пустой - клиента нет
+    public CompletableFuture<OptionalLong> balance(long customerId) {
+        return shardOf(customerId).submit(shard -> {
+            long balance = shard.balance(customerId);
+            return balance == AccountShard.MISSING ? OptionalLong.empty() : OptionalLong.of(balance);
+        });
+    }
+
+    // false - клиента нет
+    public CompletableFuture<Boolean> deposit(long customerId, long amount) {
+        return shardOf(customerId).submit(shard -> shard.deposit(customerId, amount));
+    }
+
+    // false - клиента нет или недостаточно средств
+    public CompletableFuture<Boolean> withdraw(long customerId, long amount) {
+        return shardOf(customerId).submit(shard -> shard.withdraw(customerId, amount));
+    }
+
+    // Перевод в пределах шарда - одна команда. Перевод между шардами:
+    // 1) шард получателя подтверждает, что получатель есть (клиенты не удаляются через API);
+    // 2) шард отправителя списывает сумму и записывает в свой журнал обе части перевода - после fsync
+    //    перевод не теряется при сбое, зачисление восстановится из журнала отправителя;
+    // 3) шард получателя зачисляет сумму в памяти, после этого перевод подтверждается вызывающему.
+    // Между 2 и 3 сумма не видна ни у отправителя, ни у получателя, но перевод ещё и не подтверждён
+    public CompletableFuture<TransferStatus> transfer(long senderId, long recipientId, long amount) {
+        return transfer(shardOf(senderId), shardOf(recipientId), senderId, recipientId, amount);
+    }
+
+    private static CompletableFuture<TransferStatus> transfer(AccountShard senderShard, AccountShard recipientShard,
+                                                              long senderId, long recipientId, long amount) {
+        if (senderShard == recipientShard) {
+            return senderShard.submit(shard -> shard.transfer(senderId, recipientId, amount));
+        }
+        return recipientShard.submit(shard -> shard.balance(recipientId) != AccountShard.MISSING)
+                .thenCompose(exists -> !exists
+                        ? CompletableFuture.completedFuture(TransferStatus.CUSTOMER_NOT_FOUND)
+                        : senderShard.submit(shard -> shard.debit(senderId, recipientId, amount)))
+                .thenCompose(status -> status != TransferStatus.COMPLETED
+                        ? CompletableFuture.completedFuture(status)
+                        : recipientShard.submit(shard -> {
+                            shard.credit(recipientId, amount);
+                            return TransferStatus.COMPLETED;
+                        }));
+    }
+
+    // Ожидание, пока все подтверждённые операции будут записаны в БД
+    public boolean awaitPersisted(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (unpersisted() > 0) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private long unpersisted() {
+        AccountShard[] current = shards;
+        long total = 0;
+        if (current != null) {
+            for (AccountShard shard : current) {
+                total += shard.unpersisted();
+            }
+        }
+        return total;
+    }
+
+    private AccountShard shardOf(long customerId) {
+        AccountShard[] current = shards;
+        if (current == null) {
+            throw new IllegalStateException("Движок счетов не запущен");
+        }
+        return current[(int) Math.floorMod(customerId, (long) current.length)];
+    }
+
+    // Запускается до веб-сервера и останавливается после него: запросы не приходят в незапущенный движок
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Map<Integer, Long> checkpoints = checkpoints();
+        AccountShard[] started = new AccountShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            started[i] = newShard(i, checkpoints.getOrDefault(i, 0L) + 1, this::loadBalance, this::persist);
+        }
+        shards = started;
+        log.info("Движок счетов запущен: шардов {}, журнал {}", shardCount, journalDir.toAbsolutePath());
+    }
+
+    // Запущенный движок без БД для замеров пропускной способности (AccountEngineBenchmark): журналы шардов
+    // в journalDir, каждый клиент при первом обращении получает initialBalance копеек, фоновой записи в БД нет.
+    // Останавливается вызовом stop()
+    public static AccountEngine standalone(int shardCount, Path journalDir, long initialBalance,
+                                           MeterRegistry meterRegistry) {
+        AccountEngine engine = new AccountEngine(true, shardCount, journalDir, DataSize.ofMegabytes(64), 4096, 5000,
+                1_000_000, Duration.ofSeconds(10), null, null, meterRegistry);
+        AccountShard[] started = new AccountShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            started[i] = engine.newShard(i, 1, customerId -> initialBalance, (shard, entries) -> {
+            });
+        }
+        engine.shards = started;
+        return engine;
+    }
+
+    private AccountShard newShard(int index, long firstSeq, LongUnaryOperator loader, AccountShard.Persister persister) {
+        AccountJournal journal = new AccountJournal(shardDir(index), firstSeq, segmentSize, maxBatch);
+        return new AccountShard(index, journal, loader, persister, maxBatch, persistBatch, maxUnpersisted,
+                commitTimer, batchSizes);
+    }
+
+    @Override
+    public void stop() {
+        AccountShard[] current = shards;
+        if (current == null) {
+            return;
+        }
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        try {
+            for (AccountShard shard : current) {
+                shard.stop(deadline);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        shards = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return shards != null;
+    }
+
+    // Записи журналов после последней сохранённой (engine_checkpoints) дописываются в БД, затем журналы удаляются.
+    // Каталоги всех шардов прошлого запуска обрабатываются, даже если количество шардов изменилось
+    private void recover() throws IOException {
+        if (!Files.isDirectory(journalDir)) {
+            return;
+        }
+        Map<Integer, Long> checkpoints = checkpoints();
+        List<Path> directories;
+        try (Stream<Path> files = Files.list(journalDir)) {
+            directories = files.filter(path -> path.getFileName().toString().matches("shard-\\d+")).sorted().toList();
+        }
+        for (Path directory : directories) {
+            int shard = Integer.parseInt(directory.getFileName().toString().substring("shard-".length()));
+            long checkpoint = checkpoints.getOrDefault(shard, 0L);
+            List<AccountJournal.Entry> batch = new ArrayList<>(persistBatch);
+            long[] recovered = new long[1];
+            AccountJournal.read(directory, entry -> {
+                if (entry.seq() <= checkpoint) {
+                    return;
+                }
+                batch.add(entry);
+                recovered[0]++;
+                if (batch.size() == persistBatch) {
+                    persist(shard, batch);
+                    batch.clear();
+                }
+            });
+            if (!batch.isEmpty()) {
+                persist(shard, batch);
+            }
+            if (recovered[0] > 0) {
+                log.info("Шард {}: из журнала восстановлено операций: {}", shard, recovered[0]);
+            }
+            AccountJournal.delete(directory);
+        }
+    }
+
+    private Path shardDir(int shard) {
+        return journalDir.resolve("shard-" + shard);
+    }
+
+    private Map<Integer, Long> checkpoints() {
+        Map<Integer, Long> checkpoints = new HashMap<>();
+        jdbcTemplate.query("select shard, journal_seq from engine_checkpoints",
+                resultSet -> {
+                    checkpoints.put(resultSet.getInt(1), resultSet.getLong(2));
+                });
+        return checkpoints;
+    }
+
+    private long loadBalance(long customerId) {
+        List<BigDecimal> balance = jdbcTemplate.queryForList("select balance from customer where id = ?",
+                BigDecimal.class, customerId);
+        return balance.isEmpty() ? AccountShard.MISSING : Money.of(balance.get(0)).minorUnits();
+    }
+
+    // Записи журнала шарда в БД одной транзакцией: изменения балансов (по одному UPDATE на клиента пакета,
+    // в порядке возрастания ID - параллельные шарды не блокируют друг друга взаимно), затем операции и номер
+    // последней сохранённой записи. UPDATE выполняется и при нулевом итоговом изменении: операции каждого
+    // клиента вставляются под блокировкой его строки, поэтому ledger_seq растёт в порядке фиксации, как и без
+    // движка (на это опираются снимки LedgerSnapshotRepository). Операции удалённых клиентов пропускаются
+    void persist(int shard, List<AccountJournal.Entry> entries) {
+        TreeMap<Long, Long> deltas = new TreeMap<>();
+        List<Object[]> operations = new ArrayList<>(entries.size() * 2);
+        for (AccountJournal.Entry entry : entries) {
+            OffsetDateTime createdAt = OffsetDateTime.ofInstant(
+                    Instant.EPOCH.plus(entry.createdAtMicros(), ChronoUnit.MICROS), ZoneOffset.UTC);
+            BigDecimal amount = Money.ofMinorUnits(entry.amount()).toBigDecimal();
+            if (entry.kind() != AccountJournal.Kind.DEPOSIT) {
+                deltas.merge(entry.customerId(), -entry.amount(), Long::sum);
+                operations.add(new Object[]{OperationType.WITHDRAWAL.name(), amount, createdAt, entry.customerId()});
+            }
+            if (entry.kind() != AccountJournal.Kind.WITHDRAWAL) {
+                long recipientId = entry.kind() == AccountJournal.Kind.TRANSFER ? entry.recipientId() : entry.customerId();
+                deltas.merge(recipientId, entry.amount(), Long::sum);
+                operations.add(new Object[]{OperationType.DEPOSIT.name(), amount, createdAt, recipientId});
+            }
+        }
+        List<Object[]> balances = deltas.entrySet().stream()
+                .map(delta -> new Object[]{Money.ofMinorUnits(delta.getValue()).toBigDecimal(), delta.getKey()})
+                .toList();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate("update customer set balance = balance + ? where id = ?", balances);
+            long[] ids = OperationOutbox.reserveOperationIds(jdbcTemplate, operations.size());
+            List<Object[]> rows = new ArrayList<>(operations.size());
+            for (int i = 0; i < operations.size(); i++) {
+                Object[] operation = operations.get(i);
+                rows.add(new Object[]{ids[i], operation[0], operation[1], operation[2], operation[3]});
+            }
+            jdbcTemplate.batchUpdate("insert into operations (operation_id, type, amount, created_at, customer_id)"
+                    + " select ?, ?, ?, ?, id from customer where id = ?", rows);
+            jdbcTemplate.update("insert into engine_checkpoints (shard, journal_seq) values (?, ?)"
+                            + " on conflict (shard) do update set journal_seq = excluded.journal_seq",
+                    shard, entries.get(entries.size() - 1).seq());
+        });
+    }
+}
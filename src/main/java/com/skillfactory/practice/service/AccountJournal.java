@@ -0,0 +1,214 @@
+package com.skillfactory.practice.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// Журнал предзаписи шарда движка счетов (AccountEngine): операции шарда записями фиксированного размера
+// с контрольной суммой. Сегмент журнала отображается в память (MappedByteBuffer): записи пакета команд
+// кладутся прямо в страницы файла (append), без промежуточного буфера и системного вызова на запись,
+// и сбрасываются на диск одним force по диапазону пакета (commit): подтверждённая операция уже лежит на диске.
+// Журнал делится на сегменты по segment-size, сегменты, все записи которых сохранены в БД, удаляются (release).
+// Пишет журнал только поток шарда, release вызывает поток записи в БД
+public class AccountJournal implements Closeable {
+
+    public static final int RECORD_SIZE = 48;
+
+    private static final String SUFFIX = ".journal";
+
+    public enum Kind {
+        DEPOSIT, WITHDRAWAL, TRANSFER
+    }
+
+    // Операция шарда. Суммы в копейках, время - микросекунды от эпохи UTC.
+    // TRANSFER - обе части перевода одной записью: списание у customerId и зачисление recipientId
+    public record Entry(long seq, Kind kind, long customerId, long recipientId, long amount, long createdAtMicros) {
+    }
+
+    private final Path directory;
+    private final long segmentSize;
+    // Размер отображения: segment-size и место под пакет, на котором сегмент его превысит
+    private final int mappedSize;
+    // Запись собирается здесь, контрольная сумма считается по массиву без выделения памяти
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32C crc = new CRC32C();
+    // Закрытые сегменты и последний номер записи в каждом
+    private final Deque<Segment> sealed = new ArrayDeque<>();
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    // Начало неподтверждённого пакета в сегменте
+    private int committed;
+    private long firstSeqOfActive;
+    private long lastSeq;
+
+    // Новый журнал в пустом каталоге, первая запись получит номер firstSeq.
+    // В пакете (между commit) не больше maxBatch записей
+    public AccountJournal(Path directory, long firstSeq, long segmentSize, int maxBatch) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.mappedSize = Math.toIntExact((segmentSize + RECORD_SIZE - 1) / RECORD_SIZE * RECORD_SIZE
+                + (long) RECORD_SIZE * maxBatch);
+        this.lastSeq = firstSeq - 1;
+        try {
+            Files.createDirectories(directory);
+            openSegment(firstSeq);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long lastSeq() {
+        return lastSeq;
+    }
+
+    public Entry append(Kind kind, long customerId, long recipientId, long amount, long createdAtMicros) {
+        Entry entry = new Entry(++lastSeq, kind, customerId, recipientId, amount, createdAtMicros);
+        record.clear();
+        record.putLong(entry.seq())
+                .putLong(createdAtMicros)
+                .putLong(customerId)
+                .putLong(recipientId)
+                .putLong(amount)
+                .putInt(kind.ordinal());
+        crc.reset();
+        crc.update(record.array(), 0, RECORD_SIZE - Integer.BYTES);
+        record.putInt((int) crc.getValue());
+        mapped.put(record.array());
+        return entry;
+    }
+
+    // Сброс страниц пакета на диск. Сегмент закрывается после пакета, на котором превысил segment-size
+    public void commit() throws IOException {
+        int position = mapped.position();
+        if (position == committed) {
+            return;
+        }
+        mapped.force(committed, position - committed);
+        committed = position;
+        if (position >= segmentSize) {
+            closeSegment();
+            synchronized (sealed) {
+                sealed.addLast(new Segment(segmentPath(firstSeqOfActive), lastSeq));
+            }
+            openSegment(lastSeq + 1);
+        }
+    }
+
+    // Удаление закрытых сегментов, все записи которых сохранены в БД
+    public void release(long persistedSeq) {
+        List<Segment> released = new ArrayList<>();
+        synchronized (sealed) {
+            while (!sealed.isEmpty() && sealed.peekFirst().lastSeq() <= persistedSeq) {
+                released.add(sealed.pollFirst());
+            }
+        }
+        for (Segment segment : released) {
+            try {
+                Files.deleteIfExists(segment.path());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Неподтверждённые записи последнего пакета отбрасываются
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+    }
+
+    // Файл сегмента сразу получает размер отображения и заполнен нулями: нулевая запись не сходится
+    // с контрольной суммой, и чтение на ней заканчивается так же, как на недописанной
+    private void openSegment(long firstSeq) throws IOException {
+        firstSeqOfActive = firstSeq;
+        channel = FileChannel.open(segmentPath(firstSeq), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+        committed = 0;
+    }
+
+    // Закрытый сегмент обрезается по последней подтверждённой записи: в нём нет хвоста из нулей.
+    // Отображение освобождается сборщиком мусора, после обрезки к нему не обращаются
+    private void closeSegment() throws IOException {
+        mapped = null;
+        channel.truncate(committed);
+        channel.force(true);
+        channel.close();
+    }
+
+    private Path segmentPath(long firstSeq) {
+        return directory.resolve("%020d%s".formatted(firstSeq, SUFFIX));
+    }
+
+    // Чтение журнала по порядку сегментов. Недописанная или испорченная запись в последнем сегменте -
+    // след сбоя во время записи пакета: пакет подтверждается только после fsync, поэтому ни эта запись,
+    // ни следующие за ней подтверждены не были, и чтение на ней заканчивается. В закрытом сегменте - ошибка
+    public static void read(Path directory, Consumer<Entry> consumer) throws IOException {
+        List<Path> segments = segments(directory);
+        byte[] record = new byte[RECORD_SIZE];
+        ByteBuffer fields = ByteBuffer.wrap(record);
+        CRC32C crc = new CRC32C();
+        for (int i = 0; i < segments.size(); i++) {
+            boolean last = i == segments.size() - 1;
+            MappedByteBuffer segment;
+            try (FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            while (segment.hasRemaining()) {
+                int position = segment.position();
+                boolean complete = segment.remaining() >= RECORD_SIZE;
+                if (complete) {
+                    segment.get(record);
+                    crc.reset();
+                    crc.update(record, 0, RECORD_SIZE - Integer.BYTES);
+                }
+                if (!complete || fields.getInt(RECORD_SIZE - Integer.BYTES) != (int) crc.getValue()) {
+                    if (last) {
+                        break;
+                    }
+                    throw new IOException("Испорченная запись журнала " + segments.get(i) + " в позиции " + position);
+                }
+                fields.clear();
+                long seq = fields.getLong();
+                long createdAt = fields.getLong();
+                long customerId = fields.getLong();
+                long recipientId = fields.getLong();
+                long amount = fields.getLong();
+                Kind kind = Kind.values()[fields.getInt()];
+                consumer.accept(new Entry(seq, kind, customerId, recipientId, amount, createdAt));
+            }
+        }
+    }
+
+    // Удаление всех сегментов каталога (после того как журнал сохранён в БД при восстановлении)
+    public static void delete(Path directory) throws IOException {
+        for (Path segment : segments(directory)) {
+            Files.delete(segment);
+        }
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+    }
+
+    private record Segment(Path path, long lastSeq) {
+    }
+}
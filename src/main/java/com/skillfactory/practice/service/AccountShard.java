@@ -0,0 +1,314 @@
+package com.skillfactory.practice.service;
+
+import com.skillfactory.practice.enums.TransferStatus;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
+
+// Шард движка счетов: балансы своей части клиентов в копейках и один поток, который выполняет команды
+// по очереди без блокировок. Команды берутся пакетами до max-batch: все записи пакета попадают в журнал
+// одним fsync (групповая фиксация), и только после этого вызывающие получают результаты.
+// Второй поток сохраняет записи журнала в БД пакетами (AccountEngine.persist); если БД отстаёт больше
+// чем на max-unpersisted записей, поток шарда ждёт
+final class AccountShard {
+
+    // Баланс клиента, которого нет в БД
+    static final long MISSING = Long.MIN_VALUE;
+
+    private static final Logger log = LoggerFactory.getLogger(AccountShard.class);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+
+    // Сохранение записей журнала шарда в БД одной транзакцией
+    interface Persister {
+        void persist(int shard, List<AccountJournal.Entry> entries);
+    }
+
+    private final int index;
+    private final BlockingQueue<Command<?>> commands = new LinkedBlockingQueue<>();
+    private final BlockingQueue<AccountJournal.Entry> unpersisted;
+    private final LongLongMap balances = new LongLongMap(1024);
+    private final AccountJournal journal;
+    private final LongUnaryOperator loader;
+    private final Persister persister;
+    private final int maxBatch;
+    private final int persistBatch;
+    private final Timer commitTimer;
+    private final DistributionSummary batchSizes;
+    private final Thread applyThread;
+    private final Thread persistThread;
+    // Записи журнала текущего пакета
+    private final List<AccountJournal.Entry> appended = new ArrayList<>();
+
+    private volatile long journaledSeq;
+    private volatile long persistedSeq;
+    private volatile boolean accepting = true;
+    private volatile boolean applyStopped;
+    // Время операций пакета, микросекунды от эпохи
+    private long batchMicros;
+    private boolean stopRequested;
+
+    AccountShard(int index, AccountJournal journal, LongUnaryOperator loader, Persister persister, int maxBatch,
+                 int persistBatch, int maxUnpersisted, Timer commitTimer, DistributionSummary batchSizes) {
+        this.index = index;
+        this.journal = journal;
+        this.loader = loader;
+        this.persister = persister;
+        this.maxBatch = maxBatch;
+        this.persistBatch = persistBatch;
+        this.unpersisted = new LinkedBlockingQueue<>(maxUnpersisted);
+        this.commitTimer = commitTimer;
+        this.batchSizes = batchSizes;
+        this.journaledSeq = journal.lastSeq();
+        this.persistedSeq = journal.lastSeq();
+        this.applyThread = new Thread(this::applyLoop, "account-shard-" + index);
+        this.persistThread = new Thread(this::persistLoop, "account-persist-" + index);
+        applyThread.setDaemon(true);
+        persistThread.setDaemon(true);
+        applyThread.start();
+        persistThread.start();
+    }
+
+    // Команда выполняется в потоке шарда, результат выдаётся после записи пакета в журнал
+    <T> CompletableFuture<T> submit(Function<AccountShard, T> action) {
+        if (!accepting) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Шард " + index + " остановлен"));
+        }
+        Command<T> command = new Command<>(action);
+        commands.add(command);
+        return command.result;
+    }
+
+    // Записи журнала, ещё не сохранённые в БД
+    long unpersisted() {
+        return journaledSeq - persistedSeq;
+    }
+
+    // Методы ниже вызываются только в потоке шарда
+
+    long balance(long customerId) {
+        long balance = balances.get(customerId, MISSING);
+        if (balance == MISSING) {
+            balance = loader.applyAsLong(customerId);
+            if (balance != MISSING) {
+                balances.put(customerId, balance);
+            }
+        }
+        return balance;
+    }
+
+    boolean deposit(long customerId, long amount) {
+        long balance = balance(customerId);
+        if (balance == MISSING) {
+            return false;
+        }
+        balances.put(customerId, Math.addExact(balance, amount));
+        append(AccountJournal.Kind.DEPOSIT, customerId, 0, amount);
+        return true;
+    }
+
+    // Как условное списание в БД: клиента нет или средств недостаточно - false
+    boolean withdraw(long customerId, long amount) {
+        long balance = balance(customerId);
+        if (balance == MISSING || balance < amount) {
+            return false;
+        }
+        balances.put(customerId, balance - amount);
+        append(AccountJournal.Kind.WITHDRAWAL, customerId, 0, amount);
+        return true;
+    }
+
+    // Перевод между клиентами этого шарда: обе части одной записью журнала
+    TransferStatus transfer(long senderId, long recipientId, long amount) {
+        long senderBalance = balance(senderId);
+        if (senderBalance == MISSING || balance(recipientId) == MISSING) {
+            return TransferStatus.CUSTOMER_NOT_FOUND;
+        }
+        if (senderBalance < amount) {
+            return TransferStatus.INSUFFICIENT_FUNDS;
+        }
+        balances.put(senderId, senderBalance - amount);
+        balances.put(recipientId, Math.addExact(balances.get(recipientId, MISSING), amount));
+        append(AccountJournal.Kind.TRANSFER, senderId, recipientId, amount);
+        return TransferStatus.COMPLETED;
+    }
+
+    // Списание перевода в другой шард. В журнал отправителя попадают обе части перевода: зачисление
+    // получателю (credit) выполняется после подтверждения и в журнал получателя не пишется
+    TransferStatus debit(long senderId, long recipientId, long amount) {
+        long balance = balance(senderId);
+        if (balance == MISSING) {
+            return TransferStatus.CUSTOMER_NOT_FOUND;
+        }
+        if (balance < amount) {
+            return TransferStatus.INSUFFICIENT_FUNDS;
+        }
+        balances.put(senderId, balance - amount);
+        append(AccountJournal.Kind.TRANSFER, senderId, recipientId, amount);
+        return TransferStatus.COMPLETED;
+    }
+
+    void credit(long customerId, long amount) {
+        long balance = balance(customerId);
+        if (balance != MISSING) {
+            balances.put(customerId, Math.addExact(balance, amount));
+        }
+    }
+
+    private void append(AccountJournal.Kind kind, long customerId, long recipientId, long amount) {
+        appended.add(journal.append(kind, customerId, recipientId, amount, batchMicros));
+    }
+
+    private void applyLoop() {
+        List<Command<?>> batch = new ArrayList<>(maxBatch);
+        try {
+            while (!stopRequested) {
+                batch.add(commands.take());
+                commands.drainTo(batch, maxBatch - 1);
+                batchMicros = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+                for (Command<?> command : batch) {
+                    command.run(this);
+                }
+
+                Timer.Sample commit = Timer.start();
+                journal.commit();
+                commit.stop(commitTimer);
+                batchSizes.record(batch.size());
+                journaledSeq = journal.lastSeq();
+                batch.forEach(Command::complete);
+                batch.clear();
+
+                // Подтверждённые записи уже в журнале, очередь в БД только ограничивает отставание
+                for (AccountJournal.Entry entry : appended) {
+                    unpersisted.put(entry);
+                }
+                appended.clear();
+            }
+        } catch (IOException e) {
+            // Изменения пакета уже в памяти, но не в журнале: шард больше не принимает команды,
+            // состояние восстанавливается при перезапуске из БД и журнала
+            log.error("Шард {} остановлен: ошибка записи журнала", index, e);
+            batch.forEach(command -> command.fail(e));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            accepting = false;
+            applyStopped = true;
+            Command<?> rest;
+            while ((rest = commands.poll()) != null) {
+                rest.fail(new IllegalStateException("Шард " + index + " остановлен"));
+            }
+        }
+    }
+
+    private void persistLoop() {
+        List<AccountJournal.Entry> batch = new ArrayList<>(persistBatch);
+        try {
+            while (!applyStopped || !unpersisted.isEmpty()) {
+                AccountJournal.Entry first = unpersisted.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                unpersisted.drainTo(batch, persistBatch - 1);
+                persistWithRetry(batch);
+                persistedSeq = batch.get(batch.size() - 1).seq();
+                journal.release(persistedSeq);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Остановка без сохранения: несохранённые записи остаются в журнале до следующего запуска
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Пока БД недоступна, пакет повторяется: записи лежат в журнале, новые команды выполняются,
+    // пока отставание не достигнет max-unpersisted
+    private void persistWithRetry(List<AccountJournal.Entry> batch) throws InterruptedException {
+        boolean failed = false;
+        while (true) {
+            try {
+                persister.persist(index, batch);
+                if (failed) {
+                    log.info("Шард {}: запись в БД возобновлена", index);
+                }
+                return;
+            } catch (RuntimeException e) {
+                if (!failed) {
+                    log.warn("Шард {}: ошибка записи в БД, повтор через {}", index, RETRY_DELAY, e);
+                    failed = true;
+                }
+                Thread.sleep(RETRY_DELAY.toMillis());
+            }
+        }
+    }
+
+    // Остановка: команды, принятые до остановки, выполняются, затем записи журнала сохраняются в БД
+    // не дольше timeout. Что не успело сохраниться, сохранит восстановление при следующем запуске
+    void stop(long deadlineNanos) throws InterruptedException {
+        commands.add(new Command<>(shard -> {
+            shard.stopRequested = true;
+            return null;
+        }));
+        applyThread.join(TimeUnit.NANOSECONDS.toMillis(Math.max(0, deadlineNanos - System.nanoTime())) + 1);
+        persistThread.join(TimeUnit.NANOSECONDS.toMillis(Math.max(0, deadlineNanos - System.nanoTime())) + 1);
+        if (persistThread.isAlive()) {
+            log.warn("Шард {}: {} записей журнала не сохранены в БД, будут сохранены при следующем запуске",
+                    index, unpersisted());
+            persistThread.interrupt();
+            persistThread.join();
+        }
+        applyThread.interrupt();
+        applyThread.join();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Шард {}: ошибка закрытия журнала", index, e);
+        }
+    }
+
+    private static final class Command<T> {
+
+        private final Function<AccountShard, T> action;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private T value;
+        private RuntimeException error;
+
+        private Command(Function<AccountShard, T> action) {
+            this.action = action;
+        }
+
+        private void run(AccountShard shard) {
+            try {
+                value = action.apply(shard);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+
+        private void complete() {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        }
+
+        private void fail(Exception e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.skillfactory.practice.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.skillfactory.practice.entity.Money;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
+
+// Кэш балансов клиентов в памяти процесса (read-through).
+// Код, изменяющий баланс, вызывает beforeWrite внутри своей транзакции: запись в кэше сбрасывается сразу
+// и ещё раз после завершения транзакции, а пока транзакция не завершена, чтение этого клиента идёт мимо кэша.
+// Поэтому чтение на этом узле никогда не возвращает баланс старше последней зафиксированной записи.
+// Изменения, сделанные другими узлами, видны после истечения TTL.
+// Значение загружается в потоке читателя вне блокировок внутри кэша: на виртуальных потоках
+// обращение к БД не закрепляет (pin) поток-носитель
+@Component
+public class BalanceCache {
+
+    private static final int PENDING_STRIPES = 1024;
+
+    private final boolean enabled;
+    private final AsyncCache<Long, Money> cache;
+    // Количество незавершённых транзакций, изменяющих балансы, по полосам ID клиента
+    private final AtomicIntegerArray pendingWrites = new AtomicIntegerArray(PENDING_STRIPES);
+
+    public BalanceCache(@Value("${app.balance-cache.enabled:true}") boolean enabled,
+                        @Value("${app.balance-cache.maximum-size:100000}") long maximumSize,
+                        @Value("${app.balance-cache.expire-after-write:60s}") Duration expireAfterWrite,
+                        MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .buildAsync();
+        if (enabled) {
+            // Метрики cache.gets{result=hit|miss}, cache.evictions и т.д. с тегом cache=balance
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "balance");
+        }
+    }
+
+    // Чтение баланса через кэш, при промахе значение загружается loader'ом
+    public Optional<Money> get(Long customerId, Function<Long, Optional<Money>> loader) {
+        if (!enabled || pendingWrites.get(stripeOf(customerId)) > 0) {
+            return loader.apply(customerId);
+        }
+
+        CompletableFuture<Money> cached = cache.getIfPresent(customerId);
+        if (cached == null) {
+            // В кэш кладётся незавершённое значение, загружает его только тот поток, чей future попал в кэш.
+            // Сброс записи во время загрузки удаляет future из кэша, загруженное значение получит только этот читатель
+            CompletableFuture<Money> loading = new CompletableFuture<>();
+            cached = cache.asMap().putIfAbsent(customerId, loading);
+            if (cached == null) {
+                try {
+                    loading.complete(loader.apply(customerId).orElse(null));
+                } catch (RuntimeException | Error e) {
+                    loading.completeExceptionally(e);
+                    throw e;
+                }
+                cached = loading;
+            }
+        }
+        return Optional.ofNullable(cached.join());
+    }
+
+    // Вызывается в транзакции до изменения балансов клиентов
+    public void beforeWrite(long... customerIds) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Изменение баланса должно выполняться в транзакции");
+        }
+
+        for (long customerId : customerIds) {
+            pendingWrites.incrementAndGet(stripeOf(customerId));
+            cache.synchronous().invalidate(customerId);
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                for (long customerId : customerIds) {
+                    cache.synchronous().invalidate(customerId);
+                    pendingWrites.decrementAndGet(stripeOf(customerId));
+                }
+            }
+        });
+    }
+
+    private static int stripeOf(long customerId) {
+        int hash = Long.hashCode(customerId);
+        return (hash ^ (hash >>> 16)) & (PENDING_STRIPES - 1);
+    }
+}
@@ -0,0 +1,67 @@
+package com.skillfactory.practice.service;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Таблица полосатых (striped) блокировок по ID клиента внутри процесса.
+// Операции над несвязанными клиентами выполняются параллельно, над одними и теми же - последовательно.
+@Component
+public class CustomerLocks {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final Timer lockWait;
+
+    public CustomerLocks(@Value("${app.locks.stripes:1024}") int stripes, MoneyMetrics metrics) {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Количество полос блокировок должно быть степенью двойки: " + stripes);
+        }
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = stripes - 1;
+        this.lockWait = metrics.stripeLockWait();
+    }
+
+    // Захват блокировок для набора клиентов. Полосы берутся в порядке возрастания номера,
+    // поэтому два потока с пересекающимися наборами клиентов не могут заблокировать друг друга.
+    public Held lockAll(long... customerIds) {
+        int[] indexes = Arrays.stream(customerIds).mapToInt(this::stripeOf).sorted().distinct().toArray();
+        int locked = 0;
+        long start = System.nanoTime();
+        try {
+            for (int index : indexes) {
+                stripes[index].lock();
+                locked++;
+            }
+        } catch (RuntimeException | Error e) {
+            unlock(indexes, locked);
+            throw e;
+        }
+        lockWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return () -> unlock(indexes, indexes.length);
+    }
+
+    private void unlock(int[] indexes, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            stripes[indexes[i]].unlock();
+        }
+    }
+
+    private int stripeOf(long customerId) {
+        int hash = Long.hashCode(customerId);
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    // Удерживаемые блокировки, освобождаются в try-with-resources
+    public interface Held extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
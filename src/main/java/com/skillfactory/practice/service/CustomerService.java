@@ -1,87 +1,186 @@
 package com.skillfactory.practice.service;
 
+import com.skillfactory.practice.dto.OperationCursor;
+import com.skillfactory.practice.dto.OperationExportRow;
+import com.skillfactory.practice.dto.OperationHistory;
+import com.skillfactory.practice.dto.OperationPage;
+import com.skillfactory.practice.dto.OperationView;
+import com.skillfactory.practice.dto.TransferRequest;
+import com.skillfactory.practice.dto.TransferResult;
 import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
 import com.skillfactory.practice.entity.Operation;
 import com.skillfactory.practice.enums.OperationType;
+import com.skillfactory.practice.enums.TransferStatus;
 import com.skillfactory.practice.repository.CustomerRepository;
 import com.skillfactory.practice.repository.OperationRepository;
-import jakarta.transaction.Transactional;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
+// Время каждого метода - таймер customer.service с тегами class и method (гистограмма для перцентилей).
+// Чтение истории выполняется в транзакциях только для чтения: при настроенных репликах (app.replicas.urls)
+// они идут на реплику, всё остальное - на основную БД.
+// В режиме движка счетов (app.engine.enabled) баланс и денежные операции выполняет AccountEngine.
+// Эти методы объявлены с SUPPORTS: ветка движка не открывает транзакцию и не занимает соединение из пула,
+// пока шард пишет журнал, поэтому число параллельных операций не ограничено размером пула. Ветка БД
+// выполняется в транзакции (transactions), которая присоединяется к внешней, если она есть.
+// Суммы - Money (копейки в long): проверка и изменение балансов не создают BigDecimal
 @Service
 @Transactional
+@Timed(value = "customer.service", histogram = true)
 public class CustomerService {
 
+    // Ограничение размера истории, которую возвращает getOperationList
+    public static final int MAX_OPERATION_LIST = 10_000;
+
     private final CustomerRepository customerRepository;
     private final OperationRepository operationRepository;
+    private final CustomerLocks customerLocks;
+    private final BalanceCache balanceCache;
+    private final MoneyMetrics metrics;
+    private final OperationOutbox operationOutbox;
+    private final AccountEngine accountEngine;
+    private final OperationTotalsService totalsService;
+    private final OperationHistoryCache historyCache;
+    private final TransactionTemplate transactions;
 
-    public CustomerService(CustomerRepository customerRepository, OperationRepository operationRepository) {
+    public CustomerService(CustomerRepository customerRepository, OperationRepository operationRepository,
+                           CustomerLocks customerLocks, BalanceCache balanceCache, MoneyMetrics metrics,
+                           OperationOutbox operationOutbox, AccountEngine accountEngine,
+                           OperationTotalsService totalsService, OperationHistoryCache historyCache,
+                           PlatformTransactionManager transactionManager) {
         this.customerRepository = customerRepository;
         this.operationRepository = operationRepository;
+        this.customerLocks = customerLocks;
+        this.balanceCache = balanceCache;
+        this.metrics = metrics;
+        this.operationOutbox = operationOutbox;
+        this.accountEngine = accountEngine;
+        this.totalsService = totalsService;
+        this.historyCache = historyCache;
+        this.transactions = new TransactionTemplate(transactionManager);
     }
 
-    // Получение текущего баланса пользователя
-    public Optional<BigDecimal> getBalance(Long customerId) {
-        return customerRepository.findById(customerId).map(Customer::getBalance);
+    // Получение текущего баланса пользователя (через кэш балансов). Баланс читается с основной БД:
+    // загруженное значение попадает в кэш, а баланс с отстающей реплики мог бы оказаться старше
+    // последней записи на этом узле
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Optional<Money> getBalance(Long customerId) {
+        if (accountEngine.isEnabled()) {
+            OptionalLong balance = accountEngine.balance(customerId).join();
+            return balance.isPresent() ? Optional.of(Money.ofMinorUnits(balance.getAsLong())) : Optional.empty();
+        }
+        return transactions.execute(status ->
+                balanceCache.get(customerId, id -> customerRepository.findById(id).map(Customer::getBalance)));
     }
 
     // Пополнение счета пользователя
-    @Transactional
-    public void putMoney(Long customerId, BigDecimal amount) {
-        Optional<Customer> customerOptional = customerRepository.findById(customerId);
-        if (customerOptional.isPresent()) {
-            Customer customer = customerOptional.get();
-            customer.setBalance(customer.getBalance().add(amount));
-            System.out.println(customer.getBalance());
-            customerRepository.save(customer);
-
-            saveOperation(customerId, OperationType.DEPOSIT, amount);
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void putMoney(Long customerId, Money amount) {
+        if (accountEngine.isEnabled()) {
+            accountEngine.deposit(customerId, amount.minorUnits()).join();
+            return;
         }
+        transactions.executeWithoutResult(status -> {
+            balanceCache.beforeWrite(customerId);
+            if (customerRepository.deposit(customerId, amount) > 0) {
+                saveOperation(customerId, OperationType.DEPOSIT, amount);
+            }
+        });
     }
 
-    // Снятие денег со счёта пользователя
-    @Transactional
-    public boolean takeMoney(Long customerId, BigDecimal amount) {
-        Optional<Customer> customerOptional = customerRepository.findById(customerId);
-        if (customerOptional.isPresent() && customerOptional.get().getBalance().compareTo(amount) >= 0) {
-            Customer customer = customerOptional.get();
-            customer.setBalance(customer.getBalance().subtract(amount));
-            customerRepository.save(customer);
-
-            saveOperation(customerId,OperationType.WITHDRAWAL, amount);
-
+    // Снятие денег со счёта пользователя.
+    // Проверка баланса и списание выполняются одним UPDATE, поэтому между ними нет гонки
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public boolean takeMoney(Long customerId, Money amount) {
+        if (accountEngine.isEnabled()) {
+            if (!accountEngine.withdraw(customerId, amount.minorUnits()).join()) {
+                metrics.insufficientWithdrawal();
+                return false;
+            }
             return true;
         }
-        return false;
+        return Boolean.TRUE.equals(transactions.execute(status -> withdraw(customerId, amount)));
     }
 
-    @Transactional
-    public boolean transferMoney(Long senderId, Long recipientId, BigDecimal amount) {
-        Optional<Customer> senderOptional = customerRepository.findById(senderId);
-        Optional<Customer> recipientOptional = customerRepository.findById(recipientId);
-
-        // Проверка, что клиенты существуют
-        if (senderOptional.isEmpty() || recipientOptional.isEmpty()) {
+    private boolean withdraw(Long customerId, Money amount) {
+        balanceCache.beforeWrite(customerId);
+        if (customerRepository.withdraw(customerId, amount) == 0) {
+            // 0 строк - недостаточно средств или клиента нет; отдельный запрос ради различия не делаем
+            metrics.insufficientWithdrawal();
             return false;
         }
 
-        Customer sender = senderOptional.get();
-        Customer recipient = recipientOptional.get();
+        saveOperation(customerId, OperationType.WITHDRAWAL, amount);
 
-        // Проверка, что достаточно средств
-        if (sender.getBalance().compareTo(amount) < 0) {
-            return false;
+        return true;
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public boolean transferMoney(Long senderId, Long recipientId, Money amount) {
+        if (accountEngine.isEnabled()) {
+            TransferStatus status = accountEngine.transfer(senderId, recipientId, amount.minorUnits()).join();
+            if (status == TransferStatus.INSUFFICIENT_FUNDS) {
+                metrics.insufficientTransfer();
+            }
+            return status == TransferStatus.COMPLETED;
         }
+        return Boolean.TRUE.equals(transactions.execute(status -> transfer(senderId, recipientId, amount)));
+    }
+
+    private boolean transfer(Long senderId, Long recipientId, Money amount) {
+
+        // Блокировки берутся в порядке возрастания ID клиента, чтобы встречные переводы не приводили к взаимоблокировке
+        long firstId = Math.min(senderId, recipientId);
+        long secondId = Math.max(senderId, recipientId);
+
+        try (CustomerLocks.Held ignored = customerLocks.lockAll(firstId, secondId)) {
+            balanceCache.beforeWrite(firstId, secondId);
 
-        // Переводим деньги между клиентами
-        synchronized (this) {
-            sender.setBalance(sender.getBalance().subtract(amount));
-            recipient.setBalance(recipient.getBalance().add(amount));
+            // Строки клиентов блокируются в БД (SELECT ... FOR UPDATE), балансы читаются уже под блокировкой
+            Timer.Sample rowLock = Timer.start();
+            Optional<Customer> firstOptional = customerRepository.findByIdForUpdate(firstId);
+            Optional<Customer> secondOptional = firstId == secondId
+                    ? firstOptional
+                    : customerRepository.findByIdForUpdate(secondId);
+            rowLock.stop(metrics.rowLockWait());
+
+            // Проверка, что клиенты существуют
+            if (firstOptional.isEmpty() || secondOptional.isEmpty()) {
+                return false;
+            }
+
+            Customer sender = senderId == firstId ? firstOptional.get() : secondOptional.get();
+            Customer recipient = senderId == firstId ? secondOptional.get() : firstOptional.get();
+
+            // Проверка, что достаточно средств
+            if (sender.getBalance().isLessThan(amount)) {
+                metrics.insufficientTransfer();
+                return false;
+            }
+
+            // Переводим деньги между клиентами
+            sender.setBalance(sender.getBalance().minus(amount));
+            recipient.setBalance(recipient.getBalance().plus(amount));
 
             customerRepository.save(sender);
             customerRepository.save(recipient);
@@ -94,25 +193,176 @@ public class CustomerService {
         return true;
     }
 
-    private void saveOperation(long customerId, OperationType type, BigDecimal amount) {
-        Optional<Customer> customerOptional = customerRepository.findById(customerId);
-        if (customerOptional.isPresent()) {
-            Customer customer = customerOptional.get();
-            Operation operation = new Operation();
-            operation.setCustomer(customer);
-            operation.setType(type);
-            operation.setAmount(amount);
-            operationRepository.save(operation);
-        } else {
-            throw new IllegalArgumentException("Инвестор с данным ID не найден.");
+    // Пакет переводов в одной транзакции. Все участники блокируются заранее в порядке возрастания ID,
+    // затем переводы применяются по очереди к загруженным клиентам, а операции сохраняются JDBC-пакетами.
+    // firstIndex - позиция первого перевода пакета в исходном запросе (для нумерации результатов)
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<TransferResult> applyTransfers(List<TransferRequest> transfers, int firstIndex) {
+        if (accountEngine.isEnabled()) {
+            return applyEngineTransfers(transfers, firstIndex);
+        }
+        return transactions.execute(status -> applyDatabaseTransfers(transfers, firstIndex));
+    }
+
+    private List<TransferResult> applyDatabaseTransfers(List<TransferRequest> transfers, int firstIndex) {
+
+        long[] customerIds = transfers.stream()
+                .flatMap(transfer -> Stream.of(transfer.senderId(), transfer.recipientId()))
+                .filter(Objects::nonNull)
+                .mapToLong(Long::longValue)
+                .distinct()
+                .sorted()
+                .toArray();
+
+        try (CustomerLocks.Held ignored = customerLocks.lockAll(customerIds)) {
+            balanceCache.beforeWrite(customerIds);
+
+            Map<Long, Customer> customers = new HashMap<>();
+            Timer.Sample rowLock = Timer.start();
+            for (Customer customer : customerRepository.findAllByIdForUpdate(LongStream.of(customerIds).boxed().toList())) {
+                customers.put(customer.getId(), customer);
+            }
+            rowLock.stop(metrics.rowLockWait());
+
+            List<TransferResult> results = new ArrayList<>(transfers.size());
+            List<Operation> operations = new ArrayList<>();
+            for (int i = 0; i < transfers.size(); i++) {
+                TransferRequest transfer = transfers.get(i);
+                TransferStatus status = applyTransfer(transfer, customers, operations);
+                results.add(new TransferResult(firstIndex + i, transfer.senderId(), transfer.recipientId(),
+                        transfer.amount(), status));
+            }
+
+            if (operationOutbox.isEnabled()) {
+                operationOutbox.appendAll(operations);
+            } else {
+                operationRepository.saveAll(operations);
+            }
+            return results;
         }
     }
 
-    public List<Operation> getOperationList(Long customerId, LocalDateTime startDate, LocalDateTime endDate) {
-        if (startDate != null || endDate != null) {
-            return operationRepository.findByCustomer_IdAndCreatedAtBetween(customerId, startDate, endDate);
+    // Переводы пакета по очереди через движок счетов: результат каждого перевода учитывает предыдущие
+    private List<TransferResult> applyEngineTransfers(List<TransferRequest> transfers, int firstIndex) {
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferRequest transfer = transfers.get(i);
+            TransferStatus status;
+            if (transfer.amount() == null || transfer.amount().signum() <= 0) {
+                status = TransferStatus.INVALID_AMOUNT;
+            } else if (transfer.senderId() == null || transfer.recipientId() == null) {
+                status = TransferStatus.CUSTOMER_NOT_FOUND;
+            } else {
+                status = accountEngine.transfer(transfer.senderId(), transfer.recipientId(),
+                        transfer.amount().minorUnits()).join();
+                if (status == TransferStatus.INSUFFICIENT_FUNDS) {
+                    metrics.insufficientBatchTransfer();
+                }
+            }
+            results.add(new TransferResult(firstIndex + i, transfer.senderId(), transfer.recipientId(),
+                    transfer.amount(), status));
+        }
+        return results;
+    }
+
+    private TransferStatus applyTransfer(TransferRequest transfer, Map<Long, Customer> customers,
+                                         List<Operation> operations) {
+        if (transfer.amount() == null || transfer.amount().signum() <= 0) {
+            return TransferStatus.INVALID_AMOUNT;
+        }
+
+        Customer sender = transfer.senderId() == null ? null : customers.get(transfer.senderId());
+        Customer recipient = transfer.recipientId() == null ? null : customers.get(transfer.recipientId());
+        if (sender == null || recipient == null) {
+            return TransferStatus.CUSTOMER_NOT_FOUND;
+        }
+
+        if (sender.getBalance().isLessThan(transfer.amount())) {
+            metrics.insufficientBatchTransfer();
+            return TransferStatus.INSUFFICIENT_FUNDS;
+        }
+
+        sender.setBalance(sender.getBalance().minus(transfer.amount()));
+        recipient.setBalance(recipient.getBalance().plus(transfer.amount()));
+        operations.add(newOperation(sender, OperationType.WITHDRAWAL, transfer.amount()));
+        operations.add(newOperation(recipient, OperationType.DEPOSIT, transfer.amount()));
+        return TransferStatus.COMPLETED;
+    }
+
+    private static Operation newOperation(Customer customer, OperationType type, Money amount) {
+        Operation operation = new Operation();
+        operation.setCustomer(customer);
+        operation.setType(type);
+        operation.setAmount(amount);
+        return operation;
+    }
+
+    // Клиент подставляется ссылкой (getReferenceById), поэтому перед INSERT операции нет лишнего SELECT.
+    // Вызывается только после того, как существование клиента подтверждено UPDATE или блокировкой строки
+    // В режиме outbox операция попадает в журнал позже, фоновым переносом (OperationOutbox)
+    private void saveOperation(long customerId, OperationType type, Money amount) {
+        if (operationOutbox.isEnabled()) {
+            operationOutbox.append(customerId, type, amount);
+            return;
+        }
+        operationRepository.save(newOperation(customerRepository.getReferenceById(customerId), type, amount));
+    }
+
+    // История за период, любая из границ необязательна. Возвращается не больше MAX_OPERATION_LIST операций
+    // с начала периода, более длинную историю нужно читать постранично по курсору (контроллер помечает такой ответ)
+    @Transactional(readOnly = true)
+    public List<OperationView> getOperationList(Long customerId, LocalDateTime startDate, LocalDateTime endDate) {
+        Limit limit = Limit.of(MAX_OPERATION_LIST);
+        if (startDate != null && endDate != null) {
+            return operationRepository.findViewsByCustomerIdAndCreatedAtBetween(customerId, startDate, endDate, limit);
+        } else if (startDate != null) {
+            return operationRepository.findViewsByCustomerIdAndCreatedAtFrom(customerId, startDate, limit);
+        } else if (endDate != null) {
+            return operationRepository.findViewsByCustomerIdAndCreatedAtUntil(customerId, endDate, limit);
         } else {
-            return operationRepository.findAllByCustomer_Id(customerId);
+            return operationRepository.findViewsByCustomerId(customerId, limit);
+        }
+    }
+
+    // История за период с версией для ETag. Версия читается раньше операций в той же транзакции (и на той же
+    // реплике), поэтому история в ответе может быть новее версии, но не старше. Если notModified принимает
+    // версию (у клиента уже есть эта история), операции не читаются. Закрытые периоды - через OperationHistoryCache
+    @Transactional(readOnly = true)
+    public OperationHistory getOperationHistory(Long customerId, LocalDateTime startDate, LocalDateTime endDate,
+                                                Predicate<String> notModified) {
+        String version = totalsService.historyVersion(customerId, startDate, endDate);
+        boolean closed = historyCache.isClosed(endDate);
+        if (notModified.test(version)) {
+            return new OperationHistory(version, closed, null);
+        }
+        return new OperationHistory(version, closed, historyCache.get(customerId, startDate, endDate, version,
+                () -> getOperationList(customerId, startDate, endDate)));
+    }
+
+    // Постраничное получение истории по курсору: запрашиваем на одну запись больше, чтобы понять, есть ли следующая страница
+    @Transactional(readOnly = true)
+    public OperationPage getOperationPage(Long customerId, OperationCursor after, int limit) {
+        List<OperationView> operations = after == null
+                ? operationRepository.findViewsByCustomerId(customerId, Limit.of(limit + 1))
+                : operationRepository.findPageAfter(customerId, after.createdAt(), after.operationId(), Limit.of(limit + 1));
+
+        if (operations.size() <= limit) {
+            return new OperationPage(operations, null);
+        }
+
+        List<OperationView> items = operations.subList(0, limit);
+        OperationView last = items.get(limit - 1);
+        return new OperationPage(items, new OperationCursor(last.createdAt(), last.operationId()).toString());
+    }
+
+    // Потоковая выгрузка истории клиента (или всех клиентов при customerId == null).
+    // Строки читаются курсором БД и сразу передаются потребителю, в памяти не накапливаются
+    @Transactional(readOnly = true)
+    public void exportOperations(Long customerId, Consumer<OperationExportRow> consumer) {
+        try (Stream<OperationExportRow> rows = customerId == null
+                ? operationRepository.streamAll()
+                : operationRepository.streamByCustomerId(customerId)) {
+            rows.forEach(consumer);
         }
     }
 
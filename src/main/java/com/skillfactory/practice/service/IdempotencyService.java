@@ -0,0 +1,167 @@
+package com.skillfactory.practice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.skillfactory.practice.entity.IdempotencyKey;
+import com.skillfactory.practice.repository.IdempotencyKeyRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.apache.coyote.BadRequestException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.function.Supplier;
+
+// Идемпотентность денежных операций по заголовку Idempotency-Key.
+// Ключ занимается INSERT по первичному ключу в начале транзакции операции, ответ сохраняется в конце той же
+// транзакции. Если ключ уже занят, операция не вызывается и возвращается сохранённый ответ (параллельный
+// запрос с тем же ключом ждёт фиксации первого). Недавние ключи хранятся в кэше: повтор обычно обслуживается
+// без обращения к БД.
+// В режиме движка счетов операцию нельзя откатить вместе с транзакцией ключа, поэтому ключ сначала
+// занимается отдельной зафиксированной транзакцией, а ответ сохраняется после операции (executeClaimed)
+@Service
+public class IdempotencyService {
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    // Код ответа занятого ключа, ответ для которого ещё не сохранён (вне транзакции операции виден только
+    // в режиме движка счетов)
+    public static final int PENDING = 0;
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyKeyRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final AccountEngine accountEngine;
+    private final Duration retention;
+    private final long cacheSize;
+    private final Cache<String, IdempotencyKey> recentKeys;
+
+    public IdempotencyService(IdempotencyKeyRepository repository,
+                              PlatformTransactionManager transactionManager, AccountEngine accountEngine,
+                              @Value("${app.idempotency.retention:24h}") Duration retention,
+                              @Value("${app.idempotency.cache-size:100000}") long cacheSize,
+                              MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.accountEngine = accountEngine;
+        this.retention = retention;
+        this.cacheSize = cacheSize;
+        this.recentKeys = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(retention)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recentKeys, "idempotency");
+    }
+
+    // Выполняет операцию не более одного раза для ключа. Без ключа операция просто выполняется.
+    // fingerprint описывает запрос: повтор ключа с другим запросом отклоняется
+    public ResponseEntity<String> execute(String key, String fingerprint, Supplier<ResponseEntity<String>> action)
+            throws BadRequestException {
+        if (key == null) {
+            return action.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new BadRequestException("Invalid Idempotency-Key");
+        }
+
+        IdempotencyKey stored = recentKeys.getIfPresent(key);
+        if (stored != null) {
+            return replay(stored, fingerprint);
+        }
+        if (accountEngine.isEnabled()) {
+            return executeClaimed(key, fingerprint, action);
+        }
+
+        ResponseEntity<String> response = transactionTemplate.execute(status -> {
+            if (repository.insertIfAbsent(key, fingerprint, PENDING, "") == 0) {
+                // Ключ уже сохранён другим запросом: операция не вызывается
+                return null;
+            }
+            ResponseEntity<String> result = action.get();
+            repository.saveResponse(key, result.getStatusCode().value(), bodyOf(result));
+            return result;
+        });
+        if (response != null) {
+            // В кэш - только после фиксации: ответ откаченной операции не должен повторяться как успешный
+            recentKeys.put(key, new IdempotencyKey(key, fingerprint, response.getStatusCode().value(), bodyOf(response),
+                    LocalDateTime.now()));
+            return response;
+        }
+        return replayStored(key, fingerprint);
+    }
+
+    // Операцию выполняет движок счетов вне транзакции БД. Параллельный запрос с тем же ключом ждёт фиксации
+    // INSERT и получает 409, пока ответ не сохранён. Если операция выбросила исключение или ответ не сохранился,
+    // ключ остаётся занятым до очистки: прошли ли деньги, неизвестно, и повтор с этим ключом их не двигает
+    private ResponseEntity<String> executeClaimed(String key, String fingerprint,
+                                                  Supplier<ResponseEntity<String>> action) {
+        Integer claimed = transactionTemplate.execute(status -> repository.insertIfAbsent(key, fingerprint, PENDING, ""));
+        if (claimed == null || claimed == 0) {
+            return replayStored(key, fingerprint);
+        }
+
+        ResponseEntity<String> response = action.get();
+        transactionTemplate.executeWithoutResult(status ->
+                repository.saveResponse(key, response.getStatusCode().value(), bodyOf(response)));
+        recentKeys.put(key, new IdempotencyKey(key, fingerprint, response.getStatusCode().value(), bodyOf(response),
+                LocalDateTime.now()));
+        return response;
+    }
+
+    // Ключ сохранён другим запросом. Читается с основной БД (в транзакции не только для чтения):
+    // на реплику ключ мог ещё не попасть
+    private ResponseEntity<String> replayStored(String key, String fingerprint) {
+        IdempotencyKey stored = transactionTemplate.execute(status -> repository.findById(key).orElseThrow());
+        if (stored.getStatusCode() != PENDING) {
+            recentKeys.put(key, stored);
+        }
+        return replay(stored, fingerprint);
+    }
+
+    // После рестарта кэш заполняется ключами, сохранёнными за срок хранения
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadRecentKeys() {
+        repository.findCreatedAfter(LocalDateTime.now().minus(retention), Limit.of((int) Math.min(cacheSize, Integer.MAX_VALUE)))
+                .stream()
+                .filter(stored -> stored.getStatusCode() != PENDING)
+                .forEach(stored -> recentKeys.put(stored.getKey(), stored));
+    }
+
+    // Ключи старше срока хранения удаляются, повтор с таким ключом выполнится как новый запрос
+    @Scheduled(fixedDelayString = "${app.idempotency.cleanup-interval:1h}")
+    @Transactional
+    public void deleteExpiredKeys() {
+        repository.deleteCreatedBefore(LocalDateTime.now().minus(retention));
+    }
+
+    private static String bodyOf(ResponseEntity<String> response) {
+        return response.getBody() != null ? response.getBody() : "";
+    }
+
+    private static ResponseEntity<String> replay(IdempotencyKey stored, String fingerprint) {
+        if (!stored.getFingerprint().equals(fingerprint)) {
+            return new ResponseEntity<>("Ключ идемпотентности уже использован для другого запроса",
+                    HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        if (stored.getStatusCode() == PENDING) {
+            return new ResponseEntity<>("Запрос с этим ключом идемпотентности ещё выполняется или завершился ошибкой",
+                    HttpStatus.CONFLICT);
+        }
+        return ResponseEntity.status(stored.getStatusCode())
+                .header(REPLAYED_HEADER, "true")
+                .body(stored.getResponseBody());
+    }
+}
@@ -0,0 +1,131 @@
+package com.skillfactory.practice.service;
+
+import com.skillfactory.practice.dto.LedgerMismatch;
+import com.skillfactory.practice.repository.CustomerRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+// Фоновые задачи журнала: снимки балансов, сверка customer.balance с журналом и пересчёт итогов по периодам.
+// Клиенты обрабатываются диапазонами ID по chunk-size параллельно в threads потоках,
+// каждый диапазон - один запрос к БД (снимки - в своей транзакции)
+@Component
+public class LedgerMaintenance {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerMaintenance.class);
+
+    private final LedgerService ledgerService;
+    private final OperationTotalsService totalsService;
+    private final CustomerRepository customerRepository;
+    private final int threads;
+    private final long chunkSize;
+    private final Timer reconciliationTimer;
+    // Количество расхождений, найденных последней сверкой
+    private final AtomicLong lastMismatches = new AtomicLong();
+
+    public LedgerMaintenance(LedgerService ledgerService, OperationTotalsService totalsService,
+                             CustomerRepository customerRepository,
+                             @Value("${app.ledger.threads:4}") int threads,
+                             @Value("${app.ledger.chunk-size:10000}") long chunkSize,
+                             MeterRegistry meterRegistry) {
+        this.ledgerService = ledgerService;
+        this.totalsService = totalsService;
+        this.customerRepository = customerRepository;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.reconciliationTimer = Timer.builder("ledger.reconciliation")
+                .description("Сверка балансов клиентов с журналом операций")
+                .register(meterRegistry);
+        Gauge.builder("ledger.mismatches", lastMismatches, AtomicLong::get)
+                .description("Клиенты, баланс которых расходится с журналом (последняя сверка)")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.ledger.snapshot-interval:5m}",
+            initialDelayString = "${app.ledger.snapshot-interval:5m}")
+    public int takeSnapshots() {
+        int snapshots = forEachChunk(ledgerService::takeSnapshots).stream().mapToInt(Integer::intValue).sum();
+        log.debug("Создано снимков балансов: {}", snapshots);
+        return snapshots;
+    }
+
+    // Расхождения не исправляются автоматически: причину нужно выяснить, затем пересчитать баланс
+    // из журнала (LedgerService.rebuildBalance)
+    @Scheduled(fixedDelayString = "${app.ledger.reconcile-interval:1h}",
+            initialDelayString = "${app.ledger.reconcile-interval:1h}")
+    public List<LedgerMismatch> reconcile() {
+        List<LedgerMismatch> mismatches = reconciliationTimer.record(() -> forEachChunk(ledgerService::findMismatches)
+                .stream()
+                .flatMap(List::stream)
+                .toList());
+        lastMismatches.set(mismatches.size());
+        for (LedgerMismatch mismatch : mismatches) {
+            log.warn("Баланс клиента {} ({}) расходится с журналом ({})",
+                    mismatch.getCustomerId(), mismatch.getBalance(), mismatch.getLedgerBalance());
+        }
+        return mismatches;
+    }
+
+    // Пересчёт итогов по дням и месяцам из журнала. Возвращает количество пересчитанных дневных итогов
+    public int rebuildTotals() {
+        int days = forEachChunk(totalsService::rebuild).stream().mapToInt(Integer::intValue).sum();
+        log.info("Пересчитано дневных итогов операций: {}", days);
+        return days;
+    }
+
+    // Итоги по периодам заполняются при первом старте после их появления, дальше их ведёт триггер
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillTotals() {
+        if (totalsService.needsBackfill()) {
+            rebuildTotals();
+        }
+    }
+
+    // Результаты по диапазонам ID в порядке возрастания
+    private <T> List<T> forEachChunk(BiFunction<Long, Long, T> action) {
+        long minId = customerRepository.findMinId();
+        long maxId = customerRepository.findMaxId();
+        if (maxId == 0) {
+            return List.of();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<T>> chunks = new ArrayList<>();
+        try {
+            for (long from = minId; from <= maxId; from += chunkSize) {
+                long chunkFrom = from;
+                long chunkTo = Math.min(from + chunkSize - 1, maxId);
+                chunks.add(executor.submit(() -> action.apply(chunkFrom, chunkTo)));
+            }
+
+            List<T> results = new ArrayList<>(chunks.size());
+            for (Future<T> chunk : chunks) {
+                results.add(chunk.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка обработки журнала", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Обработка журнала прервана", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
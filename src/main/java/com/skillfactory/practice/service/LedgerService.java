@@ -0,0 +1,74 @@
+package com.skillfactory.practice.service;
+
+import com.skillfactory.practice.dto.LedgerMismatch;
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.repository.LedgerSnapshotRepository;
+import com.skillfactory.practice.repository.OperationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+// Балансы по журналу операций. Журнал (operations) - источник истины: баланс клиента равен последнему
+// снимку плюс сумме операций после него. customer.balance - его проекция, которая меняется в той же
+// транзакции, что и журнал: по ней выполняются условное списание и проверки перевода под блокировкой.
+// Проекцию можно сверить с журналом (LedgerMaintenance) и пересчитать из него (rebuildBalance)
+@Service
+public class LedgerService {
+
+    private final LedgerSnapshotRepository snapshotRepository;
+    private final OperationRepository operationRepository;
+    private final CustomerRepository customerRepository;
+    private final BalanceCache balanceCache;
+    private final long snapshotEvery;
+
+    public LedgerService(LedgerSnapshotRepository snapshotRepository, OperationRepository operationRepository,
+                         CustomerRepository customerRepository, BalanceCache balanceCache,
+                         @Value("${app.ledger.snapshot-every:100}") long snapshotEvery) {
+        this.snapshotRepository = snapshotRepository;
+        this.operationRepository = operationRepository;
+        this.customerRepository = customerRepository;
+        this.balanceCache = balanceCache;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    // Баланс по журналу: последний снимок и не больше snapshot-every операций после него (плюс операции,
+    // записанные с последнего прохода LedgerMaintenance)
+    public Optional<BigDecimal> getLedgerBalance(Long customerId) {
+        return snapshotRepository.findLedgerBalance(customerId);
+    }
+
+    // Сумма всей истории клиента без снимков: стоимость чтения растёт с длиной истории
+    public BigDecimal getHistoryBalance(Long customerId) {
+        return operationRepository.sumByCustomerId(customerId);
+    }
+
+    // Снимки для клиентов из диапазона ID, у которых накопилось snapshot-every операций после последнего снимка
+    @Transactional
+    public int takeSnapshots(long fromId, long toId) {
+        return snapshotRepository.takeSnapshots(fromId, toId, snapshotEvery);
+    }
+
+    // Клиенты из диапазона ID, у которых customer.balance расходится с журналом
+    public List<LedgerMismatch> findMismatches(long fromId, long toId) {
+        return snapshotRepository.findMismatches(fromId, toId);
+    }
+
+    // Пересчёт customer.balance из журнала. Баланс по журналу читается после блокировки строки клиента:
+    // все операции, записанные до блокировки, уже зафиксированы, новые ждут окончания пересчёта
+    @Transactional
+    public boolean rebuildBalance(Long customerId) {
+        balanceCache.beforeWrite(customerId);
+        Optional<Customer> customer = customerRepository.findByIdForUpdate(customerId);
+        if (customer.isEmpty()) {
+            return false;
+        }
+        customer.get().setBalance(Money.of(snapshotRepository.findLedgerBalance(customerId).orElseThrow()));
+        return true;
+    }
+}
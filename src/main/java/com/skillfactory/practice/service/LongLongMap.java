@@ -0,0 +1,76 @@
+package com.skillfactory.practice.service;
+
+import java.util.Arrays;
+
+// Таблица long -> long с открытой адресацией (линейное пробирование) для балансов шарда движка счетов:
+// без упаковки ключей и значений в объекты и без узла на запись. Не потокобезопасна - её читает и меняет
+// только поток шарда. Ключ Long.MIN_VALUE зарезервирован под пустую ячейку (ID клиентов положительные)
+final class LongLongMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+
+    LongLongMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    // Значение по ключу или missing, если ключа нет
+    long get(long key, long missing) {
+        int index = indexOf(key);
+        return keys[index] == key ? values[index] : missing;
+    }
+
+    void put(long key, long value) {
+        int index = indexOf(key);
+        if (keys[index] == key) {
+            values[index] = value;
+            return;
+        }
+        keys[index] = key;
+        values[index] = value;
+        // Заполнение не больше половины: цепочки пробирования остаются короткими
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    // Ячейка ключа или первая пустая ячейка на его цепочке
+    private int indexOf(long key) {
+        int index = hash(key) & mask;
+        while (keys[index] != key && keys[index] != EMPTY) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    // Перемешивание битов: последовательные ID не должны попадать в соседние ячейки одной цепочкой
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,63 @@
+package com.skillfactory.practice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+// Метрики денежных операций, которых нет в стандартных метриках Spring:
+// отказы из-за недостатка средств и ожидание блокировок клиентов
+@Component
+public class MoneyMetrics {
+
+    private final Counter insufficientWithdrawals;
+    private final Counter insufficientTransfers;
+    private final Counter insufficientBatchTransfers;
+    private final Timer stripeLockWait;
+    private final Timer rowLockWait;
+
+    public MoneyMetrics(MeterRegistry registry) {
+        this.insufficientWithdrawals = insufficientFunds(registry, "withdrawal");
+        this.insufficientTransfers = insufficientFunds(registry, "transfer");
+        this.insufficientBatchTransfers = insufficientFunds(registry, "batch_transfer");
+        this.stripeLockWait = lockWait(registry, "stripe",
+                "Ожидание блокировок клиентов внутри процесса (CustomerLocks)");
+        this.rowLockWait = lockWait(registry, "row",
+                "Блокировка строк клиентов в БД (SELECT ... FOR UPDATE), включая обращение к БД");
+    }
+
+    public void insufficientWithdrawal() {
+        insufficientWithdrawals.increment();
+    }
+
+    public void insufficientTransfer() {
+        insufficientTransfers.increment();
+    }
+
+    public void insufficientBatchTransfer() {
+        insufficientBatchTransfers.increment();
+    }
+
+    public Timer stripeLockWait() {
+        return stripeLockWait;
+    }
+
+    public Timer rowLockWait() {
+        return rowLockWait;
+    }
+
+    private static Counter insufficientFunds(MeterRegistry registry, String operation) {
+        return Counter.builder("money.insufficient.funds")
+                .description("Операции, отклонённые из-за недостатка средств")
+                .tag("operation", operation)
+                .register(registry);
+    }
+
+    private static Timer lockWait(MeterRegistry registry, String lock, String description) {
+        return Timer.builder("customer.lock.wait")
+                .description(description)
+                .tag("lock", lock)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,70 @@
+package com.skillfactory.practice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.skillfactory.practice.dto.OperationView;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Кэш истории закрытых периодов (конец периода раньше closed-after назад): повторные запросы панелей за прошлые
+// периоды не читают операции из БД. Версия истории (OperationTotalsService.historyVersion) входит в ключ,
+// поэтому операция, дописанная в период задним числом, даёт промах, а старая запись вытесняется по размеру.
+// Размер ограничен суммарным количеством операций в записях.
+// Как и BalanceCache, значение загружается в потоке читателя вне блокировок кэша
+@Component
+public class OperationHistoryCache {
+
+    private record Key(long customerId, LocalDateTime startDate, LocalDateTime endDate, String version) {
+    }
+
+    private final boolean enabled;
+    private final Duration closedAfter;
+    private final Cache<Key, List<OperationView>> cache;
+
+    public OperationHistoryCache(@Value("${app.history-cache.enabled:true}") boolean enabled,
+                                 @Value("${app.history-cache.maximum-operations:1000000}") long maximumOperations,
+                                 @Value("${app.history-cache.expire-after-access:1h}") Duration expireAfterAccess,
+                                 @Value("${app.history-cache.closed-after:10m}") Duration closedAfter,
+                                 MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.closedAfter = closedAfter;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumOperations)
+                .<Key, List<OperationView>>weigher((key, operations) -> operations.size() + 1)
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+        if (enabled) {
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "operation-history");
+        }
+    }
+
+    // Период закрыт: конец задан и прошёл давно, новых операций в нём не ожидается. Запас closed-after
+    // покрывает транзакции, начатые до конца периода, и отставание переноса outbox и движка счетов
+    public boolean isClosed(LocalDateTime endDate) {
+        return endDate != null && endDate.isBefore(LocalDateTime.now().minus(closedAfter));
+    }
+
+    // История закрытого периода через кэш, открытые периоды загружаются всегда
+    public List<OperationView> get(long customerId, LocalDateTime startDate, LocalDateTime endDate, String version,
+                                   Supplier<List<OperationView>> loader) {
+        if (!enabled || !isClosed(endDate)) {
+            return loader.get();
+        }
+        Key key = new Key(customerId, startDate, endDate, version);
+        List<OperationView> operations = cache.getIfPresent(key);
+        if (operations == null) {
+            operations = Collections.unmodifiableList(loader.get());
+            cache.put(key, operations);
+        }
+        return operations;
+    }
+}
@@ -0,0 +1,253 @@
+package com.skillfactory.practice.service;
+
+import com.skillfactory.practice.dto.OperationEvent;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.entity.Operation;
+import com.skillfactory.practice.enums.OperationType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Outbox операций (app.outbox.enabled). Денежная операция в транзакции запроса вставляет в operation_outbox
+// компактную строку вместо строки operations: без ID из последовательности Hibernate и без записи в индексы журнала.
+// Фоновая задача переносит строки в operations пакетами по batch-size: вставка в operations и удаление из outbox
+// выполняются в одной транзакции, поэтому каждая операция попадает в журнал ровно один раз.
+// После фиксации пакета операции публикуются подписчикам (OperationEvent) - внутрипроцессная замена брокера
+// с доставкой не менее одного раза при работе процесса; события одного клиента идут в порядке ledger_seq.
+// Если подписчик выбросил исключение, это событие и все следующие остаются в очереди в памяти и публикуются
+// заново при следующем переносе (подписчики, уже получившие событие, получат его повторно). Пока в очереди
+// не меньше max-undelivered событий, новые пакеты не переносятся: операции ждут в outbox, а очередь ограничена
+// max-undelivered + batch-size событиями. При рестарте недоставленные события из очереди теряются: операции
+// уже в журнале, в outbox их нет
+@Component
+public class OperationOutbox {
+
+    // Блок ID операций из operations_seq, как у Hibernate (allocationSize = 50, pooled-lo)
+    private static final int ID_BLOCK = 50;
+
+    private static final Logger log = LoggerFactory.getLogger(OperationOutbox.class);
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxUndelivered;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    // Перенос выполняется одним потоком: пакеты публикуются в порядке переноса
+    private final ReentrantLock drainLock = new ReentrantLock();
+    // Перенесённые, но ещё не доставленные подписчикам события, по порядку переноса (под drainLock)
+    private final Deque<OperationEvent> undelivered = new ArrayDeque<>();
+    private final AtomicLong undeliveredCount = new AtomicLong();
+
+    private final Counter drained;
+    private final Counter deliveryFailures;
+    private final Timer deliveryLag;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong oldestPendingMillis = new AtomicLong();
+
+    public OperationOutbox(@Value("${app.outbox.enabled:false}") boolean enabled,
+                           @Value("${app.outbox.batch-size:1000}") int batchSize,
+                           @Value("${app.outbox.max-undelivered:10000}") int maxUndelivered,
+                           JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                           ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxUndelivered = maxUndelivered;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.drained = Counter.builder("outbox.drained")
+                .description("Операции, перенесённые из outbox в журнал")
+                .register(meterRegistry);
+        this.deliveryFailures = Counter.builder("outbox.delivery.failures")
+                .description("Ошибки подписчиков при публикации событий, событие будет опубликовано повторно")
+                .register(meterRegistry);
+        Gauge.builder("outbox.undelivered", undeliveredCount, AtomicLong::get)
+                .description("Перенесённые в журнал операции, события которых ещё не доставлены подписчикам")
+                .register(meterRegistry);
+        this.deliveryLag = Timer.builder("outbox.delivery.lag")
+                .description("Время от записи операции в outbox до переноса в журнал")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("outbox.pending", pending, AtomicLong::get)
+                .description("Операции в outbox после последнего переноса")
+                .register(meterRegistry);
+        Gauge.builder("outbox.lag", oldestPendingMillis, millis -> millis.get() / 1000.0)
+                .description("Возраст самой старой операции в outbox после последнего переноса, секунды")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Вызывается в транзакции денежной операции под блокировкой строки клиента
+    public void append(long customerId, OperationType type, Money amount) {
+        jdbcTemplate.update("insert into operation_outbox (customer_id, type, amount) values (?, ?, ?)",
+                customerId, type.name(), amount.toBigDecimal());
+    }
+
+    // Операции пакета переводов одной многострочной вставкой
+    public void appendAll(List<Operation> operations) {
+        jdbcTemplate.batchUpdate("insert into operation_outbox (customer_id, type, amount) values (?, ?, ?)",
+                operations, operations.size(), (statement, operation) -> {
+                    statement.setLong(1, operation.getCustomer().getId());
+                    statement.setString(2, operation.getType().name());
+                    statement.setBigDecimal(3, operation.getAmount().toBigDecimal());
+                });
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval:100ms}")
+    public void scheduledDrain() {
+        if (enabled) {
+            drain();
+        }
+    }
+
+    // После переключения режима в outbox могли остаться операции прошлого запуска
+    @EventListener(ApplicationReadyEvent.class)
+    public void drainOnStartup() {
+        drain();
+    }
+
+    // Переносит накопившиеся операции, возвращает их количество. Сначала повторяет публикацию очереди;
+    // если она заполнена, перенос откладывается до следующего вызова
+    public int drain() {
+        drainLock.lock();
+        try {
+            int total = 0;
+            publishUndelivered();
+            while (undelivered.size() < maxUndelivered) {
+                List<OperationEvent> batch = transactionTemplate.execute(status -> drainBatch());
+                total += batch.size();
+                recordDrained(batch);
+                undelivered.addAll(batch);
+                publishUndelivered();
+                if (batch.size() < batchSize) {
+                    break;
+                }
+            }
+            if (undelivered.size() >= maxUndelivered) {
+                log.warn("Перенос outbox приостановлен: {} недоставленных событий (лимит {})",
+                        undelivered.size(), maxUndelivered);
+            }
+            updatePending();
+            return total;
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    // Строки, заблокированные другим экземпляром приложения, пропускаются (SKIP LOCKED)
+    private List<OperationEvent> drainBatch() {
+        List<OperationEvent> rows = jdbcTemplate.query("select ledger_seq, customer_id, type, amount, created_at"
+                        + " from operation_outbox order by ledger_seq limit ? for update skip locked",
+                (resultSet, rowNum) -> new OperationEvent(null, resultSet.getLong("ledger_seq"),
+                        resultSet.getLong("customer_id"), OperationType.valueOf(resultSet.getString("type")),
+                        resultSet.getBigDecimal("amount"), toLocal(resultSet.getObject("created_at", OffsetDateTime.class))),
+                batchSize);
+        if (rows.isEmpty()) {
+            return rows;
+        }
+
+        long[] ids = reserveOperationIds(jdbcTemplate, rows.size());
+        List<OperationEvent> events = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            OperationEvent row = rows.get(i);
+            events.add(new OperationEvent(ids[i], row.ledgerSeq(), row.customerId(), row.type(), row.amount(),
+                    row.createdAt()));
+        }
+
+        jdbcTemplate.batchUpdate("insert into operations (operation_id, ledger_seq, customer_id, type, amount, created_at)"
+                + " values (?, ?, ?, ?, ?, ?)", events, events.size(), (statement, event) -> {
+            statement.setLong(1, event.operationId());
+            statement.setLong(2, event.ledgerSeq());
+            statement.setLong(3, event.customerId());
+            statement.setString(4, event.type().name());
+            statement.setBigDecimal(5, event.amount());
+            statement.setTimestamp(6, Timestamp.valueOf(event.createdAt()));
+        });
+        jdbcTemplate.update("delete from operation_outbox where ledger_seq = any(?)",
+                (Object) events.stream().map(OperationEvent::ledgerSeq).toArray(Long[]::new));
+        return events;
+    }
+
+    private void recordDrained(List<OperationEvent> events) {
+        LocalDateTime now = LocalDateTime.now();
+        for (OperationEvent event : events) {
+            deliveryLag.record(Duration.between(event.createdAt(), now));
+        }
+        drained.increment(events.size());
+    }
+
+    // Событие снимается с очереди только после успешной публикации. На первой ошибке публикация
+    // останавливается, чтобы события клиента не обогнали недоставленное
+    private void publishUndelivered() {
+        if (undelivered.isEmpty()) {
+            return;
+        }
+        try {
+            while (!undelivered.isEmpty()) {
+                eventPublisher.publishEvent(undelivered.peekFirst());
+                undelivered.pollFirst();
+            }
+        } catch (RuntimeException e) {
+            deliveryFailures.increment();
+            log.warn("Ошибка подписчика на событие операции {}, повтор при следующем переносе ({} событий в очереди)",
+                    undelivered.peekFirst().operationId(), undelivered.size(), e);
+        } finally {
+            undeliveredCount.set(undelivered.size());
+        }
+    }
+
+    private void updatePending() {
+        jdbcTemplate.query("select count(*), min(created_at) from operation_outbox", resultSet -> {
+            pending.set(resultSet.getLong(1));
+            OffsetDateTime oldest = resultSet.getObject(2, OffsetDateTime.class);
+            oldestPendingMillis.set(oldest == null ? 0
+                    : Math.max(0, Duration.between(toLocal(oldest), LocalDateTime.now()).toMillis()));
+        });
+    }
+
+    // ID операций блоками из operations_seq: значение последовательности - начало блока из ID_BLOCK номеров.
+    // Так же получает ID запись операций движка счетов (AccountEngine)
+    static long[] reserveOperationIds(JdbcTemplate jdbcTemplate, int count) {
+        List<Long> blocks = jdbcTemplate.queryForList("select nextval('operations_seq') from generate_series(1, ?)",
+                Long.class, (count + ID_BLOCK - 1) / ID_BLOCK);
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = blocks.get(i / ID_BLOCK) + i % ID_BLOCK;
+        }
+        return ids;
+    }
+
+    private static LocalDateTime toLocal(OffsetDateTime dateTime) {
+        return dateTime.atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+    }
+}
@@ -0,0 +1,99 @@
+package com.skillfactory.practice.service;
+
+import com.skillfactory.practice.repository.LedgerSnapshotRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Секции operations по месяцам (миграция V8): секции создаются на premake-months месяцев вперёд,
+// секции старше retention-months отсоединяются и переносятся в схему operations_archive.
+// Перед отсоединением по клиентам секции снимаются снимки балансов: баланс по журналу
+// после архивации не меняется
+@Component
+public class OperationPartitions {
+
+    private static final Logger log = LoggerFactory.getLogger(OperationPartitions.class);
+
+    public static final String ARCHIVE_SCHEMA = "operations_archive";
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("operations_(\\d{4})_(\\d{2})");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int premakeMonths;
+    private final int retentionMonths;
+
+    public OperationPartitions(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                               @Value("${app.partitions.premake-months:3}") int premakeMonths,
+                               @Value("${app.partitions.retention-months:0}") int retentionMonths) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.premakeMonths = premakeMonths;
+        this.retentionMonths = retentionMonths;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${app.partitions.cron:0 0 3 * * *}")
+    public void maintain() {
+        YearMonth current = YearMonth.now();
+        createPartitions(current, current.plusMonths(premakeMonths));
+        // 0 - секции не архивируются
+        if (retentionMonths > 0) {
+            archivePartitionsBefore(current.minusMonths(retentionMonths));
+        }
+    }
+
+    // Секции для месяцев from..to включительно (существующие не меняются)
+    public void createPartitions(YearMonth from, YearMonth to) {
+        jdbcTemplate.queryForList("select create_operations_partition(month::date)"
+                        + " from generate_series(?::date, ?::date, interval '1 month') as month",
+                String.class, from.atDay(1), to.atDay(1));
+    }
+
+    // Отсоединяет секции месяцев раньше month и переносит их в архивную схему, возвращает имена секций
+    public List<String> archivePartitionsBefore(YearMonth month) {
+        List<String> archived = new ArrayList<>();
+        for (String partition : partitions()) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (!matcher.matches()) {
+                continue;
+            }
+            YearMonth partitionMonth = YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+            if (partitionMonth.isBefore(month)) {
+                transactionTemplate.executeWithoutResult(status -> archive(partition));
+                archived.add(partition);
+                log.info("Секция {} перенесена в {}", partition, ARCHIVE_SCHEMA);
+            }
+        }
+        return archived;
+    }
+
+    // Секции operations в порядке месяцев
+    public List<String> partitions() {
+        return jdbcTemplate.queryForList("select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid"
+                + " where i.inhparent = 'public.operations'::regclass order by c.relname", String.class);
+    }
+
+    // Снимки, отсоединение и перенос - одна транзакция: операции секции остаются учтены в балансе по журналу
+    private void archive(String partition) {
+        jdbcTemplate.update("insert into ledger_snapshots (customer_id, ledger_seq, balance, created_at)"
+                + " select c.id, tail.last_seq, " + LedgerSnapshotRepository.LEDGER_BALANCE + ", now()"
+                + " from customer c" + LedgerSnapshotRepository.LATEST_SNAPSHOT + LedgerSnapshotRepository.TAIL
+                + " where c.id in (select customer_id from public." + partition + ") and tail.operations > 0");
+        jdbcTemplate.execute("alter table public.operations detach partition public." + partition);
+        jdbcTemplate.execute("alter table public." + partition + " set schema " + ARCHIVE_SCHEMA);
+    }
+}
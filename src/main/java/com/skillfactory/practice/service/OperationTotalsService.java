@@ -0,0 +1,110 @@
+package com.skillfactory.practice.service;
+
+import com.skillfactory.practice.dto.OperationSummary;
+import com.skillfactory.practice.enums.SummaryGranularity;
+import com.skillfactory.practice.repository.CustomerRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+// Сводки операций клиента по дням и месяцам из таблиц итогов operation_daily_totals и operation_monthly_totals.
+// Итоги обновляет триггер на operations (миграция V9), поэтому сводка читает по строке на период
+// независимо от количества операций в нём
+@Service
+public class OperationTotalsService {
+
+    private static final RowMapper<OperationSummary> SUMMARY = (rs, rowNum) -> new OperationSummary(
+            rs.getObject(1, LocalDate.class), rs.getBigDecimal(2), rs.getBigDecimal(3), rs.getLong(4), rs.getLong(5));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CustomerRepository customerRepository;
+
+    public OperationTotalsService(JdbcTemplate jdbcTemplate, CustomerRepository customerRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.customerRepository = customerRepository;
+    }
+
+    // Итоги за периоды с from по to включительно (без границы - без ограничения), периоды без операций
+    // не возвращаются. Для месяцев границы расширяются до целых месяцев. Пусто - клиент не найден
+    @Transactional(readOnly = true)
+    public Optional<List<OperationSummary>> getSummary(Long customerId, LocalDate from, LocalDate to,
+                                                       SummaryGranularity granularity) {
+        if (!customerRepository.existsById(customerId)) {
+            return Optional.empty();
+        }
+        String table = granularity == SummaryGranularity.DAY ? "operation_daily_totals" : "operation_monthly_totals";
+        String period = granularity == SummaryGranularity.DAY ? "day" : "month";
+        LocalDate start = from != null && granularity == SummaryGranularity.MONTH ? from.withDayOfMonth(1) : from;
+        return Optional.of(jdbcTemplate.query("select " + period + ", deposited, withdrawn, deposits, withdrawals"
+                        + " from " + table + " where customer_id = ?"
+                        + " and " + period + " between coalesce(?::date, '-infinity') and coalesce(?::date, 'infinity')"
+                        + " order by " + period,
+                SUMMARY, customerId, start, to));
+    }
+
+    // Версия истории клиента за период для ETag: количество и суммы операций из дневных итогов дней периода,
+    // по строке на день без чтения операций. История только дописывается, поэтому версия меняется с каждой
+    // новой операцией в эти дни, в том числе записанной задним числом (outbox, движок счетов).
+    // Архивация секций (OperationPartitions) итогов не меняет, а операции из истории убирает, поэтому в версию
+    // входит и граница архива - самая старая присоединённая секция operations (тем же запросом, по каталогу)
+    @Transactional(readOnly = true)
+    public String historyVersion(Long customerId, LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.queryForObject("select coalesce(sum(deposits + withdrawals), 0),"
+                        + " coalesce(sum(deposited), 0), coalesce(sum(withdrawn), 0),"
+                        + " (select min(c.relname) from pg_inherits i join pg_class c on c.oid = i.inhrelid"
+                        + " where i.inhparent = 'public.operations'::regclass)"
+                        + " from operation_daily_totals where customer_id = ?"
+                        + " and day between coalesce(?::date, '-infinity') and coalesce(?::date, 'infinity')",
+                (rs, rowNum) -> rs.getLong(1) + "-" + Integer.toHexString(Objects.hash(
+                        rs.getBigDecimal(2).stripTrailingZeros(), rs.getBigDecimal(3).stripTrailingZeros(), rs.getString(4))),
+                customerId, utcDay(from), utcDay(to));
+    }
+
+    // Дни итогов - по UTC, границы периода истории - в часовом поясе JVM
+    private static LocalDate utcDay(LocalDateTime dateTime) {
+        return dateTime == null ? null
+                : dateTime.atZone(ZoneId.systemDefault()).withZoneSameInstant(ZoneOffset.UTC).toLocalDate();
+    }
+
+    // Пересчёт итогов клиентов из диапазона ID по operations. Пока идёт пересчёт, новые операции ждут
+    // (блокировка SHARE не пропускает INSERT и DELETE, но не мешает пересчёту других диапазонов),
+    // иначе операция, зафиксированная во время чтения, была бы затёрта пересчитанным значением.
+    // Итоги периодов, операций которых больше нет в operations (архивные секции), не меняются.
+    // Возвращает количество пересчитанных дневных итогов
+    @Transactional
+    public int rebuild(long fromId, long toId) {
+        jdbcTemplate.execute("lock table operations in share mode");
+        int days = jdbcTemplate.update("insert into operation_daily_totals as t"
+                + " select customer_id, (created_at at time zone 'UTC')::date,"
+                + " coalesce(sum(amount) filter (where type = 'DEPOSIT'), 0),"
+                + " coalesce(sum(amount) filter (where type = 'WITHDRAWAL'), 0),"
+                + " count(*) filter (where type = 'DEPOSIT'), count(*) filter (where type = 'WITHDRAWAL')"
+                + " from operations where customer_id between ? and ? group by 1, 2 order by 1, 2"
+                + " on conflict (customer_id, day) do update set deposited = excluded.deposited,"
+                + " withdrawn = excluded.withdrawn, deposits = excluded.deposits, withdrawals = excluded.withdrawals",
+                fromId, toId);
+        jdbcTemplate.update("insert into operation_monthly_totals as t"
+                + " select customer_id, date_trunc('month', day)::date, sum(deposited), sum(withdrawn),"
+                + " sum(deposits), sum(withdrawals)"
+                + " from operation_daily_totals where customer_id between ? and ? group by 1, 2 order by 1, 2"
+                + " on conflict (customer_id, month) do update set deposited = excluded.deposited,"
+                + " withdrawn = excluded.withdrawn, deposits = excluded.deposits, withdrawals = excluded.withdrawals",
+                fromId, toId);
+        return days;
+    }
+
+    // Итогов ещё нет, а операции уже есть: база с историей до появления итогов
+    public boolean needsBackfill() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("select not exists (select 1 from operation_daily_totals)"
+                + " and exists (select 1 from operations)", Boolean.class));
+    }
+}
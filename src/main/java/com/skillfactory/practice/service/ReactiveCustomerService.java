@@ -0,0 +1,174 @@
+package com.skillfactory.practice.service;
+
+import com.skillfactory.practice.dto.OperationCursor;
+import com.skillfactory.practice.dto.OperationPage;
+import com.skillfactory.practice.dto.OperationView;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.enums.OperationType;
+import io.r2dbc.spi.Readable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+
+// Реактивный вариант CustomerService на R2DBC (профиль reactive).
+// Логика та же: пополнение и списание - один условный UPDATE, перевод блокирует строки обоих клиентов
+// в порядке возрастания ID. Внутрипроцессные блокировки CustomerLocks не используются (они блокируют поток),
+// взаимное исключение обеспечивают блокировки строк в БД
+@Service
+@Profile("reactive")
+public class ReactiveCustomerService {
+
+    private static final String OPERATION_COLUMNS = "select operation_id, type, amount, created_at from operations";
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+
+    public ReactiveCustomerService(DatabaseClient databaseClient, TransactionalOperator transactionalOperator) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    public Mono<Money> getBalance(Long customerId) {
+        return databaseClient.sql("select balance from customer where id = :id")
+                .bind("id", customerId)
+                .map(row -> Money.of(row.get("balance", BigDecimal.class)))
+                .one();
+    }
+
+    // true - счёт пополнен, false - клиент не найден
+    public Mono<Boolean> putMoney(Long customerId, Money amount) {
+        Mono<Boolean> deposit = changeBalance(customerId, amount)
+                .flatMap(updated -> updated == 0
+                        ? Mono.just(false)
+                        : insertOperation(customerId, OperationType.DEPOSIT, amount).thenReturn(true));
+        return transactionalOperator.transactional(deposit);
+    }
+
+    // Проверка баланса и списание выполняются одним UPDATE
+    public Mono<Boolean> takeMoney(Long customerId, Money amount) {
+        Mono<Boolean> withdrawal = databaseClient
+                .sql("update customer set balance = balance - :amount where id = :id and balance >= :amount")
+                .bind("id", customerId)
+                .bind("amount", amount.toBigDecimal())
+                .fetch()
+                .rowsUpdated()
+                .flatMap(updated -> updated == 0
+                        ? Mono.just(false)
+                        : insertOperation(customerId, OperationType.WITHDRAWAL, amount).thenReturn(true));
+        return transactionalOperator.transactional(withdrawal);
+    }
+
+    public Mono<Boolean> transferMoney(Long senderId, Long recipientId, Money amount) {
+        // SELECT ... FOR UPDATE с сортировкой по ID: строки блокируются в порядке возрастания ID
+        Mono<Boolean> transfer = databaseClient
+                .sql("select id, balance from customer where id in (:ids) order by id for update")
+                .bind("ids", List.of(senderId, recipientId))
+                .map(row -> Map.entry(row.get("id", Long.class), Money.of(row.get("balance", BigDecimal.class))))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .flatMap(balances -> {
+                    Money senderBalance = balances.get(senderId);
+                    if (senderBalance == null || !balances.containsKey(recipientId)
+                            || senderBalance.isLessThan(amount)) {
+                        return Mono.just(false);
+                    }
+                    return changeBalance(senderId, amount.negate())
+                            .then(changeBalance(recipientId, amount))
+                            .then(insertOperation(senderId, OperationType.WITHDRAWAL, amount))
+                            .then(insertOperation(recipientId, OperationType.DEPOSIT, amount))
+                            .thenReturn(true);
+                });
+        return transactionalOperator.transactional(transfer);
+    }
+
+    // История клиента потоком: строки передаются клиенту по мере чтения из БД.
+    // Границы периода необязательны и применяются независимо друг от друга
+    public Flux<OperationView> getOperationList(Long customerId, LocalDateTime startDate, LocalDateTime endDate) {
+        StringBuilder sql = new StringBuilder(OPERATION_COLUMNS).append(" where customer_id = :customerId");
+        if (startDate != null) {
+            sql.append(" and created_at >= :startDate");
+        }
+        if (endDate != null) {
+            sql.append(" and created_at <= :endDate");
+        }
+        sql.append(" order by created_at, operation_id");
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString()).bind("customerId", customerId);
+        if (startDate != null) {
+            spec = spec.bind("startDate", toOffset(startDate));
+        }
+        if (endDate != null) {
+            spec = spec.bind("endDate", toOffset(endDate));
+        }
+        return spec.map(ReactiveCustomerService::toView).all();
+    }
+
+    // Постраничное получение истории по курсору, как в CustomerService.getOperationPage
+    public Mono<OperationPage> getOperationPage(Long customerId, OperationCursor after, int limit) {
+        DatabaseClient.GenericExecuteSpec spec = after == null
+                ? databaseClient.sql(OPERATION_COLUMNS + " where customer_id = :customerId"
+                        + " order by created_at, operation_id limit :limit")
+                : databaseClient.sql(OPERATION_COLUMNS + " where customer_id = :customerId"
+                                + " and (created_at, operation_id) > (:createdAt, :operationId)"
+                                + " order by created_at, operation_id limit :limit")
+                        .bind("createdAt", toOffset(after.createdAt()))
+                        .bind("operationId", after.operationId());
+
+        return spec.bind("customerId", customerId)
+                .bind("limit", limit + 1)
+                .map(ReactiveCustomerService::toView)
+                .all()
+                .collectList()
+                .map(operations -> {
+                    if (operations.size() <= limit) {
+                        return new OperationPage(operations, null);
+                    }
+                    List<OperationView> items = operations.subList(0, limit);
+                    OperationView last = items.get(limit - 1);
+                    return new OperationPage(items, new OperationCursor(last.createdAt(), last.operationId()).toString());
+                });
+    }
+
+    private Mono<Long> changeBalance(Long customerId, Money delta) {
+        return databaseClient.sql("update customer set balance = balance + :delta where id = :id")
+                .bind("id", customerId)
+                .bind("delta", delta.toBigDecimal())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    // ID операции выдаёт значение по умолчанию столбца (nextval('operations_seq'))
+    private Mono<Long> insertOperation(Long customerId, OperationType type, Money amount) {
+        return databaseClient.sql("insert into operations (customer_id, type, amount, created_at)"
+                        + " values (:customerId, :type, :amount, now())")
+                .bind("customerId", customerId)
+                .bind("type", type.name())
+                .bind("amount", amount.toBigDecimal())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    // created_at хранится как TIMESTAMP WITH TIME ZONE; как и в JPA, наружу отдаётся время в часовом поясе JVM
+    private static OperationView toView(Readable row) {
+        OffsetDateTime createdAt = row.get("created_at", OffsetDateTime.class);
+        return new OperationView(
+                row.get("operation_id", Long.class),
+                OperationType.valueOf(row.get("type", String.class)),
+                Money.of(row.get("amount", BigDecimal.class)),
+                createdAt == null ? null : createdAt.atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime());
+    }
+
+    private static OffsetDateTime toOffset(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toOffsetDateTime();
+    }
+}
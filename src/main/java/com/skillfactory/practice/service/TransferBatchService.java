@@ -0,0 +1,35 @@
+package com.skillfactory.practice.service;
+
+import com.skillfactory.practice.dto.TransferRequest;
+import com.skillfactory.practice.dto.TransferResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Пакетное выполнение переводов. Пакет делится на части по chunkSize переводов, каждая часть
+// выполняется в отдельной транзакции (0 - весь пакет одной транзакцией). При ошибке откатывается
+// только текущая часть, уже выполненные части остаются зафиксированными
+@Service
+public class TransferBatchService {
+
+    private final CustomerService customerService;
+    private final int chunkSize;
+
+    public TransferBatchService(CustomerService customerService,
+                                @Value("${app.transfers.batch.chunk-size:500}") int chunkSize) {
+        this.customerService = customerService;
+        this.chunkSize = chunkSize;
+    }
+
+    public List<TransferResult> transfer(List<TransferRequest> transfers) {
+        int size = chunkSize > 0 ? chunkSize : Math.max(transfers.size(), 1);
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        for (int from = 0; from < transfers.size(); from += size) {
+            List<TransferRequest> chunk = transfers.subList(from, Math.min(from + size, transfers.size()));
+            results.addAll(customerService.applyTransfers(chunk, from));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,6 @@
+-- История клиента (getOperationList и постраничное чтение по курсору) выбирает тип и сумму операции:
+-- с ними в INCLUDE запросы истории читают только индекс (Index Only Scan), без обращения к строкам таблицы.
+-- Ключ индекса прежний, поэтому история по-прежнему читается в нужном порядке без сортировки
+DROP INDEX IF EXISTS idx_operations_customer_created_at;
+CREATE INDEX idx_operations_customer_created_at
+    ON operations (customer_id, created_at, operation_id) INCLUDE (type, amount);
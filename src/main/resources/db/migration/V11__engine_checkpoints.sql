@@ -0,0 +1,7 @@
+-- Движок счетов (app.engine.enabled): номер последней записи журнала каждого шарда, сохранённой в БД.
+-- Обновляется в одной транзакции с балансами и операциями пакета, поэтому при восстановлении из журнала
+-- каждая запись применяется к БД ровно один раз
+CREATE TABLE IF NOT EXISTS engine_checkpoints (
+    shard       integer PRIMARY KEY,
+    journal_seq bigint NOT NULL
+);
@@ -0,0 +1,16 @@
+-- Исходная схема, совпадающая с дампами MoneyService_backup*.sql.
+-- На существующей базе миграция пропускается (spring.flyway.baseline-on-migrate).
+
+CREATE TABLE IF NOT EXISTS customer (
+    id      bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    balance numeric(38, 2) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS operations (
+    operation_id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    amount       numeric(38, 2) NOT NULL,
+    created_at   timestamp with time zone,
+    type         varchar(255)   NOT NULL,
+    customer_id  bigint         NOT NULL REFERENCES customer (id),
+    CONSTRAINT operations_type_check CHECK (type IN ('DEPOSIT', 'WITHDRAWAL'))
+);
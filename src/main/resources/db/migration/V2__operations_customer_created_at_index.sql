@@ -0,0 +1,3 @@
+-- Индекс для выборки истории клиента по времени и постраничного вывода по курсору (created_at, operation_id)
+CREATE INDEX IF NOT EXISTS idx_operations_customer_created_at
+    ON operations (customer_id, created_at, operation_id);
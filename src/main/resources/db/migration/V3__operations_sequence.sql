@@ -0,0 +1,11 @@
+-- Идентификаторы операций выдаются последовательностью вместо IDENTITY, чтобы Hibernate мог
+-- объединять INSERT в JDBC-пакеты. Шаг 50 совпадает с allocationSize в Operation:
+-- каждое значение nextval резервирует блок [v, v + 49] (оптимизатор pooled-lo)
+CREATE SEQUENCE IF NOT EXISTS operations_seq INCREMENT BY 50;
+
+SELECT setval('operations_seq', COALESCE((SELECT max(operation_id) FROM operations), 0) + 1, false);
+
+ALTER TABLE operations ALTER COLUMN operation_id DROP IDENTITY IF EXISTS;
+
+-- Для вставок в обход Hibernate (SQL-скрипты, генераторы данных): каждая такая строка занимает свой блок
+ALTER TABLE operations ALTER COLUMN operation_id SET DEFAULT nextval('operations_seq');
@@ -0,0 +1,13 @@
+-- ID клиентов, как и ID операций (V3), выдаются последовательностью блоками по 50 (pooled-lo)
+CREATE SEQUENCE IF NOT EXISTS customer_seq INCREMENT BY 50;
+
+SELECT setval('customer_seq', COALESCE((SELECT max(id) FROM customer), 0) + 1, false);
+
+ALTER TABLE customer ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE customer ALTER COLUMN id SET DEFAULT nextval('customer_seq');
+
+-- Повторное выравнивание последовательности операций: строки из дампов MoneyService_backup*.sql
+-- вставляются с явными ID и могли оказаться впереди последовательности
+SELECT setval('operations_seq', max_id + 1, false)
+FROM (SELECT max(operation_id) AS max_id FROM operations) ops
+WHERE max_id >= (SELECT last_value FROM operations_seq);
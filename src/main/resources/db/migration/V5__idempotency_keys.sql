@@ -0,0 +1,11 @@
+-- Ключи идемпотентности денежных операций и сохранённые ответы на них
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    idempotency_key VARCHAR(255) PRIMARY KEY,
+    fingerprint     VARCHAR(255) NOT NULL,
+    status_code     INTEGER      NOT NULL,
+    response_body   TEXT         NOT NULL,
+    created_at      TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()
+);
+
+-- Для очистки ключей старше срока хранения
+CREATE INDEX IF NOT EXISTS idx_idempotency_keys_created_at ON idempotency_keys (created_at);
@@ -0,0 +1,27 @@
+-- Журнал операций - источник истины для балансов: баланс клиента = последний снимок + сумма операций после него.
+-- Порядок операций клиента задаёт ledger_seq. Значение берётся из последовательности при INSERT, а операция
+-- всегда вставляется под блокировкой строки клиента (UPDATE или SELECT ... FOR UPDATE в той же транзакции),
+-- поэтому у одного клиента ledger_seq растёт в порядке фиксации транзакций. operation_id такого порядка
+-- не даёт: Hibernate выдаёт его блоками заранее
+CREATE SEQUENCE IF NOT EXISTS ledger_seq;
+
+ALTER TABLE operations ADD COLUMN IF NOT EXISTS ledger_seq bigint NOT NULL DEFAULT nextval('ledger_seq');
+
+-- Хвост журнала после снимка читается только из индекса
+CREATE INDEX IF NOT EXISTS idx_operations_customer_ledger_seq ON operations (customer_id, ledger_seq) INCLUDE (type, amount);
+
+-- Снимки баланса: balance - баланс после всех операций клиента с ledger_seq <= снимка
+CREATE TABLE IF NOT EXISTS ledger_snapshots (
+    snapshot_id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    customer_id bigint                   NOT NULL REFERENCES customer (id) ON DELETE CASCADE,
+    ledger_seq  bigint                   NOT NULL,
+    balance     numeric(38, 2)           NOT NULL,
+    created_at  timestamp with time zone NOT NULL DEFAULT now(),
+    CONSTRAINT uk_ledger_snapshots_customer_seq UNIQUE (customer_id, ledger_seq)
+);
+
+-- Прежняя история не всегда сходится с балансами (демо-данные создавали операции без изменения баланса),
+-- поэтому текущие балансы принимаются за начальные снимки: журнал отвечает за всё, что записано после миграции
+INSERT INTO ledger_snapshots (customer_id, ledger_seq, balance)
+SELECT c.id, (SELECT COALESCE(max(ledger_seq), 0) FROM operations), c.balance
+FROM customer c;
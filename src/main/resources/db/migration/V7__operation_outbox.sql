@@ -0,0 +1,14 @@
+-- Outbox операций: в режиме app.outbox.enabled денежная операция в транзакции запроса записывает сюда
+-- компактную строку вместо строки operations, фоновая задача переносит строки в operations пакетами.
+-- ledger_seq выдаётся при вставке в outbox (под блокировкой строки клиента) и переносится в operations,
+-- поэтому порядок операций клиента в журнале не зависит от момента переноса
+CREATE TABLE IF NOT EXISTS operation_outbox (
+    ledger_seq  bigint PRIMARY KEY DEFAULT nextval('ledger_seq'),
+    customer_id bigint                   NOT NULL REFERENCES customer (id) ON DELETE CASCADE,
+    type        varchar(16)              NOT NULL,
+    amount      numeric(38, 2)           NOT NULL,
+    created_at  timestamp with time zone NOT NULL DEFAULT now()
+);
+
+-- Баланс по журналу учитывает ещё не перенесённые операции клиента
+CREATE INDEX IF NOT EXISTS idx_operation_outbox_customer ON operation_outbox (customer_id, ledger_seq);
@@ -0,0 +1,60 @@
+-- Секционирование operations по месяцам created_at. Запросы с границами по времени читают только
+-- секции своего периода, VACUUM и autovacuum обрабатывают секции по отдельности, а старые месяцы
+-- отсоединяются целиком (OperationPartitions) вместо DELETE. Ключ секционирования входит в первичный ключ.
+-- Секции по умолчанию нет: без неё PostgreSQL читает секции по порядку (ORDER BY created_at без сортировки),
+-- секции текущего и следующих месяцев создаются заранее
+
+-- Секция operations_YYYY_MM для месяца, в который попадает month (если её ещё нет). Возвращает имя секции
+CREATE OR REPLACE FUNCTION create_operations_partition(month date) RETURNS text
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    first_day date := date_trunc('month', month)::date;
+    partition text := format('operations_%s', to_char(first_day, 'YYYY_MM'));
+BEGIN
+    IF to_regclass(format('public.%I', partition)) IS NULL THEN
+        EXECUTE format('CREATE TABLE public.%I PARTITION OF public.operations FOR VALUES FROM (%L) TO (%L)',
+                       partition, first_day, (first_day + interval '1 month')::date);
+    END IF;
+    RETURN partition;
+END
+$$;
+
+-- Отсоединённые секции старых месяцев (архив)
+CREATE SCHEMA IF NOT EXISTS operations_archive;
+
+UPDATE operations SET created_at = now() WHERE created_at IS NULL;
+
+ALTER TABLE operations RENAME TO operations_unpartitioned;
+ALTER TABLE operations_unpartitioned RENAME CONSTRAINT operations_pkey TO operations_unpartitioned_pkey;
+DROP INDEX IF EXISTS idx_operations_customer_created_at;
+DROP INDEX IF EXISTS idx_operations_customer_ledger_seq;
+
+CREATE TABLE operations (
+    operation_id bigint                   NOT NULL DEFAULT nextval('operations_seq'),
+    amount       numeric(38, 2)           NOT NULL,
+    created_at   timestamp with time zone NOT NULL DEFAULT now(),
+    type         varchar(255)             NOT NULL,
+    customer_id  bigint                   NOT NULL REFERENCES customer (id),
+    ledger_seq   bigint                   NOT NULL DEFAULT nextval('ledger_seq'),
+    CONSTRAINT operations_pkey PRIMARY KEY (operation_id, created_at),
+    CONSTRAINT operations_type_check CHECK (type IN ('DEPOSIT', 'WITHDRAWAL'))
+) PARTITION BY RANGE (created_at);
+
+-- Секции от месяца самой старой операции до трёх месяцев вперёд
+SELECT create_operations_partition(month::date)
+FROM generate_series(date_trunc('month', COALESCE((SELECT min(created_at) FROM operations_unpartitioned), now())),
+                     date_trunc('month', now()) + interval '3 months',
+                     interval '1 month') AS month;
+
+INSERT INTO operations (operation_id, amount, created_at, type, customer_id, ledger_seq)
+SELECT operation_id, amount, created_at, type, customer_id, ledger_seq
+FROM operations_unpartitioned;
+
+DROP TABLE operations_unpartitioned;
+
+-- Индексы создаются на каждой секции (и на новых секциях автоматически)
+CREATE INDEX idx_operations_customer_created_at ON operations (customer_id, created_at, operation_id);
+CREATE INDEX idx_operations_customer_ledger_seq ON operations (customer_id, ledger_seq) INCLUDE (type, amount);
+
+ANALYZE operations;
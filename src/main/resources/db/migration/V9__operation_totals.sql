@@ -0,0 +1,98 @@
+-- Итоги операций клиентов по дням и месяцам для сводок за период: сводка читает по строке на период,
+-- а не всю историю. Итоги обновляет триггер на operations при каждой вставке и удалении, поэтому
+-- их поддерживают все пути записи (JPA, перенос из outbox, COPY генератора). Дни и месяцы - по UTC.
+-- Отсоединение секции (OperationPartitions) триггер не вызывает: итоги архивных месяцев сохраняются.
+-- Заполнение итогов по уже записанным операциям - LedgerMaintenance.rebuildTotals
+CREATE TABLE IF NOT EXISTS operation_daily_totals (
+    customer_id bigint         NOT NULL REFERENCES customer (id) ON DELETE CASCADE,
+    day         date           NOT NULL,
+    deposited   numeric(38, 2) NOT NULL,
+    withdrawn   numeric(38, 2) NOT NULL,
+    deposits    bigint         NOT NULL,
+    withdrawals bigint         NOT NULL,
+    CONSTRAINT operation_daily_totals_pkey PRIMARY KEY (customer_id, day)
+);
+
+CREATE TABLE IF NOT EXISTS operation_monthly_totals (
+    customer_id bigint         NOT NULL REFERENCES customer (id) ON DELETE CASCADE,
+    month       date           NOT NULL,
+    deposited   numeric(38, 2) NOT NULL,
+    withdrawn   numeric(38, 2) NOT NULL,
+    deposits    bigint         NOT NULL,
+    withdrawals bigint         NOT NULL,
+    CONSTRAINT operation_monthly_totals_pkey PRIMARY KEY (customer_id, month)
+);
+
+-- Триггер уровня оператора: изменения всего INSERT (пакет Hibernate, перенос outbox, COPY) сворачиваются
+-- по клиентам и дням и применяются одним UPSERT на таблицу. Строки итогов обновляются в порядке ключа,
+-- поэтому параллельные пакеты с общими клиентами не блокируют друг друга взаимно
+CREATE OR REPLACE FUNCTION update_operation_totals() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        WITH changes AS (SELECT customer_id,
+                                (created_at AT TIME ZONE 'UTC')::date AS day,
+                                COALESCE(sum(amount) FILTER (WHERE type = 'DEPOSIT'), 0) AS deposited,
+                                COALESCE(sum(amount) FILTER (WHERE type = 'WITHDRAWAL'), 0) AS withdrawn,
+                                count(*) FILTER (WHERE type = 'DEPOSIT') AS deposits,
+                                count(*) FILTER (WHERE type = 'WITHDRAWAL') AS withdrawals
+                         FROM new_operations
+                         GROUP BY 1, 2),
+             daily AS (INSERT INTO operation_daily_totals AS t
+                 SELECT * FROM changes ORDER BY customer_id, day
+                 ON CONFLICT (customer_id, day) DO UPDATE
+                     SET deposited   = t.deposited + excluded.deposited,
+                         withdrawn   = t.withdrawn + excluded.withdrawn,
+                         deposits    = t.deposits + excluded.deposits,
+                         withdrawals = t.withdrawals + excluded.withdrawals)
+        INSERT INTO operation_monthly_totals AS t
+        SELECT customer_id, date_trunc('month', day)::date, sum(deposited), sum(withdrawn), sum(deposits), sum(withdrawals)
+        FROM changes
+        GROUP BY 1, 2
+        ORDER BY 1, 2
+        ON CONFLICT (customer_id, month) DO UPDATE
+            SET deposited   = t.deposited + excluded.deposited,
+                withdrawn   = t.withdrawn + excluded.withdrawn,
+                deposits    = t.deposits + excluded.deposits,
+                withdrawals = t.withdrawals + excluded.withdrawals;
+    ELSE
+        WITH changes AS (SELECT customer_id,
+                                (created_at AT TIME ZONE 'UTC')::date AS day,
+                                COALESCE(sum(amount) FILTER (WHERE type = 'DEPOSIT'), 0) AS deposited,
+                                COALESCE(sum(amount) FILTER (WHERE type = 'WITHDRAWAL'), 0) AS withdrawn,
+                                count(*) FILTER (WHERE type = 'DEPOSIT') AS deposits,
+                                count(*) FILTER (WHERE type = 'WITHDRAWAL') AS withdrawals
+                         FROM old_operations
+                         GROUP BY 1, 2),
+             daily AS (UPDATE operation_daily_totals t
+                 SET deposited   = t.deposited - c.deposited,
+                     withdrawn   = t.withdrawn - c.withdrawn,
+                     deposits    = t.deposits - c.deposits,
+                     withdrawals = t.withdrawals - c.withdrawals
+                 FROM changes c
+                 WHERE t.customer_id = c.customer_id AND t.day = c.day)
+        UPDATE operation_monthly_totals t
+        SET deposited   = t.deposited - m.deposited,
+            withdrawn   = t.withdrawn - m.withdrawn,
+            deposits    = t.deposits - m.deposits,
+            withdrawals = t.withdrawals - m.withdrawals
+        FROM (SELECT customer_id, date_trunc('month', day)::date AS month, sum(deposited) AS deposited,
+                     sum(withdrawn) AS withdrawn, sum(deposits) AS deposits, sum(withdrawals) AS withdrawals
+              FROM changes
+              GROUP BY 1, 2) m
+        WHERE t.customer_id = m.customer_id AND t.month = m.month;
+    END IF;
+    RETURN NULL;
+END
+$$;
+
+CREATE TRIGGER operations_totals_insert
+    AFTER INSERT ON operations
+    REFERENCING NEW TABLE AS new_operations
+    FOR EACH STATEMENT EXECUTE FUNCTION update_operation_totals();
+
+CREATE TRIGGER operations_totals_delete
+    AFTER DELETE ON operations
+    REFERENCING OLD TABLE AS old_operations
+    FOR EACH STATEMENT EXECUTE FUNCTION update_operation_totals();
@@ -0,0 +1,51 @@
+package com.skillfactory.practice.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    // Тестируем разбор суммы из запроса и обратное форматирование с двумя знаками
+    @Test
+    void parsesAndFormatsTwoDecimalPlaces() {
+        assertEquals(12_345, Money.of("123.45").minorUnits());
+        assertEquals(12_340, Money.of("123.4").minorUnits());
+        assertEquals(12_300, Money.of("123").minorUnits());
+        assertEquals(-5, Money.of("-0.05").minorUnits());
+        assertEquals("123.40", Money.of("123.4").toString());
+        assertEquals("-0.05", Money.ofMinorUnits(-5).toString());
+        assertEquals("1000,50", Money.of("1000.50").toString(','));
+        assertEquals("-92233720368547758.08", Money.ofMinorUnits(Long.MIN_VALUE).toString());
+    }
+
+    // Тестируем отказ при больше чем двух знаках после точки и при неверном формате
+    @Test
+    void rejectsSubKopeckAndMalformedAmounts() {
+        assertThrows(NumberFormatException.class, () -> Money.of("1.005"));
+        assertThrows(NumberFormatException.class, () -> Money.of("1e2"));
+        assertThrows(NumberFormatException.class, () -> Money.of("."));
+        assertThrows(NumberFormatException.class, () -> Money.of(""));
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("1.005")));
+    }
+
+    // Тестируем проверку переполнения при разборе и арифметике
+    @Test
+    void detectsOverflow() {
+        assertThrows(ArithmeticException.class, () -> Money.of("92233720368547758.08"));
+        assertThrows(ArithmeticException.class, () -> Money.ofMinorUnits(Long.MAX_VALUE).plus(Money.of("0.01")));
+        assertThrows(ArithmeticException.class, () -> Money.ofMinorUnits(Long.MIN_VALUE).minus(Money.of("0.01")));
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("1E+30")));
+    }
+
+    // Тестируем преобразование в numeric(38,2) и обратно
+    @Test
+    void convertsToDatabaseColumn() {
+        MoneyConverter converter = new MoneyConverter();
+        assertEquals(new BigDecimal("100.50"), converter.convertToDatabaseColumn(Money.of("100.5")));
+        assertEquals(Money.of("100.50"), converter.convertToEntityAttribute(new BigDecimal("100.50")));
+        assertNull(converter.convertToEntityAttribute(null));
+    }
+}
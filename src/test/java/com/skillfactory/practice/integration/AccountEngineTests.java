@@ -0,0 +1,383 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.repository.IdempotencyKeyRepository;
+import com.skillfactory.practice.service.AccountEngine;
+import com.skillfactory.practice.service.AccountJournal;
+import com.skillfactory.practice.service.CustomerService;
+import com.skillfactory.practice.service.IdempotencyService;
+import com.skillfactory.practice.service.LedgerService;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Движок счетов в памяти на реальной БД: операции через CustomerService, фоновая запись в БД,
+// переводы между шардами под нагрузкой и восстановление несохранённого журнала при запуске
+@SpringBootTest(properties = {
+        "app.engine.enabled=true",
+        "app.engine.shards=4",
+        "app.engine.journal-dir=target/engine-journal-tests",
+        "app.engine.segment-size=16KB",
+        "app.engine.persist-batch-size=100"})
+class AccountEngineTests {
+
+    // Номер шарда для журнала прошлого запуска: такого шарда у движка теста нет
+    private static final int RECOVERED_SHARD = 100;
+
+    @Autowired
+    private AccountEngine accountEngine;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    private final List<Long> customerIds = new ArrayList<>();
+    private final List<String> idempotencyKeys = new ArrayList<>();
+
+    @AfterEach
+    void cleanup() throws InterruptedException {
+        assertTrue(accountEngine.awaitPersisted(Duration.ofSeconds(30)));
+        Long[] ids = customerIds.toArray(Long[]::new);
+        jdbcTemplate.update("delete from operations where customer_id = any(?)", (Object) ids);
+        jdbcTemplate.update("delete from customer where id = any(?)", (Object) ids);
+        jdbcTemplate.update("delete from engine_checkpoints where shard = ?", RECOVERED_SHARD);
+        idempotencyKeyRepository.deleteAllById(idempotencyKeys);
+    }
+
+    // Тестируем пополнение, снятие и переводы внутри шарда и между шардами: балансы сразу в памяти,
+    // после фоновой записи - в customer и operations, без расхождений с журналом
+    @Test
+    void moneyOperationsGoThroughEngine() throws InterruptedException {
+        // Шард клиента - остаток от деления ID на количество шардов
+        long first = createCustomer("100.00");
+        long second = 0;
+        long sameShard = 0;
+        while (second == 0 || sameShard == 0) {
+            long customerId = createCustomer("100.00");
+            if (customerId % 4 == first % 4) {
+                sameShard = sameShard == 0 ? customerId : sameShard;
+            } else {
+                second = second == 0 ? customerId : second;
+            }
+        }
+
+        customerService.putMoney(first, Money.of("50.00"));
+        assertFalse(customerService.takeMoney(first, Money.of("1000.00")));
+        assertTrue(customerService.takeMoney(first, Money.of("30.00")));
+        assertTrue(customerService.transferMoney(first, sameShard, Money.of("20.00")));
+        assertTrue(customerService.transferMoney(first, second, Money.of("40.00")));
+        assertFalse(customerService.transferMoney(first, second, Money.of("1000.00")));
+        assertFalse(customerService.transferMoney(first, Long.MAX_VALUE, Money.of("1.00")));
+        assertFalse(customerService.takeMoney(Long.MAX_VALUE, Money.of("1.00")));
+
+        assertBalance(first, "60.00");
+        assertBalance(second, "140.00");
+        assertBalance(sameShard, "120.00");
+        assertEquals(Optional.empty(), customerService.getBalance(Long.MAX_VALUE));
+
+        assertTrue(accountEngine.awaitPersisted(Duration.ofSeconds(10)));
+        assertDatabaseBalance(first, "60.00");
+        assertDatabaseBalance(second, "140.00");
+        assertDatabaseBalance(sameShard, "120.00");
+        assertEquals(5, countOperations(first));
+        assertEquals(2, countOperations(second));
+        assertTrue(ledgerService.findMismatches(first, Math.max(second, sameShard)).isEmpty());
+    }
+
+    // Тестируем, что операции движка не занимают соединение из пула: все соединения заняты,
+    // а пополнение, снятие, перевод и баланс загруженных клиентов выполняются без ожидания пула
+    @Test
+    void engineOperationsDoNotHoldPoolConnections() throws Exception {
+        long first = createCustomer("100.00");
+        long second = createCustomer("0.00");
+        assertBalance(second, "0.00");
+
+        List<Connection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize(); i++) {
+                held.add(dataSource.getConnection());
+            }
+            assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+                customerService.putMoney(first, Money.of("10.00"));
+                assertTrue(customerService.takeMoney(first, Money.of("5.00")));
+                assertTrue(customerService.transferMoney(first, second, Money.of("25.00")));
+                assertBalance(first, "80.00");
+                assertBalance(second, "25.00");
+            });
+        } finally {
+            for (Connection connection : held) {
+                connection.close();
+            }
+        }
+    }
+
+    // Тестируем идемпотентность в режиме движка: параллельные запросы с одним ключом двигают деньги один раз,
+    // остальные получают сохранённый ответ или 409, пока он не сохранён. Повтор без кэша (другой узел) -
+    // сохранённый ответ из БД, а ключ операции, завершившейся исключением, остаётся занятым
+    @Test
+    void idempotencyKeyMovesMoneyOnce() throws Exception {
+        long customerId = createCustomer("0.00");
+        assertBalance(customerId, "0.00");
+        String key = idempotencyKey();
+
+        AtomicInteger executions = new AtomicInteger();
+        Supplier<ResponseEntity<String>> deposit = () -> {
+            customerService.putMoney(customerId, Money.of("10.00"));
+            return new ResponseEntity<>("Пополнение " + executions.incrementAndGet(), HttpStatus.OK);
+        };
+        List<ResponseEntity<String>> responses = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<ResponseEntity<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> idempotencyService.execute(key, "putmoney", deposit)));
+            }
+            for (Future<ResponseEntity<String>> future : futures) {
+                responses.add(future.get());
+            }
+        }
+
+        assertEquals(1, executions.get());
+        assertBalance(customerId, "10.00");
+        assertEquals(1, responses.stream()
+                .filter(response -> response.getStatusCode() == HttpStatus.OK
+                        && response.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER) == null)
+                .count());
+        for (ResponseEntity<String> response : responses) {
+            assertTrue(response.getStatusCode() == HttpStatus.CONFLICT || "Пополнение 1".equals(response.getBody()),
+                    response::toString);
+        }
+
+        IdempotencyService restarted = new IdempotencyService(idempotencyKeyRepository, transactionManager,
+                accountEngine, Duration.ofHours(1), 100, new SimpleMeterRegistry());
+        ResponseEntity<String> replay = restarted.execute(key, "putmoney", deposit);
+        assertEquals("Пополнение 1", replay.getBody());
+        assertEquals("true", replay.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+
+        String failedKey = idempotencyKey();
+        assertThrows(IllegalStateException.class, () -> idempotencyService.execute(failedKey, "putmoney", () -> {
+            customerService.putMoney(customerId, Money.of("10.00"));
+            throw new IllegalStateException("Сбой после операции");
+        }));
+        assertEquals(HttpStatus.CONFLICT, idempotencyService.execute(failedKey, "putmoney", deposit).getStatusCode());
+        assertEquals(1, executions.get());
+        assertBalance(customerId, "20.00");
+    }
+
+    // Тестируем, что при параллельных встречных переводах между шардами деньги не появляются и не исчезают
+    // ни в памяти, ни в БД после фоновой записи
+    @Test
+    void concurrentTransfersPreserveTotal() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            createCustomer("1000.00");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 1000; i++) {
+                    customerService.transferMoney(customerIds.get(random.nextInt(10)),
+                            customerIds.get(random.nextInt(10)), Money.ofMinorUnits(random.nextInt(1, 300) * 100L));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        Money total = Money.ZERO;
+        for (Long customerId : customerIds) {
+            Money balance = customerService.getBalance(customerId).orElseThrow();
+            assertTrue(balance.signum() >= 0);
+            total = total.plus(balance);
+        }
+        assertEquals(Money.of("10000.00"), total);
+
+        assertTrue(accountEngine.awaitPersisted(Duration.ofSeconds(30)));
+        for (Long customerId : customerIds) {
+            assertDatabaseBalance(customerId, customerService.getBalance(customerId).orElseThrow().toString());
+        }
+        assertTrue(ledgerService.findMismatches(customerIds.get(0), customerIds.get(9)).isEmpty());
+    }
+
+    // Тестируем восстановление после сбоя: операции, подтверждённые журналом, но не записанные в БД,
+    // дописываются при запуске ровно один раз. Уже сохранённые записи и недописанный хвост пропускаются
+    @Test
+    void startupAppliesUnpersistedJournal(@TempDir Path journalDir) throws Exception {
+        long payer = createCustomer("100.00");
+        long payee = createCustomer("0.00");
+        assertTrue(accountEngine.awaitPersisted(Duration.ofSeconds(10)));
+
+        Long saved = jdbcTemplate.queryForList("select journal_seq from engine_checkpoints where shard = ?",
+                Long.class, RECOVERED_SHARD).stream().findFirst().orElse(0L);
+        long checkpoint = saved + 1;
+        jdbcTemplate.update("insert into engine_checkpoints (shard, journal_seq) values (?, ?)"
+                + " on conflict (shard) do update set journal_seq = excluded.journal_seq", RECOVERED_SHARD, checkpoint);
+
+        // Сегменты по две записи: журнал прошлого запуска из нескольких сегментов
+        Path shardDir = journalDir.resolve("shard-" + RECOVERED_SHARD);
+        long now = System.currentTimeMillis() * 1000;
+        try (AccountJournal journal = new AccountJournal(shardDir, checkpoint, 2 * AccountJournal.RECORD_SIZE, 4)) {
+            journal.append(AccountJournal.Kind.DEPOSIT, payer, 0, 1000_00, now);
+            journal.append(AccountJournal.Kind.DEPOSIT, payer, 0, 25_00, now);
+            journal.commit();
+            journal.append(AccountJournal.Kind.TRANSFER, payer, payee, 40_00, now);
+            journal.commit();
+            journal.append(AccountJournal.Kind.WITHDRAWAL, payer, 0, 5_00, now);
+            journal.commit();
+        }
+        try (Stream<Path> segments = Files.list(shardDir)) {
+            assertEquals(3, segments.count());
+        }
+        // Запись, которую сбой прервал на середине
+        try (Stream<Path> segments = Files.list(shardDir)) {
+            Path last = segments.sorted().reduce((a, b) -> b).orElseThrow();
+            Files.write(last, new byte[AccountJournal.RECORD_SIZE / 2], StandardOpenOption.APPEND);
+        }
+
+        AccountEngine restarted = new AccountEngine(true, 1, journalDir, DataSize.ofKilobytes(16), 16, 100, 1000,
+                Duration.ofSeconds(10), jdbcTemplate, transactionManager, new SimpleMeterRegistry());
+        restarted.start();
+        restarted.stop();
+
+        assertDatabaseBalance(payer, "80.00");
+        assertDatabaseBalance(payee, "40.00");
+        assertEquals(4, countOperations(payer));
+        assertEquals(1, countOperations(payee));
+        assertEquals(checkpoint + 3, jdbcTemplate.queryForObject(
+                "select journal_seq from engine_checkpoints where shard = ?", Long.class, RECOVERED_SHARD));
+        try (Stream<Path> segments = Files.list(shardDir)) {
+            assertEquals(0, segments.count());
+        }
+    }
+
+    // Тестируем, что операции клиента с нулевым итоговым изменением баланса в пакете записываются под блокировкой
+    // его строки: пока строка заблокирована другой транзакцией, запись пакета ждёт. Блокировка - как у UPDATE
+    // баланса (for no key update), с ней не конфликтует проверка внешнего ключа при вставке операций
+    @Test
+    void netZeroBatchWaitsForCustomerRowLock(@TempDir Path journalDir) throws Exception {
+        long customerId = createCustomer("100.00");
+        assertTrue(accountEngine.awaitPersisted(Duration.ofSeconds(10)));
+
+        Long saved = jdbcTemplate.queryForList("select journal_seq from engine_checkpoints where shard = ?",
+                Long.class, RECOVERED_SHARD).stream().findFirst().orElse(0L);
+        long now = System.currentTimeMillis() * 1000;
+        try (AccountJournal journal = new AccountJournal(journalDir.resolve("shard-" + RECOVERED_SHARD), saved + 1,
+                DataSize.ofKilobytes(16).toBytes(), 4)) {
+            journal.append(AccountJournal.Kind.DEPOSIT, customerId, 0, 10_00, now);
+            journal.append(AccountJournal.Kind.WITHDRAWAL, customerId, 0, 10_00, now);
+            journal.commit();
+        }
+
+        AccountEngine restarted = new AccountEngine(true, 1, journalDir, DataSize.ofKilobytes(16), 16, 100, 1000,
+                Duration.ofSeconds(10), jdbcTemplate, transactionManager, new SimpleMeterRegistry());
+        try (ExecutorService executor = Executors.newSingleThreadExecutor();
+             Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "select id from customer where id = ? for no key update")) {
+                statement.setLong(1, customerId);
+                statement.executeQuery().close();
+            }
+
+            Future<?> recovery = executor.submit(restarted::start);
+            assertThrows(TimeoutException.class, () -> recovery.get(500, TimeUnit.MILLISECONDS));
+            assertEquals(1, countOperations(customerId));
+
+            connection.rollback();
+            recovery.get(10, TimeUnit.SECONDS);
+        } finally {
+            restarted.stop();
+        }
+
+        assertEquals(3, countOperations(customerId));
+        assertDatabaseBalance(customerId, "100.00");
+    }
+
+    // Начальный баланс - пополнением через движок: баланс сходится с журналом операций
+    private long createCustomer(String balance) {
+        long customerId = customerRepository.save(new Customer(Money.ZERO)).getId();
+        customerIds.add(customerId);
+        if (Money.of(balance).signum() > 0) {
+            customerService.putMoney(customerId, Money.of(balance));
+        }
+        return customerId;
+    }
+
+    private String idempotencyKey() {
+        String key = UUID.randomUUID().toString();
+        idempotencyKeys.add(key);
+        return key;
+    }
+
+    private void assertBalance(long customerId, String expected) {
+        assertEquals(Money.of(expected), customerService.getBalance(customerId).orElseThrow());
+    }
+
+    private void assertDatabaseBalance(long customerId, String expected) {
+        BigDecimal balance = jdbcTemplate.queryForObject("select balance from customer where id = ?",
+                BigDecimal.class, customerId);
+        assertEquals(0, new BigDecimal(expected).compareTo(balance), () -> customerId + ": " + balance);
+    }
+
+    private long countOperations(long customerId) {
+        return jdbcTemplate.queryForObject("select count(*) from operations where customer_id = ?", Long.class,
+                customerId);
+    }
+}
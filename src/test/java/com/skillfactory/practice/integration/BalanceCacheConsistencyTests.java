@@ -0,0 +1,110 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.service.CustomerService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Проверяем, что кэш балансов не отдаёт значение старше последней зафиксированной записи
+@SpringBootTest
+class BalanceCacheConsistencyTests {
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 8;
+    private static final int DEPOSITS_PER_WRITER = 250;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Long customerId;
+
+    @BeforeEach
+    void createCustomer() {
+        customerId = customerRepository.save(new Customer(Money.ZERO)).getId();
+    }
+
+    @AfterEach
+    void deleteCustomer() {
+        jdbcTemplate.update("delete from operations where customer_id = ?", customerId);
+        customerRepository.deleteById(customerId);
+    }
+
+    // Пополнения по 1 руб.: после возврата из putMoney баланс не может быть меньше числа завершённых пополнений
+    @Test
+    void readsNeverSeeBalanceOlderThanLastCommittedWrite() throws Exception {
+        double hitsBefore = cacheHits();
+        AtomicInteger committedDeposits = new AtomicInteger();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+        List<Future<?>> writers = new ArrayList<>();
+        List<Future<Integer>> readers = new ArrayList<>();
+
+        for (int i = 0; i < WRITERS; i++) {
+            writers.add(executor.submit(() -> {
+                for (int j = 0; j < DEPOSITS_PER_WRITER; j++) {
+                    customerService.putMoney(customerId, Money.of("1.00"));
+                    committedDeposits.incrementAndGet();
+                }
+            }));
+        }
+        for (int i = 0; i < READERS; i++) {
+            readers.add(executor.submit(() -> {
+                int staleReads = 0;
+                while (writing.get()) {
+                    int committed = committedDeposits.get();
+                    Money balance = customerService.getBalance(customerId).orElseThrow();
+                    if (balance.isLessThan(Money.ofMinorUnits(committed * 100L))) {
+                        staleReads++;
+                    }
+                }
+                return staleReads;
+            }));
+        }
+
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        writing.set(false);
+        int staleReads = 0;
+        for (Future<Integer> reader : readers) {
+            staleReads += reader.get();
+        }
+        executor.shutdown();
+
+        assertEquals(0, staleReads);
+        assertEquals(Money.ofMinorUnits(WRITERS * DEPOSITS_PER_WRITER * 100L),
+                customerService.getBalance(customerId).orElseThrow());
+        assertTrue(cacheHits() > hitsBefore, "Чтения должны обслуживаться кэшем");
+    }
+
+    private double cacheHits() {
+        return meterRegistry.get("cache.gets").tag("cache", "balance").tag("result", "hit")
+                .functionCounter().count();
+    }
+}
@@ -0,0 +1,138 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.repository.IdempotencyKeyRepository;
+import com.skillfactory.practice.repository.OperationRepository;
+import com.skillfactory.practice.service.AccountEngine;
+import com.skillfactory.practice.service.CustomerService;
+import com.skillfactory.practice.service.IdempotencyService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Идемпотентность на реальной БД: цена нового ключа и повтор, который не застал ключ в кэше
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.skillfactory.practice.integration.RecordingStatementInspector")
+class IdempotencyTests {
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private OperationRepository operationRepository;
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private AccountEngine accountEngine;
+
+    private Long customerId;
+    private String key;
+
+    @BeforeEach
+    void setup() {
+        customerId = customerRepository.save(new Customer(Money.of("100.00"))).getId();
+        key = UUID.randomUUID().toString();
+        RecordingStatementInspector.clear();
+    }
+
+    @AfterEach
+    void cleanup() {
+        idempotencyKeyRepository.deleteById(key);
+        operationRepository.deleteAll(operationRepository.findAllByCustomer_Id(customerId));
+        customerRepository.deleteById(customerId);
+    }
+
+    // Новый ключ добавляет к пополнению INSERT ключа до операции и UPDATE ответа после неё
+    @Test
+    void newKeyIsClaimedBeforeOperation() throws Exception {
+        idempotencyService.execute(key, "putmoney", () -> {
+            customerService.putMoney(customerId, Money.of("50.00"));
+            return new ResponseEntity<>("ok", HttpStatus.OK);
+        });
+
+        List<String> statements = RecordingStatementInspector.statementsWithoutSequenceCalls();
+        assertEquals(4, statements.size(), statements::toString);
+        assertTrue(statements.get(0).startsWith("insert into idempotency_keys"), statements.get(0));
+        assertTrue(statements.get(1).startsWith("update customer"), statements.get(1));
+        // Вставка операции отложена до сброса сессии при фиксации, UPDATE ключа выполняется сразу
+        assertTrue(statements.get(2).startsWith("update idempotency_keys"), statements.get(2));
+        assertTrue(statements.get(3).startsWith("insert into operations"), statements.get(3));
+    }
+
+    // Повтор без ключа в кэше (другой узел или рестарт): операция не вызывается,
+    // возвращается сохранённый ответ
+    @Test
+    void replayWithoutCachedKeyDoesNotRunOperation() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        idempotencyService.execute(key, "putmoney", () -> {
+            customerService.putMoney(customerId, Money.of("50.00"));
+            return new ResponseEntity<>("Пополнение " + executions.incrementAndGet(), HttpStatus.OK);
+        });
+
+        IdempotencyService restarted = new IdempotencyService(idempotencyKeyRepository, transactionManager, accountEngine,
+                Duration.ofHours(1), 100, new SimpleMeterRegistry());
+        ResponseEntity<String> replay = restarted.execute(key, "putmoney", () -> {
+            customerService.putMoney(customerId, Money.of("50.00"));
+            return new ResponseEntity<>("Пополнение " + executions.incrementAndGet(), HttpStatus.OK);
+        });
+
+        assertEquals(HttpStatus.OK, replay.getStatusCode());
+        assertEquals("Пополнение 1", replay.getBody());
+        assertEquals(1, executions.get());
+        assertEquals("true", replay.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(Money.of("150.00"), customerService.getBalance(customerId).orElseThrow());
+        assertEquals(1, operationRepository.findAllByCustomer_Id(customerId).size());
+    }
+
+    // Фиксация не удалась: ответ не попадает в кэш, повтор с тем же ключом выполняет операцию заново
+    @Test
+    void failedCommitIsNotReplayed() throws Exception {
+        assertThrows(IllegalStateException.class, () -> idempotencyService.execute(key, "putmoney", () -> {
+            customerService.putMoney(customerId, Money.of("50.00"));
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    throw new IllegalStateException("Сбой фиксации");
+                }
+            });
+            return new ResponseEntity<>("ok", HttpStatus.OK);
+        }));
+        assertEquals(Money.of("100.00"), customerService.getBalance(customerId).orElseThrow());
+
+        ResponseEntity<String> retry = idempotencyService.execute(key, "putmoney", () -> {
+            customerService.putMoney(customerId, Money.of("50.00"));
+            return new ResponseEntity<>("ok", HttpStatus.OK);
+        });
+
+        assertNull(retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(Money.of("150.00"), customerService.getBalance(customerId).orElseThrow());
+    }
+}
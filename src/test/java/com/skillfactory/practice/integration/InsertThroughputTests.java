@@ -0,0 +1,96 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.entity.Operation;
+import com.skillfactory.practice.enums.OperationType;
+import com.skillfactory.practice.repository.CustomerRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Скорость вставки операций: по одному INSERT на строку (как при IDENTITY) и пакетами по 50
+@SpringBootTest
+class InsertThroughputTests {
+
+    private static final int OPERATIONS = 20_000;
+
+    private static final Logger log = LoggerFactory.getLogger(InsertThroughputTests.class);
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long customerId;
+
+    @BeforeEach
+    void createCustomer() {
+        customerId = customerRepository.save(new Customer(Money.of("0.00"))).getId();
+    }
+
+    @AfterEach
+    void deleteCustomer() {
+        jdbcTemplate.update("delete from operations where customer_id = ?", customerId);
+        customerRepository.deleteById(customerId);
+    }
+
+    @Test
+    void batchedInsertsAreFasterThanSingleRowInserts() {
+        // Прогрев, чтобы в замеры не попала загрузка классов и подготовка запросов
+        insertOperations(1, 1_000);
+        insertOperations(50, 1_000);
+
+        long singleRowNanos = insertOperations(1, OPERATIONS);
+        long batchedNanos = insertOperations(50, OPERATIONS);
+
+        log.info("По одной строке: {} операций/с", OPERATIONS * 1_000_000_000L / singleRowNanos);
+        log.info("Пакетами по 50: {} операций/с", OPERATIONS * 1_000_000_000L / batchedNanos);
+
+        Integer saved = jdbcTemplate.queryForObject(
+                "select count(*) from operations where customer_id = ?", Integer.class, customerId);
+        assertEquals(2 * OPERATIONS + 2_000, saved);
+        assertTrue(batchedNanos < singleRowNanos);
+    }
+
+    // Время вставки count операций одной транзакцией при заданном размере пакета JDBC
+    private long insertOperations(int batchSize, int count) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+            Customer customer = entityManager.getReference(Customer.class, customerId);
+            long start = System.nanoTime();
+            entityManager.getTransaction().begin();
+            for (int i = 0; i < count; i++) {
+                Operation operation = new Operation();
+                operation.setCustomer(customer);
+                operation.setType(OperationType.DEPOSIT);
+                operation.setAmount(Money.of("1.00"));
+                entityManager.persist(operation);
+                if ((i + 1) % 1_000 == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                    customer = entityManager.getReference(Customer.class, customerId);
+                }
+            }
+            entityManager.getTransaction().commit();
+            return System.nanoTime() - start;
+        } finally {
+            entityManager.close();
+        }
+    }
+}
@@ -1,22 +1,41 @@
 package com.skillfactory.practice.integration;
 
-import com.skillfactory.practice.entity.Operation;
+import com.skillfactory.practice.config.ApiJsonConfig;
+import com.skillfactory.practice.dto.OperationCursor;
+import com.skillfactory.practice.dto.OperationExportRow;
+import com.skillfactory.practice.dto.OperationHistory;
+import com.skillfactory.practice.dto.OperationPage;
+import com.skillfactory.practice.dto.OperationView;
+import com.skillfactory.practice.dto.TransferRequest;
+import com.skillfactory.practice.dto.TransferResult;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.enums.OperationType;
+import com.skillfactory.practice.enums.TransferStatus;
 import com.skillfactory.practice.service.CustomerService;
+import org.apache.coyote.BadRequestException;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.json.JsonCompareMode;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -35,14 +54,14 @@ class IntegrationTests {
 
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
 
-    // Тестируем endpoint возврата баланса для клиента с id = 1
+    // Тестируем endpoint возврата баланса для клиента с id = 1 в прежнем текстовом формате
     @Test
     void testReturnBalance() throws Exception {
         Long customerId = 1L;
-        BigDecimal balance = new BigDecimal("1000.50");
+        Money balance = Money.of("1000.50");
         when(customerService.getBalance(customerId)).thenReturn(Optional.of(balance));
 
-        mockMvc.perform(get("/api/customers/{customersId}/balance", customerId))
+        mockMvc.perform(get("/api/customers/{customersId}/balance", customerId).accept(MediaType.TEXT_PLAIN))
                 .andExpect(status().isOk())
                 .andExpect(content().string(containsString("Баланс клиента 1: 1000,50 руб.")));
 
@@ -55,18 +74,40 @@ class IntegrationTests {
         Long customerId = 999L;
         when(customerService.getBalance(customerId)).thenReturn(Optional.empty());
 
-        mockMvc.perform(get("/api/customers/{customersId}/balance", customerId))
+        mockMvc.perform(get("/api/customers/{customersId}/balance", customerId).accept(MediaType.TEXT_PLAIN))
                 .andExpect(status().isNotFound())
                 .andExpect(content().string("Клиент не найден"));
 
-        verify(customerService).getBalance(customerId);
+        mockMvc.perform(get("/api/customers/{customersId}/balance", customerId))
+                .andExpect(status().isNotFound())
+                .andExpect(content().string(""));
+
+        verify(customerService, times(2)).getBalance(customerId);
+    }
+
+    // Тестируем баланс в JSON: по умолчанию (Accept: */*) и с версионированным типом
+    @Test
+    void testReturnBalanceJson() throws Exception {
+        Long customerId = 1L;
+        when(customerService.getBalance(customerId)).thenReturn(Optional.of(Money.of("1000.50")));
+
+        mockMvc.perform(get("/api/customers/{customersId}/balance", customerId).accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json("{\"customerId\":1,\"balance\":1000.50,\"currency\":\"RUB\"}",
+                        JsonCompareMode.STRICT));
+
+        mockMvc.perform(get("/api/customers/{customersId}/balance", customerId).accept(ApiJsonConfig.V1_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(ApiJsonConfig.V1_JSON))
+                .andExpect(content().string("{\"customerId\":1,\"balance\":1000.50,\"currency\":\"RUB\"}"));
     }
 
 
     @Test
     void testPutMoney() throws Exception {
         Long customerId = 1L;
-        BigDecimal amount = new BigDecimal("500.00");
+        Money amount = Money.of("500.00");
 
         mockMvc.perform(post("/api/customers/{customersId}/putmoney", customerId)
                         .param("amount", amount.toString()))
@@ -80,7 +121,7 @@ class IntegrationTests {
     @Test
     void testTakeMoneyWhenSufficientFunds() throws Exception {
         Long customerId = 1L;
-        BigDecimal amount = new BigDecimal("200.00");
+        Money amount = Money.of("200.00");
         when(customerService.takeMoney(customerId, amount)).thenReturn(true);
 
         mockMvc.perform(post("/api/customers/{customersId}/takemoney", customerId)
@@ -95,7 +136,7 @@ class IntegrationTests {
     @Test
     void testTakeMoneyWhenInsufficientFunds() throws Exception {
         Long customerId = 1L;
-        BigDecimal amount = new BigDecimal("2000.00");
+        Money amount = Money.of("2000.00");
         when(customerService.takeMoney(customerId, amount)).thenReturn(false);
 
         mockMvc.perform(post("/api/customers/{customersId}/takemoney", customerId)
@@ -110,15 +151,95 @@ class IntegrationTests {
     @Test
     void testReturnAllOperations() throws Exception {
         Long customerId = 1L;
-        Operation operation = new Operation(/* инициализация операции */);
-        when(customerService.getOperationList(eq(customerId), isNull(), isNull()))
-                .thenReturn(List.of(operation));
+        OperationView operation = new OperationView(10L, OperationType.DEPOSIT, Money.of("500.00"),
+                LocalDateTime.parse("2023-01-01T10:15:30", formatter));
+        stubHistory(customerId, null, null, false, List.of(operation));
 
         mockMvc.perform(get("/api/customers/{customersId}/operations", customerId))
                 .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-a-json\""))
+                .andExpect(header().string("Cache-Control", "no-cache, private"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].operationId").value(10))
+                .andExpect(jsonPath("$[0].customer").doesNotExist())
+                .andExpect(header().doesNotExist("X-Result-Truncated"));
+
+        verify(customerService).getOperationHistory(eq(customerId), isNull(), isNull(), any());
+    }
+
+    // Тестируем историю на пределе MAX_OPERATION_LIST: ответ помечен как обрезанный,
+    // продолжение - страница по курсору после последней операции
+    @Test
+    void testTruncatedOperationsPointToCursor() throws Exception {
+        Long customerId = 1L;
+        OperationView operation = new OperationView(10L, OperationType.DEPOSIT, Money.of("500.00"),
+                LocalDateTime.parse("2023-01-01T10:15:30", formatter));
+        stubHistory(customerId, null, null, false, Collections.nCopies(CustomerService.MAX_OPERATION_LIST, operation));
+
+        mockMvc.perform(get("/api/customers/{customersId}/operations", customerId))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Result-Truncated", "true"))
+                .andExpect(header().string("Link",
+                        "</api/customers/1/operations?after=2023-01-01T10:15:30,10&limit=1000>; rel=\"next\""))
+                .andExpect(jsonPath("$", hasSize(CustomerService.MAX_OPERATION_LIST)));
+    }
+
+    // Тестируем повтор запроса истории с If-None-Match: тот же ETag - 304 без тела, ETag другого
+    // представления или старой версии - полный ответ
+    @Test
+    void testOperationsNotModified() throws Exception {
+        Long customerId = 1L;
+        OperationView operation = new OperationView(10L, OperationType.DEPOSIT, Money.of("500.00"),
+                LocalDateTime.parse("2023-01-01T10:15:30", formatter));
+        stubHistory(customerId, null, null, false, List.of(operation));
+
+        mockMvc.perform(get("/api/customers/{customersId}/operations", customerId)
+                        .header("If-None-Match", "\"0-b-json\", \"1-a-json\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"1-a-json\""))
+                .andExpect(header().string("Cache-Control", "no-cache, private"))
+                .andExpect(content().string(""));
+
+        mockMvc.perform(get("/api/customers/{customersId}/operations", customerId).accept(ApiJsonConfig.V1_JSON)
+                        .header("If-None-Match", "\"1-a-json\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-a-v1\""))
+                .andExpect(content().string("[[10,\"DEPOSIT\",500.00,\"2023-01-01T10:15:30\"]]"));
+
+        mockMvc.perform(get("/api/customers/{customersId}/operations", customerId)
+                        .header("If-None-Match", "\"0-b-json\""))
+                .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(1)));
+    }
+
+    // Тестируем компактный формат операций v1: каждая операция - массив [operationId, type, amount, createdAt],
+    // время - как в обычном JSON
+    @Test
+    void testReturnOperationsCompact() throws Exception {
+        Long customerId = 1L;
+        OperationView operation = new OperationView(10L, OperationType.DEPOSIT, Money.of("500.00"),
+                LocalDateTime.parse("2023-01-01T10:15:30", formatter));
+        OperationView second = new OperationView(11L, OperationType.WITHDRAWAL, Money.of("-0.05"),
+                LocalDateTime.parse("2023-01-02T09:05:00.0400300"));
+        stubHistory(customerId, null, null, false, List.of(operation, second));
+        when(customerService.getOperationPage(eq(customerId), isNull(), eq(1)))
+                .thenReturn(new OperationPage(List.of(operation), "2023-01-01T10:15:30,10"));
+
+        mockMvc.perform(get("/api/customers/{customersId}/operations", customerId).accept(ApiJsonConfig.V1_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(ApiJsonConfig.V1_JSON))
+                .andExpect(content().string("[[10,\"DEPOSIT\",500.00,\"2023-01-01T10:15:30\"],"
+                        + "[11,\"WITHDRAWAL\",-0.05,\"2023-01-02T09:05:00.04003\"]]"));
+
+        mockMvc.perform(get("/api/customers/{customersId}/operations", customerId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[1].createdAt").value("2023-01-02T09:05:00.04003"));
 
-        verify(customerService).getOperationList(eq(customerId), isNull(), isNull());
+        mockMvc.perform(get("/api/customers/{customersId}/operations", customerId).param("limit", "1")
+                        .accept(ApiJsonConfig.V1_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"items\":[[10,\"DEPOSIT\",500.00,\"2023-01-01T10:15:30\"]],"
+                        + "\"nextCursor\":\"2023-01-01T10:15:30,10\"}"));
     }
 
     // Тестируем endpoint получения всех операций для клиента с id = 1 с учетом дат
@@ -130,17 +251,115 @@ class IntegrationTests {
         LocalDateTime fromDate = LocalDateTime.parse(from, formatter);
         LocalDateTime toDate = LocalDateTime.parse(to, formatter);
 
-        Operation operation = new Operation();
-        when(customerService.getOperationList(eq(customerId), eq(fromDate), eq(toDate)))
-                .thenReturn(List.of(operation));
+        OperationView operation = new OperationView(10L, OperationType.DEPOSIT, Money.of("500.00"), fromDate);
+        stubHistory(customerId, fromDate, toDate, true, List.of(operation));
 
         mockMvc.perform(get("/api/customers/{customersId}/operations", customerId)
                         .param("from", from)
                         .param("to", to))
                 .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=300, private"))
                 .andExpect(jsonPath("$", hasSize(1)));
 
-        verify(customerService).getOperationList(eq(customerId), eq(fromDate), eq(toDate));
+        verify(customerService).getOperationHistory(eq(customerId), eq(fromDate), eq(toDate), any());
+    }
+
+    // Тестируем постраничное получение операций по курсору
+    @Test
+    void testReturnOperationPage() throws Exception {
+        Long customerId = 1L;
+        String after = "2023-01-01T00:00:00,10";
+        OperationView operation = new OperationView(11L, OperationType.WITHDRAWAL, Money.of("100.00"),
+                LocalDateTime.parse("2023-01-02T10:15:30", formatter));
+        OperationPage page = new OperationPage(List.of(operation), "2023-01-02T10:15:30,11");
+        when(customerService.getOperationPage(customerId, OperationCursor.parse(after), 1)).thenReturn(page);
+
+        mockMvc.perform(get("/api/customers/{customersId}/operations", customerId)
+                        .param("after", after)
+                        .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.nextCursor").value("2023-01-02T10:15:30,11"));
+
+        verify(customerService).getOperationPage(customerId, OperationCursor.parse(after), 1);
+    }
+
+    // Тестируем отказ при неверном формате курсора
+    @Test
+    void testRejectInvalidCursor() {
+        assertThrows(BadRequestException.class, () ->
+                mockMvc.perform(get("/api/customers/{customersId}/operations", 1L)
+                        .param("after", "not-a-cursor")));
+
+        verifyNoInteractions(customerService);
+    }
+
+    // Тестируем потоковую выгрузку истории клиента в CSV
+    @Test
+    void testExportOperationsAsCsv() throws Exception {
+        Long customerId = 1L;
+        OperationExportRow row = new OperationExportRow(10L, customerId, OperationType.DEPOSIT,
+                Money.of("500.00"), LocalDateTime.parse("2023-01-01T10:15:30", formatter));
+        doAnswer(invocation -> {
+            Consumer<OperationExportRow> consumer = invocation.getArgument(1);
+            consumer.accept(row);
+            return null;
+        }).when(customerService).exportOperations(eq(customerId), any());
+
+        MvcResult result = mockMvc.perform(get("/api/customers/{customersId}/operations/export", customerId)
+                        .param("format", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv;charset=UTF-8"))
+                .andExpect(content().string("operation_id,customer_id,type,amount,created_at\n"
+                        + "10,1,DEPOSIT,500.00,2023-01-01T10:15:30\n"));
+    }
+
+    // Тестируем пакетный перевод: результат возвращается по каждому переводу
+    @Test
+    void testTransferBatch() throws Exception {
+        List<TransferRequest> transfers = List.of(
+                new TransferRequest(1L, 2L, Money.of("300.00")),
+                new TransferRequest(2L, 3L, Money.of("5000.00")));
+        when(customerService.applyTransfers(transfers, 0)).thenReturn(List.of(
+                new TransferResult(0, 1L, 2L, Money.of("300.00"), TransferStatus.COMPLETED),
+                new TransferResult(1, 2L, 3L, Money.of("5000.00"), TransferStatus.INSUFFICIENT_FUNDS)));
+
+        mockMvc.perform(post("/api/transfers/batch")
+                        .contentType("application/json")
+                        .content("[{\"senderId\":1,\"recipientId\":2,\"amount\":300.00},"
+                                + "{\"senderId\":2,\"recipientId\":3,\"amount\":5000.00}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].status").value("COMPLETED"))
+                .andExpect(jsonPath("$[1].status").value("INSUFFICIENT_FUNDS"))
+                .andExpect(content().string(containsString("\"amount\":300.00")));
+
+        verify(customerService).applyTransfers(transfers, 0);
+    }
+
+    // Тестируем отказ пакета, в котором сумма с тремя знаками после точки
+    @Test
+    void testTransferBatchRejectsSubKopeckAmount() throws Exception {
+        mockMvc.perform(post("/api/transfers/batch")
+                        .contentType("application/json")
+                        .content("[{\"senderId\":1,\"recipientId\":2,\"amount\":1.005}]"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(customerService);
+    }
+
+    // Тестируем отказ при сумме с тремя знаками после точки
+    @Test
+    void testRejectSubKopeckAmount() {
+        assertThrows(BadRequestException.class, () ->
+                mockMvc.perform(post("/api/customers/{customersId}/putmoney", 1L)
+                        .param("amount", "10.005")));
+
+        verifyNoInteractions(customerService);
     }
 
     // Тестируем endpoint перевода денег
@@ -148,7 +367,7 @@ class IntegrationTests {
     void testTransferMoney() throws Exception {
         Long senderId = 1L;
         Long recipientId = 2L;
-        BigDecimal amount = new BigDecimal("300.00");
+        Money amount = Money.of("300.00");
         when(customerService.transferMoney(senderId, recipientId, amount)).thenReturn(true);
 
         mockMvc.perform(post("/api/customers/{senderId}/transfermoney/{recipientId}", senderId, recipientId)
@@ -164,7 +383,7 @@ class IntegrationTests {
     void transferMoney_WhenFailed_ShouldReturnErrorMessage() throws Exception {
         Long senderId = 1L;
         Long recipientId = 2L;
-        BigDecimal amount = new BigDecimal("3000.00");
+        Money amount = Money.of("3000.00");
         when(customerService.transferMoney(senderId, recipientId, amount)).thenReturn(false);
 
         mockMvc.perform(post("/api/customers/{senderId}/transfermoney/{recipientId}", senderId, recipientId)
@@ -174,4 +393,58 @@ class IntegrationTests {
 
         verify(customerService).transferMoney(senderId, recipientId, amount);
     }
-}
\ No newline at end of file
+
+    // Тестируем повтор перевода с тем же ключом идемпотентности: перевод выполняется один раз,
+    // повтор получает исходный ответ
+    @Test
+    void testTransferMoneyReplayedByIdempotencyKey() throws Exception {
+        String key = UUID.randomUUID().toString();
+        Money amount = Money.of("300.00");
+        when(customerService.transferMoney(1L, 2L, amount)).thenReturn(true);
+
+        mockMvc.perform(post("/api/customers/{senderId}/transfermoney/{recipientId}", 1L, 2L)
+                        .header("Idempotency-Key", key)
+                        .param("amount", amount.toString()))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"))
+                .andExpect(content().string("Перевод выполнен успешно"));
+
+        mockMvc.perform(post("/api/customers/{senderId}/transfermoney/{recipientId}", 1L, 2L)
+                        .header("Idempotency-Key", key)
+                        .param("amount", "300"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(content().string("Перевод выполнен успешно"));
+
+        verify(customerService, times(1)).transferMoney(1L, 2L, amount);
+    }
+
+    // Тестируем отказ при повторе ключа идемпотентности с другим запросом
+    @Test
+    void testIdempotencyKeyReusedForOtherRequest() throws Exception {
+        String key = UUID.randomUUID().toString();
+
+        mockMvc.perform(post("/api/customers/{customersId}/putmoney", 1L)
+                        .header("Idempotency-Key", key)
+                        .param("amount", "500.00"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/api/customers/{customersId}/takemoney", 1L)
+                        .header("Idempotency-Key", key)
+                        .param("amount", "500.00"))
+                .andExpect(status().isUnprocessableEntity());
+
+        verify(customerService).putMoney(1L, Money.of("500.00"));
+        verify(customerService, never()).takeMoney(any(), any());
+    }
+
+    // История версии "1-a": если клиент уже получил эту версию, операции не возвращаются
+    private void stubHistory(Long customerId, LocalDateTime from, LocalDateTime to, boolean closed,
+                             List<OperationView> operations) {
+        when(customerService.getOperationHistory(eq(customerId), eq(from), eq(to), any()))
+                .thenAnswer(invocation -> {
+                    Predicate<String> notModified = invocation.getArgument(3);
+                    return new OperationHistory("1-a", closed, notModified.test("1-a") ? null : operations);
+                });
+    }
+}
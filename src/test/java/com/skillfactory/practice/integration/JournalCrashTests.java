@@ -0,0 +1,123 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.service.AccountEngine;
+import com.skillfactory.practice.service.AccountJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Журнал движка счетов при аварийном завершении процесса: JournalWriterProcess пишет журнал и убивается
+// (SIGKILL) посреди записи, затем движок восстанавливает журнал в БД. Проверяется сбой процесса, а не питания:
+// страницы отображённого файла, записанные до сбоя, остаются в кэше ОС
+@SpringBootTest
+class JournalCrashTests {
+
+    // Номер шарда для журнала убитого процесса: такого шарда у движков тестов нет
+    private static final int CRASHED_SHARD = 101;
+    private static final int SEGMENT_SIZE = 256 * AccountJournal.RECORD_SIZE;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private long customerId;
+
+    @AfterEach
+    void cleanup() {
+        jdbcTemplate.update("delete from operations where customer_id = ?", customerId);
+        jdbcTemplate.update("delete from customer where id = ?", customerId);
+        jdbcTemplate.update("delete from engine_checkpoints where shard = ?", CRASHED_SHARD);
+    }
+
+    // Тестируем несколько циклов сбой - восстановление: все подтверждённые записи читаются без пропусков,
+    // недописанный пакет отбрасывается, и каждая прочитанная запись попадает в БД ровно один раз
+    @Test
+    void killedWriterLosesNoAcknowledgedRecords(@TempDir Path journalDir) throws Exception {
+        customerId = customerRepository.save(new Customer(Money.ZERO)).getId();
+        jdbcTemplate.update("insert into engine_checkpoints (shard, journal_seq) values (?, 0)"
+                + " on conflict (shard) do update set journal_seq = 0", CRASHED_SHARD);
+        Path shardDir = journalDir.resolve("shard-" + CRASHED_SHARD);
+
+        long checkpoint = 0;
+        for (int round = 0; round < 3; round++) {
+            long acknowledged = runAndKill(shardDir, checkpoint + 1, 1000 + round * 700);
+
+            List<AccountJournal.Entry> entries = new ArrayList<>();
+            AccountJournal.read(shardDir, entries::add);
+            assertTrue(entries.size() >= acknowledged - checkpoint, () -> entries.size() + " < " + acknowledged);
+            for (int i = 0; i < entries.size(); i++) {
+                assertEquals(checkpoint + 1 + i, entries.get(i).seq());
+            }
+            try (Stream<Path> segments = Files.list(shardDir)) {
+                assertTrue(segments.count() > 1);
+            }
+            checkpoint += entries.size();
+
+            AccountEngine restarted = new AccountEngine(true, 1, journalDir, DataSize.ofKilobytes(16), 16, 500, 1000,
+                    Duration.ofSeconds(10), jdbcTemplate, transactionManager, new SimpleMeterRegistry());
+            restarted.start();
+            restarted.stop();
+
+            assertEquals(0, BigDecimal.valueOf(checkpoint).compareTo(jdbcTemplate.queryForObject(
+                    "select balance from customer where id = ?", BigDecimal.class, customerId)));
+            assertEquals(checkpoint, jdbcTemplate.queryForObject(
+                    "select count(*) from operations where customer_id = ?", Long.class, customerId));
+            assertEquals(checkpoint, jdbcTemplate.queryForObject(
+                    "select journal_seq from engine_checkpoints where shard = ?", Long.class, CRASHED_SHARD));
+            try (Stream<Path> segments = Files.list(shardDir)) {
+                assertEquals(0, segments.count());
+            }
+        }
+    }
+
+    // Процесс убивается, когда подтвердит не меньше minAcknowledged записей, и уже пишет следующие.
+    // Результат - последний номер, о подтверждении которого процесс успел сообщить
+    private long runAndKill(Path shardDir, long firstSeq, long minAcknowledged) throws Exception {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                JournalWriterProcess.class.getName(), shardDir.toString(), String.valueOf(firstSeq),
+                String.valueOf(customerId), String.valueOf(SEGMENT_SIZE))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        long acknowledged = firstSeq - 1;
+        try (BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            while (acknowledged < firstSeq - 1 + minAcknowledged) {
+                String line = output.readLine();
+                assertNotNull(line, "Процесс записи журнала завершился сам");
+                acknowledged = Long.parseLong(line);
+            }
+            process.destroyForcibly();
+            assertTrue(process.waitFor(10, TimeUnit.SECONDS));
+        }
+        return acknowledged;
+    }
+}
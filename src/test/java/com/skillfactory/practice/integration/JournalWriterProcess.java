@@ -0,0 +1,32 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.service.AccountJournal;
+
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Отдельный процесс для JournalCrashTests: без остановки пишет в журнал пакеты пополнений клиента
+// по 1.00 и после каждого commit печатает номер последней подтверждённой записи. Тест убивает процесс
+// посреди записи. Аргументы: каталог журнала, номер первой записи, ID клиента, размер сегмента в байтах
+public class JournalWriterProcess {
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Path.of(args[0]);
+        long firstSeq = Long.parseLong(args[1]);
+        long customerId = Long.parseLong(args[2]);
+        long segmentSize = Long.parseLong(args[3]);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (AccountJournal journal = new AccountJournal(directory, firstSeq, segmentSize, 64)) {
+            while (true) {
+                int batch = random.nextInt(1, 65);
+                long now = System.currentTimeMillis() * 1000;
+                for (int i = 0; i < batch; i++) {
+                    journal.append(AccountJournal.Kind.DEPOSIT, customerId, 0, 1_00, now);
+                }
+                journal.commit();
+                System.out.println(journal.lastSeq());
+                System.out.flush();
+            }
+        }
+    }
+}
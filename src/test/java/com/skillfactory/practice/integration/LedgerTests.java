@@ -0,0 +1,126 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.dto.LedgerMismatch;
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.service.CustomerService;
+import com.skillfactory.practice.service.LedgerMaintenance;
+import com.skillfactory.practice.service.LedgerService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Журнал операций на реальной БД: снимки, баланс по журналу, сверка и пересчёт баланса
+@SpringBootTest(properties = {"app.ledger.snapshot-every=10", "app.ledger.chunk-size=50"})
+class LedgerTests {
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private LedgerMaintenance ledgerMaintenance;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long firstId;
+    private Long secondId;
+
+    @BeforeEach
+    void setup() {
+        firstId = customerRepository.save(new Customer(Money.ZERO)).getId();
+        secondId = customerRepository.save(new Customer(Money.ZERO)).getId();
+    }
+
+    @AfterEach
+    void cleanup() {
+        jdbcTemplate.update("delete from operations where customer_id in (?, ?)", firstId, secondId);
+        jdbcTemplate.update("delete from customer where id in (?, ?)", firstId, secondId);
+    }
+
+    // Снимок создаётся после snapshot-every операций, баланс по журналу при этом не меняется
+    @Test
+    void snapshotPlusTailMatchesBalance() {
+        for (int i = 0; i < 12; i++) {
+            customerService.putMoney(firstId, Money.of("10.00"));
+        }
+        customerService.takeMoney(firstId, Money.of("5.00"));
+        customerService.transferMoney(firstId, secondId, Money.of("15.00"));
+
+        assertEquals(0, ledgerService.getHistoryBalance(firstId).compareTo(new BigDecimal("100.00")));
+        assertEquals(1, ledgerService.takeSnapshots(firstId, secondId));
+        assertEquals(0, ledgerService.takeSnapshots(firstId, secondId));
+        assertEquals(1, snapshotCount(firstId));
+        assertEquals(0, snapshotCount(secondId));
+
+        customerService.putMoney(firstId, Money.of("1.00"));
+        assertEquals(0, ledgerService.getLedgerBalance(firstId).orElseThrow().compareTo(new BigDecimal("101.00")));
+        assertEquals(0, ledgerService.getLedgerBalance(secondId).orElseThrow().compareTo(new BigDecimal("15.00")));
+        assertTrue(ledgerService.getLedgerBalance(Long.MAX_VALUE).isEmpty());
+    }
+
+    // Снимки, снятые во время параллельных пополнений, не теряют операций
+    @Test
+    void snapshotsDuringConcurrentWrites() throws Exception {
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            List<Future<?>> writes = new java.util.ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                writes.add(executor.submit(() -> customerService.putMoney(firstId, Money.of("1.00"))));
+            }
+            while (writes.stream().anyMatch(write -> !write.isDone())) {
+                ledgerService.takeSnapshots(firstId, firstId);
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        }
+
+        assertTrue(snapshotCount(firstId) > 0);
+        assertEquals(0, ledgerService.getLedgerBalance(firstId).orElseThrow().compareTo(new BigDecimal("200.00")));
+        assertTrue(ledgerService.findMismatches(firstId, firstId).isEmpty());
+    }
+
+    // Сверка находит баланс, изменённый в обход журнала, пересчёт возвращает его к журналу
+    @Test
+    void reconciliationFindsDriftAndRebuildFixesIt() {
+        customerService.putMoney(firstId, Money.of("50.00"));
+        customerService.putMoney(secondId, Money.of("20.00"));
+        jdbcTemplate.update("update customer set balance = balance + 7 where id = ?", secondId);
+
+        List<LedgerMismatch> mismatches = ledgerMaintenance.reconcile();
+        List<Long> mismatchedIds = mismatches.stream().map(LedgerMismatch::getCustomerId).toList();
+        assertTrue(mismatchedIds.contains(secondId), mismatchedIds::toString);
+        assertFalse(mismatchedIds.contains(firstId));
+        LedgerMismatch mismatch = mismatches.get(mismatchedIds.indexOf(secondId));
+        assertEquals(0, mismatch.getBalance().compareTo(new BigDecimal("27.00")));
+        assertEquals(0, mismatch.getLedgerBalance().compareTo(new BigDecimal("20.00")));
+
+        assertTrue(ledgerService.rebuildBalance(secondId));
+        assertEquals(Money.of("20.00"), customerService.getBalance(secondId).orElseThrow());
+        assertTrue(ledgerService.findMismatches(firstId, secondId).isEmpty());
+        assertFalse(ledgerService.rebuildBalance(Long.MAX_VALUE));
+    }
+
+    private int snapshotCount(Long customerId) {
+        return jdbcTemplate.queryForObject("select count(*) from ledger_snapshots where customer_id = ?",
+                Integer.class, customerId);
+    }
+}
@@ -0,0 +1,74 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.config.LoadDataGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Генератор нагрузочных данных: история согласована с балансом, время разнесено, активность неравномерна
+@SpringBootTest
+class LoadDataGeneratorTests {
+
+    private static final int CUSTOMERS = 500;
+    private static final int OPERATIONS_PER_CUSTOMER = 40;
+    private static final int SPREAD_DAYS = 30;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long[] customerIds = new Long[0];
+
+    @AfterEach
+    void deleteGenerated() {
+        jdbcTemplate.update("delete from operations where customer_id = any(?)", (Object) customerIds);
+        jdbcTemplate.update("delete from customer where id = any(?)", (Object) customerIds);
+    }
+
+    @Test
+    void generatesConsistentSkewedHistory() throws Exception {
+        LoadDataGenerator generator = new LoadDataGenerator(dataSource, CUSTOMERS, OPERATIONS_PER_CUSTOMER,
+                SPREAD_DAYS, 1.0, 3, 64, 7);
+        LocalDateTime started = LocalDateTime.now();
+
+        customerIds = Arrays.stream(generator.generate()).boxed().toArray(Long[]::new);
+
+        assertEquals(CUSTOMERS, Arrays.stream(customerIds).distinct().count());
+
+        // Баланс каждого клиента совпадает с суммой его операций и не бывает отрицательным
+        Integer mismatches = jdbcTemplate.queryForObject("select count(*) from customer c"
+                + " where c.id = any(?) and (c.balance < 0 or c.balance <> (select coalesce(sum(case o.type"
+                + " when 'DEPOSIT' then o.amount else -o.amount end), 0) from operations o where o.customer_id = c.id))",
+                Integer.class, (Object) customerIds);
+        assertEquals(0, mismatches);
+
+        Map<String, Object> stats = jdbcTemplate.queryForMap("select count(*) as total,"
+                + " min(created_at) as oldest, max(created_at) as newest from operations where customer_id = any(?)",
+                (Object) customerIds);
+        long total = ((Number) stats.get("total")).longValue();
+        assertTrue(total > CUSTOMERS * OPERATIONS_PER_CUSTOMER * 9L / 10, "Операций: " + total);
+        LocalDateTime oldest = ((Timestamp) stats.get("oldest")).toLocalDateTime();
+        LocalDateTime newest = ((Timestamp) stats.get("newest")).toLocalDateTime();
+        assertTrue(oldest.isAfter(started.minusDays(SPREAD_DAYS + 1)));
+        assertTrue(oldest.isBefore(started.minusDays(SPREAD_DAYS - 1)));
+        assertFalse(newest.isAfter(started));
+
+        // При перекосе 1.0 самый активный клиент совершает на порядки больше операций, чем самый пассивный
+        List<Integer> counts = jdbcTemplate.queryForList("select count(*) from operations where customer_id = any(?)"
+                + " group by customer_id order by count(*)", Integer.class, (Object) customerIds);
+        assertTrue(counts.get(counts.size() - 1) > counts.get(0) * 100, counts::toString);
+    }
+}
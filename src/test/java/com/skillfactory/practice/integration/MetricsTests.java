@@ -0,0 +1,91 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.repository.OperationRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Метрики денежных операций на реальной БД и их публикация в формате Prometheus
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+class MetricsTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private OperationRepository operationRepository;
+
+    private Long senderId;
+    private Long recipientId;
+
+    @BeforeEach
+    void createCustomers() {
+        senderId = customerRepository.save(new Customer(Money.of("100.00"))).getId();
+        recipientId = customerRepository.save(new Customer(Money.of("0.00"))).getId();
+    }
+
+    @AfterEach
+    void deleteCustomers() {
+        for (Long customerId : new Long[]{senderId, recipientId}) {
+            operationRepository.deleteAll(operationRepository.findAllByCustomer_Id(customerId));
+            customerRepository.deleteById(customerId);
+        }
+    }
+
+    @Test
+    void moneyOperationsArePublished() throws Exception {
+        double rejectedBefore = registry.counter("money.insufficient.funds", "operation", "transfer").count();
+
+        mockMvc.perform(post("/api/customers/{senderId}/transfermoney/{recipientId}", senderId, recipientId)
+                        .param("amount", "60.00"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/api/customers/{senderId}/transfermoney/{recipientId}", senderId, recipientId)
+                        .param("amount", "60.00"))
+                .andExpect(status().isBadRequest());
+
+        assertEquals(rejectedBefore + 1,
+                registry.counter("money.insufficient.funds", "operation", "transfer").count());
+        assertTrue(registry.get("customer.service").tag("method", "transferMoney").timer().count() >= 2);
+        assertTrue(registry.get("customer.lock.wait").tag("lock", "row").timer().count() >= 2);
+
+        // Успешный перевод: два SELECT ... FOR UPDATE, пакет из двух UPDATE и пакет из двух INSERT
+        // (JDBC-пакет считается одним запросом), плюс иногда обращение к последовательности
+        double maxStatements = registry.get("http.server.requests.db.statements")
+                .tag("uri", "/api/customers/{senderId}/transfermoney/{recipientId}")
+                .summary().max();
+        assertTrue(maxStatements >= 4 && maxStatements <= 5, "Запросов к БД: " + maxStatements);
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("http_server_requests_seconds_bucket")))
+                .andExpect(content().string(containsString("customer_service_seconds_bucket")))
+                .andExpect(content().string(containsString("customer_lock_wait_seconds_bucket")))
+                .andExpect(content().string(containsString("money_insufficient_funds_total")))
+                .andExpect(content().string(containsString("http_server_requests_db_statements_bucket")))
+                .andExpect(content().string(containsString("hikaricp_connections_pending")));
+    }
+}
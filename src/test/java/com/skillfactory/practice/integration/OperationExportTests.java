@@ -0,0 +1,73 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.service.CustomerService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Проверяем, что выгрузка большой истории идёт потоком и не держит строки в памяти
+@SpringBootTest
+class OperationExportTests {
+
+    private static final int OPERATIONS = 300_000;
+    private static final long MAX_HEAP_GROWTH = 32L * 1024 * 1024;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long customerId;
+
+    @BeforeEach
+    void createLargeHistory() {
+        customerId = customerRepository.save(new Customer(Money.ZERO)).getId();
+        jdbcTemplate.update("insert into operations (customer_id, type, amount, created_at)"
+                + " select ?, 'DEPOSIT', 1.00, now() - make_interval(secs => g) from generate_series(1, ?) g",
+                customerId, OPERATIONS);
+    }
+
+    @AfterEach
+    void deleteLargeHistory() {
+        jdbcTemplate.update("delete from operations where customer_id = ?", customerId);
+        customerRepository.deleteById(customerId);
+    }
+
+    // Тестируем, что занятая память на середине выгрузки почти не отличается от занятой до её начала
+    @Test
+    void exportKeepsHeapBounded() {
+        long before = usedHeapAfterGc();
+        AtomicLong rows = new AtomicLong();
+        AtomicLong peakGrowth = new AtomicLong();
+
+        customerService.exportOperations(customerId, row -> {
+            if (rows.incrementAndGet() % 100_000 == 0) {
+                peakGrowth.accumulateAndGet(usedHeapAfterGc() - before, Math::max);
+            }
+        });
+
+        assertEquals(OPERATIONS, rows.get());
+        assertTrue(peakGrowth.get() < MAX_HEAP_GROWTH,
+                "Рост памяти во время выгрузки: " + peakGrowth.get() / 1024 + " КБ");
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,128 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.config.StatementCounter;
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.service.CustomerService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// История за период с ETag на реальной БД: версия по дневным итогам, 304 без чтения операций,
+// кэш закрытых периодов и новая версия после операции, дописанной задним числом.
+// SQL-запросы за HTTP-запрос считает StatementCounter: один на версию по итогам и один на чтение операций
+@SpringBootTest
+@AutoConfigureMockMvc
+class OperationHistoryEtagTests {
+
+    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private final LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long customerId;
+
+    @BeforeEach
+    void setup() {
+        customerId = customerRepository.save(new Customer(Money.ZERO)).getId();
+        jdbcTemplate.queryForObject("select create_operations_partition(?::date)", String.class, now.minusDays(5));
+        insertOperation(now.minusDays(3));
+        insertOperation(now.minusDays(2));
+    }
+
+    @AfterEach
+    void cleanup() {
+        jdbcTemplate.update("delete from operations where customer_id = ?", customerId);
+        jdbcTemplate.update("delete from customer where id = ?", customerId);
+    }
+
+    // Закрытый период: повтор без If-None-Match - из кэша, с ним - 304, операция задним числом - новая версия
+    @Test
+    void closedRangeIsCachedAndRevalidated() throws Exception {
+        String from = now.minusDays(5).format(formatter);
+        String to = now.minusDays(1).format(formatter);
+
+        String eTag = mockMvc.perform(get("/api/customers/{id}/operations", customerId)
+                        .param("from", from).param("to", to))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=300, private"))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotNull(eTag);
+        assertEquals(2, StatementCounter.current());
+
+        mockMvc.perform(get("/api/customers/{id}/operations", customerId).param("from", from).param("to", to))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", eTag))
+                .andExpect(jsonPath("$", hasSize(2)));
+        assertEquals(1, StatementCounter.current());
+
+        mockMvc.perform(get("/api/customers/{id}/operations", customerId).param("from", from).param("to", to)
+                        .header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        assertEquals(1, StatementCounter.current());
+
+        insertOperation(now.minusDays(4));
+        String changed = mockMvc.perform(get("/api/customers/{id}/operations", customerId)
+                        .param("from", from).param("to", to).header("If-None-Match", eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotEquals(eTag, changed);
+        assertEquals(2, StatementCounter.current());
+    }
+
+    // Открытый период клиент перепроверяет каждый раз: 304, пока нет новых операций
+    @Test
+    void openRangeIsRevalidatedEveryTime() throws Exception {
+        String from = now.minusDays(5).format(formatter);
+
+        String eTag = mockMvc.perform(get("/api/customers/{id}/operations", customerId).param("from", from))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "no-cache, private"))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/customers/{id}/operations", customerId).param("from", from)
+                        .header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+        assertEquals(1, StatementCounter.current());
+
+        customerService.putMoney(customerId, Money.of("1.00"));
+        mockMvc.perform(get("/api/customers/{id}/operations", customerId).param("from", from)
+                        .header("If-None-Match", eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)));
+    }
+
+    private void insertOperation(LocalDateTime createdAt) {
+        jdbcTemplate.update("insert into operations (customer_id, type, amount, created_at)"
+                + " values (?, 'DEPOSIT', 10.00, ?)", customerId, createdAt);
+    }
+}
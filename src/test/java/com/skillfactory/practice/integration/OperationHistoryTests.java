@@ -0,0 +1,85 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.dto.OperationCursor;
+import com.skillfactory.practice.dto.OperationPage;
+import com.skillfactory.practice.dto.OperationView;
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.repository.OperationRepository;
+import com.skillfactory.practice.service.CustomerService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Проверка запросов истории операций на реальной БД
+@SpringBootTest
+class OperationHistoryTests {
+
+    private static final int OPERATIONS = 250;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private OperationRepository operationRepository;
+
+    private Long customerId;
+
+    @BeforeEach
+    void createHistory() {
+        customerId = customerRepository.save(new Customer(Money.ZERO)).getId();
+        for (int i = 1; i <= OPERATIONS; i++) {
+            customerService.putMoney(customerId, Money.ofMinorUnits(i * 100L));
+        }
+    }
+
+    @AfterEach
+    void deleteHistory() {
+        operationRepository.deleteAll(operationRepository.findAllByCustomer_Id(customerId));
+        customerRepository.deleteById(customerId);
+    }
+
+    // Тестируем, что обход по курсору возвращает всю историю по порядку, без пропусков и повторов
+    @Test
+    void cursorPaginationWalksWholeHistoryInOrder() {
+        List<OperationView> walked = new ArrayList<>();
+        OperationCursor cursor = null;
+        int pages = 0;
+        do {
+            OperationPage page = customerService.getOperationPage(customerId, cursor, 100);
+            walked.addAll(page.items());
+            cursor = page.nextCursor() == null ? null : OperationCursor.parse(page.nextCursor());
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(OPERATIONS, walked.size());
+        for (int i = 1; i < walked.size(); i++) {
+            OperationView previous = walked.get(i - 1);
+            OperationView current = walked.get(i);
+            assertTrue(previous.createdAt().isBefore(current.createdAt())
+                    || previous.createdAt().equals(current.createdAt())
+                    && previous.operationId() < current.operationId());
+        }
+    }
+
+    // Тестируем, что последняя полная страница не выдаёт курсор на пустую страницу
+    @Test
+    void lastPageHasNoCursor() {
+        OperationPage page = customerService.getOperationPage(customerId, null, OPERATIONS);
+
+        assertEquals(OPERATIONS, page.items().size());
+        assertNull(page.nextCursor());
+    }
+}
@@ -0,0 +1,118 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.service.CustomerService;
+import com.skillfactory.practice.service.LedgerService;
+import com.skillfactory.practice.service.OperationPartitions;
+import com.skillfactory.practice.service.OperationTotalsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Секции operations по месяцам: создание заранее, отсечение секций в запросах по периоду, архивация
+@SpringBootTest
+class OperationPartitionTests {
+
+    // Месяц, в котором нет других данных: его секция создаётся и архивируется тестом
+    private static final YearMonth OLD_MONTH = YearMonth.of(2001, 1);
+
+    @Autowired
+    private OperationPartitions operationPartitions;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private OperationTotalsService totalsService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long customerId;
+
+    @BeforeEach
+    void setup() {
+        customerId = customerRepository.save(new Customer(Money.ZERO)).getId();
+    }
+
+    @AfterEach
+    void cleanup() {
+        // Архивная секция сохраняет внешний ключ на клиента, поэтому удаляется первой
+        jdbcTemplate.execute("drop table if exists " + OperationPartitions.ARCHIVE_SCHEMA + ".operations_2001_01");
+        jdbcTemplate.execute("drop table if exists public.operations_2001_01");
+        jdbcTemplate.update("delete from operations where customer_id = ?", customerId);
+        jdbcTemplate.update("delete from customer where id = ?", customerId);
+    }
+
+    // При старте созданы секции текущего месяца и premake-months следующих
+    @Test
+    void futurePartitionsExist() {
+        List<String> partitions = operationPartitions.partitions();
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= 3; i++) {
+            YearMonth month = current.plusMonths(i);
+            assertTrue(partitions.contains(String.format("operations_%04d_%02d", month.getYear(), month.getMonthValue())),
+                    partitions::toString);
+        }
+    }
+
+    // Запрос истории за период читает только секции этого периода
+    @Test
+    void rangeQueryScansOnlyItsPartition() {
+        customerService.putMoney(customerId, Money.of("10.00"));
+        YearMonth current = YearMonth.now();
+
+        String plan = String.join("\n", jdbcTemplate.queryForList("explain select operation_id from operations"
+                + " where customer_id = " + customerId
+                + " and created_at between '" + current.atDay(1) + "' and '" + current.atEndOfMonth() + "'", String.class));
+
+        String currentPartition = String.format("operations_%04d_%02d", current.getYear(), current.getMonthValue());
+        YearMonth next = current.plusMonths(1);
+        String nextPartition = String.format("operations_%04d_%02d", next.getYear(), next.getMonthValue());
+        assertTrue(plan.contains(currentPartition), plan);
+        assertFalse(plan.contains(nextPartition), plan);
+
+        assertEquals(1, customerService.getOperationList(customerId,
+                current.atDay(1).atStartOfDay(), LocalDateTime.now().plusMinutes(1)).size());
+    }
+
+    // Архивация старого месяца: секция уходит в архивную схему, баланс по журналу не меняется,
+    // версия истории (ETag) меняется, хотя итоги остаются
+    @Test
+    void archivedPartitionKeepsLedgerBalance() {
+        operationPartitions.createPartitions(OLD_MONTH, OLD_MONTH);
+        jdbcTemplate.update("insert into operations (customer_id, type, amount, created_at)"
+                + " values (?, 'DEPOSIT', 10.00, '2001-01-15')", customerId);
+        jdbcTemplate.update("update customer set balance = 10.00 where id = ?", customerId);
+        customerService.putMoney(customerId, Money.of("5.00"));
+        String version = totalsService.historyVersion(customerId, null, null);
+
+        assertEquals(List.of("operations_2001_01"), operationPartitions.archivePartitionsBefore(OLD_MONTH.plusMonths(1)));
+
+        assertFalse(operationPartitions.partitions().contains("operations_2001_01"));
+        assertEquals(1, jdbcTemplate.queryForObject("select count(*) from " + OperationPartitions.ARCHIVE_SCHEMA
+                + ".operations_2001_01 where customer_id = ?", Integer.class, customerId));
+        assertEquals(1, customerService.getOperationList(customerId, null, null).size());
+        assertEquals(0, ledgerService.getLedgerBalance(customerId).orElseThrow().compareTo(new BigDecimal("15.00")));
+        assertTrue(ledgerService.findMismatches(customerId, customerId).isEmpty());
+        assertNotEquals(version, totalsService.historyVersion(customerId, null, null));
+    }
+}
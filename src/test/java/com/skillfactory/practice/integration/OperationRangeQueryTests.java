@@ -0,0 +1,127 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.dto.OperationView;
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.service.CustomerService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// История за период с открытыми и закрытыми границами на длинной истории: результат, порядок, ограничение
+// размера и план запроса (только покрывающий индекс, без сортировки)
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.skillfactory.practice.integration.RecordingStatementInspector")
+class OperationRangeQueryTests {
+
+    // Операции клиента - по одной в минуту начиная с START
+    private static final int OPERATIONS = 30_000;
+    private static final LocalDateTime START = LocalDate.now().minusMonths(1).withDayOfMonth(1).atStartOfDay();
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long customerId;
+
+    @BeforeEach
+    void createHistory() {
+        customerId = customerRepository.save(new Customer(Money.ZERO)).getId();
+        for (int month = 0; month <= 1; month++) {
+            jdbcTemplate.queryForObject("select create_operations_partition(?)", String.class,
+                    START.toLocalDate().plusMonths(month));
+        }
+        jdbcTemplate.update("insert into operations (amount, created_at, type, customer_id)"
+                        + " select g, ?::timestamp + g * interval '1 minute', 'DEPOSIT', ? from generate_series(0, ?) g",
+                Timestamp.valueOf(START), customerId, OPERATIONS - 1);
+        // Index Only Scan не читает таблицу для страниц, отмеченных VACUUM как видимые всем
+        jdbcTemplate.execute("vacuum analyze operations");
+    }
+
+    @AfterEach
+    void deleteHistory() {
+        jdbcTemplate.update("delete from operations where customer_id = ?", customerId);
+        jdbcTemplate.update("delete from customer where id = ?", customerId);
+    }
+
+    @Test
+    void bothBounds() {
+        List<OperationView> operations = customerService.getOperationList(customerId, at(100), at(199));
+        assertRange(operations, 100, 100);
+        assertIndexOnlyPlan(customerId, Timestamp.valueOf(at(100)), Timestamp.valueOf(at(199)),
+                CustomerService.MAX_OPERATION_LIST);
+    }
+
+    // Граница только с одной стороны: раньше вторая граница подставлялась как null и период оказывался пустым
+    @Test
+    void fromOnly() {
+        List<OperationView> operations = customerService.getOperationList(customerId, at(OPERATIONS - 500), null);
+        assertRange(operations, OPERATIONS - 500, 500);
+        assertIndexOnlyPlan(customerId, Timestamp.valueOf(at(OPERATIONS - 500)), CustomerService.MAX_OPERATION_LIST);
+    }
+
+    @Test
+    void toOnly() {
+        List<OperationView> operations = customerService.getOperationList(customerId, null, at(499));
+        assertRange(operations, 0, 500);
+        assertIndexOnlyPlan(customerId, Timestamp.valueOf(at(499)), CustomerService.MAX_OPERATION_LIST);
+    }
+
+    // Длинная история без границ и с широкими границами ограничивается MAX_OPERATION_LIST первыми операциями
+    @Test
+    void longRangesAreLimited() {
+        assertRange(customerService.getOperationList(customerId, null, null), 0, CustomerService.MAX_OPERATION_LIST);
+        assertIndexOnlyPlan(customerId, CustomerService.MAX_OPERATION_LIST);
+
+        assertRange(customerService.getOperationList(customerId, at(10), null), 10, CustomerService.MAX_OPERATION_LIST);
+        assertRange(customerService.getOperationList(customerId, at(10), at(OPERATIONS)), 10,
+                CustomerService.MAX_OPERATION_LIST);
+    }
+
+    private static LocalDateTime at(int minute) {
+        return START.plusMinutes(minute);
+    }
+
+    // Операции first .. first + count - 1 по порядку (сумма операции равна её номеру)
+    private static void assertRange(List<OperationView> operations, int first, int count) {
+        assertEquals(count, operations.size());
+        for (int i = 0; i < count; i++) {
+            OperationView operation = operations.get(i);
+            assertEquals((first + i) * 100L, operation.amount().minorUnits());
+            assertEquals(at(first + i), operation.createdAt());
+        }
+    }
+
+    // План последнего запроса истории, выполненного Hibernate, с теми же параметрами
+    private void assertIndexOnlyPlan(Object... parameters) {
+        List<String> statements = new ArrayList<>(RecordingStatementInspector.statementsWithoutSequenceCalls());
+        statements.removeIf(sql -> !sql.contains("from operations") || !sql.contains("order by"));
+        assertFalse(statements.isEmpty());
+        String sql = statements.get(statements.size() - 1);
+
+        String plan = String.join("\n", jdbcTemplate.queryForList("explain " + sql, String.class, parameters));
+        Supplier<String> message = () -> sql + "\n" + plan;
+        assertTrue(plan.contains("Index Only Scan using operations_"), message);
+        assertFalse(plan.contains("Seq Scan"), message);
+        assertFalse(plan.matches("(?s).*->\\s+Sort .*|^Sort .*"), message);
+        assertFalse(plan.contains("Bitmap Heap Scan"), message);
+    }
+}
@@ -0,0 +1,123 @@
+package com.skillfactory.practice.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillfactory.practice.dto.OperationView;
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.entity.Operation;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.service.CustomerService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Сравнение чтения истории из 10 000 операций: сущности с клиентом (как при EAGER-связи) и проекция OperationView
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class OperationReadBenchmarkTests {
+
+    private static final int OPERATIONS = 10_000;
+    private static final int ROUNDS = 5;
+
+    private static final Logger log = LoggerFactory.getLogger(OperationReadBenchmarkTests.class);
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private Statistics statistics;
+    private Long customerId;
+
+    @BeforeEach
+    void createHistory() {
+        customerId = customerRepository.save(new Customer(Money.of("1000.00"))).getId();
+        jdbcTemplate.update("insert into operations (customer_id, type, amount, created_at)"
+                + " select ?, 'DEPOSIT', 1.00, now() - make_interval(secs => g) from generate_series(1, ?) g",
+                customerId, OPERATIONS);
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @AfterEach
+    void deleteHistory() {
+        jdbcTemplate.update("delete from operations where customer_id = ?", customerId);
+        customerRepository.deleteById(customerId);
+    }
+
+    @Test
+    void projectionReadsLessThanEntities() throws Exception {
+        // Прогрев, чтобы в замеры не попала загрузка классов и компиляция запросов
+        readEntities();
+        customerService.getOperationList(customerId, null, null);
+
+        statistics.clear();
+        long entityAllocated = allocatedBytes(this::readEntities);
+        long entityLoads = statistics.getEntityLoadCount() / ROUNDS;
+        int entityPayload = objectMapper.writeValueAsBytes(readEntities()).length;
+
+        statistics.clear();
+        long viewAllocated = allocatedBytes(() -> customerService.getOperationList(customerId, null, null));
+        long viewLoads = statistics.getEntityLoadCount() / ROUNDS;
+        List<OperationView> views = customerService.getOperationList(customerId, null, null);
+        int viewPayload = objectMapper.writeValueAsBytes(views).length;
+
+        log.info("Сущности: {} загрузок сущностей, {} КБ выделено, {} КБ JSON",
+                entityLoads, entityAllocated / 1024, entityPayload / 1024);
+        log.info("Проекция: {} загрузок сущностей, {} КБ выделено, {} КБ JSON",
+                viewLoads, viewAllocated / 1024, viewPayload / 1024);
+
+        assertEquals(OPERATIONS, views.size());
+        assertEquals(0, viewLoads);
+        assertEquals(OPERATIONS + 1, entityLoads);
+        assertTrue(viewAllocated < entityAllocated);
+        assertTrue(viewPayload < entityPayload * 3 / 4);
+    }
+
+    // Прежняя форма ответа: операции вместе с полностью загруженным клиентом
+    private List<Operation> readEntities() {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return entityManager.createQuery("select o from Operation o join fetch o.customer c"
+                            + " where c.id = :customerId order by o.createdAt, o.operationId", Operation.class)
+                    .setParameter("customerId", customerId)
+                    .getResultList();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    // Среднее количество байт, выделенных текущим потоком за один вызов
+    private static long allocatedBytes(Supplier<?> action) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long start = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            action.get();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - start) / ROUNDS;
+    }
+}
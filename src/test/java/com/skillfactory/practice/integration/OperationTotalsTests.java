@@ -0,0 +1,158 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.dto.OperationSummary;
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.enums.SummaryGranularity;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.service.CustomerService;
+import com.skillfactory.practice.service.LedgerMaintenance;
+import com.skillfactory.practice.service.OperationTotalsService;
+import org.apache.coyote.BadRequestException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// Итоги операций по дням и месяцам на реальной БД: обновление триггером, пересчёт из журнала и сводка через API
+@SpringBootTest
+@AutoConfigureMockMvc
+class OperationTotalsTests {
+
+    @Autowired
+    private OperationTotalsService totalsService;
+
+    @Autowired
+    private LedgerMaintenance ledgerMaintenance;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+    private final LocalDate lastMonth = today.minusMonths(1).withDayOfMonth(1);
+
+    private Long firstId;
+    private Long secondId;
+
+    @BeforeEach
+    void setup() {
+        firstId = customerRepository.save(new Customer(Money.ZERO)).getId();
+        secondId = customerRepository.save(new Customer(Money.ZERO)).getId();
+        jdbcTemplate.queryForObject("select create_operations_partition(?)", String.class, lastMonth);
+
+        customerService.putMoney(firstId, Money.of("100.00"));
+        customerService.putMoney(firstId, Money.of("50.00"));
+        customerService.takeMoney(firstId, Money.of("30.00"));
+        customerService.transferMoney(firstId, secondId, Money.of("20.00"));
+
+        // История прошлого месяца: два дня, операции записаны одним INSERT
+        jdbcTemplate.update("insert into operations (amount, created_at, type, customer_id) values"
+                        + " (10.00, (?::date + time '12:00') at time zone 'UTC', 'DEPOSIT', ?),"
+                        + " (5.00, (?::date + time '13:00') at time zone 'UTC', 'WITHDRAWAL', ?),"
+                        + " (7.00, (?::date + time '12:00') at time zone 'UTC', 'DEPOSIT', ?)",
+                lastMonth, firstId, lastMonth, firstId, lastMonth.plusDays(9), firstId);
+    }
+
+    @AfterEach
+    void cleanup() {
+        jdbcTemplate.update("delete from operations where customer_id in (?, ?)", firstId, secondId);
+        jdbcTemplate.update("delete from customer where id in (?, ?)", firstId, secondId);
+    }
+
+    // Итоги дня и месяца появляются вместе с операциями и уменьшаются при их удалении
+    @Test
+    void totalsFollowOperations() {
+        List<OperationSummary> days = totalsService.getSummary(firstId, lastMonth, today, SummaryGranularity.DAY)
+                .orElseThrow();
+        assertEquals(List.of(lastMonth, lastMonth.plusDays(9), today), days.stream().map(OperationSummary::period).toList());
+        assertSummary(days.get(0), "10.00", "5.00", 1, 1);
+        assertSummary(days.get(2), "150.00", "50.00", 2, 2);
+
+        List<OperationSummary> months = totalsService.getSummary(firstId, lastMonth.plusDays(5), null,
+                SummaryGranularity.MONTH).orElseThrow();
+        assertEquals(2, months.size());
+        assertSummary(months.get(0), "17.00", "5.00", 2, 1);
+        assertSummary(totalsService.getSummary(secondId, today, today, SummaryGranularity.DAY).orElseThrow().get(0),
+                "20.00", "0.00", 1, 0);
+
+        jdbcTemplate.update("delete from operations where customer_id = ? and amount = 7.00", firstId);
+        months = totalsService.getSummary(firstId, null, null, SummaryGranularity.MONTH).orElseThrow();
+        assertSummary(months.get(0), "10.00", "5.00", 1, 1);
+
+        assertTrue(totalsService.getSummary(Long.MAX_VALUE, null, null, SummaryGranularity.DAY).isEmpty());
+    }
+
+    // Пересчёт из журнала восстанавливает потерянные и испорченные итоги
+    @Test
+    void rebuildRestoresTotals() {
+        List<OperationSummary> expected = totalsService.getSummary(firstId, null, null, SummaryGranularity.DAY)
+                .orElseThrow();
+        jdbcTemplate.update("delete from operation_daily_totals where customer_id = ? and day = ?", firstId, today);
+        jdbcTemplate.update("update operation_monthly_totals set deposited = 0 where customer_id = ?", firstId);
+
+        assertTrue(ledgerMaintenance.rebuildTotals() >= expected.size());
+
+        assertEquals(expected, totalsService.getSummary(firstId, null, null, SummaryGranularity.DAY).orElseThrow());
+        assertSummary(totalsService.getSummary(firstId, today, today, SummaryGranularity.MONTH).orElseThrow().get(0),
+                "150.00", "50.00", 2, 2);
+    }
+
+    // Тестируем endpoint сводки: периоды, неизвестный клиент и неверные параметры
+    @Test
+    void summaryEndpoint() throws Exception {
+        mockMvc.perform(get("/api/customers/{customersId}/operations/summary", firstId)
+                        .param("from", lastMonth.toString())
+                        .param("granularity", "month"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].period").value(lastMonth.toString()))
+                .andExpect(jsonPath("$[0].deposited").value(17.00))
+                .andExpect(jsonPath("$[1].withdrawals").value(2));
+
+        mockMvc.perform(get("/api/customers/{customersId}/operations/summary", firstId)
+                        .param("from", today.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].deposits").value(2));
+
+        mockMvc.perform(get("/api/customers/{customersId}/operations/summary", Long.MAX_VALUE))
+                .andExpect(status().isNotFound());
+        assertThrows(BadRequestException.class, () ->
+                mockMvc.perform(get("/api/customers/{customersId}/operations/summary", firstId)
+                        .param("granularity", "week")));
+        assertThrows(BadRequestException.class, () ->
+                mockMvc.perform(get("/api/customers/{customersId}/operations/summary", firstId)
+                        .param("from", "01.08.2025")));
+    }
+
+    private static void assertSummary(OperationSummary summary, String deposited, String withdrawn,
+                                      long deposits, long withdrawals) {
+        assertEquals(0, summary.deposited().compareTo(new BigDecimal(deposited)), summary::toString);
+        assertEquals(0, summary.withdrawn().compareTo(new BigDecimal(withdrawn)), summary::toString);
+        assertEquals(deposits, summary.deposits(), summary::toString);
+        assertEquals(withdrawals, summary.withdrawals(), summary::toString);
+    }
+}
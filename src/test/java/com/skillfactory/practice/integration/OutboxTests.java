@@ -0,0 +1,213 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.dto.OperationEvent;
+import com.skillfactory.practice.dto.TransferRequest;
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.enums.OperationType;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.service.CustomerService;
+import com.skillfactory.practice.service.LedgerService;
+import com.skillfactory.practice.service.OperationOutbox;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.event.EventListener;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Режим outbox на реальной БД. Фоновый перенос отключён длинным интервалом, тесты вызывают drain сами
+@SpringBootTest(properties = {"app.outbox.enabled=true", "app.outbox.poll-interval=1h", "app.outbox.batch-size=7",
+        "app.outbox.max-undelivered=10"})
+class OutboxTests {
+
+    // Подписчик на события переноса: события приходят из потоков, вызвавших drain.
+    // FAILURES - сколько следующих событий подписчик отклонит исключением
+    @TestConfiguration
+    static class EventCollector {
+
+        static final Queue<OperationEvent> EVENTS = new ConcurrentLinkedQueue<>();
+        static final AtomicInteger FAILURES = new AtomicInteger();
+
+        @EventListener
+        public void onOperation(OperationEvent event) {
+            if (FAILURES.getAndUpdate(failures -> Math.max(failures - 1, 0)) > 0) {
+                throw new IllegalStateException("Подписчик недоступен");
+            }
+            EVENTS.add(event);
+        }
+    }
+
+    @Autowired
+    private OperationOutbox operationOutbox;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Long firstId;
+    private Long secondId;
+
+    @BeforeEach
+    void setup() {
+        operationOutbox.drain();
+        firstId = customerRepository.save(new Customer(Money.ZERO)).getId();
+        secondId = customerRepository.save(new Customer(Money.ZERO)).getId();
+        EventCollector.EVENTS.clear();
+        EventCollector.FAILURES.set(0);
+    }
+
+    @AfterEach
+    void cleanup() {
+        jdbcTemplate.update("delete from operations where customer_id in (?, ?)", firstId, secondId);
+        jdbcTemplate.update("delete from customer where id in (?, ?)", firstId, secondId);
+    }
+
+    // До переноса операция есть только в outbox, баланс по журналу уже её учитывает
+    @Test
+    void operationsReachJournalAfterDrain() {
+        customerService.putMoney(firstId, Money.of("100.00"));
+        assertTrue(customerService.takeMoney(firstId, Money.of("30.00")));
+        assertTrue(customerService.transferMoney(firstId, secondId, Money.of("20.00")));
+        customerService.applyTransfers(List.of(new TransferRequest(firstId, secondId, Money.of("5.00"))), 0);
+
+        assertEquals(0, operationCount(firstId) + operationCount(secondId));
+        assertEquals(6, outboxCount());
+        assertEquals(0, ledgerService.getLedgerBalance(firstId).orElseThrow().compareTo(new BigDecimal("45.00")));
+        assertTrue(ledgerService.findMismatches(firstId, secondId).isEmpty());
+
+        assertEquals(6, operationOutbox.drain());
+
+        assertEquals(0, outboxCount());
+        assertEquals(List.of("DEPOSIT", "WITHDRAWAL", "WITHDRAWAL", "WITHDRAWAL"), journalTypes(firstId));
+        assertEquals(List.of("DEPOSIT", "DEPOSIT"), journalTypes(secondId));
+        assertTrue(ledgerService.findMismatches(firstId, secondId).isEmpty());
+        assertEquals(4, customerService.getOperationList(firstId, null, null).size());
+
+        List<OperationEvent> published = EventCollector.EVENTS.stream().toList();
+        assertEquals(6, published.size());
+        assertEquals(List.of(OperationType.DEPOSIT, OperationType.WITHDRAWAL, OperationType.WITHDRAWAL,
+                        OperationType.WITHDRAWAL),
+                published.stream().filter(event -> event.customerId().equals(firstId)).map(OperationEvent::type).toList());
+        assertNotNull(meterRegistry.find("outbox.delivery.lag").timer());
+        assertEquals(0, meterRegistry.get("outbox.pending").gauge().value());
+    }
+
+    // Параллельные операции и переносы: каждая операция попадает в журнал ровно один раз,
+    // события клиента идут в порядке ledger_seq
+    @Test
+    void concurrentWritesAndDrainsDeliverExactlyOnce() throws Exception {
+        int deposits = 300;
+        try (ExecutorService executor = Executors.newFixedThreadPool(6)) {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < deposits; i++) {
+                Long customerId = i % 2 == 0 ? firstId : secondId;
+                tasks.add(executor.submit(() -> customerService.putMoney(customerId, Money.of("1.00"))));
+                if (i % 15 == 0) {
+                    tasks.add(executor.submit(operationOutbox::drain));
+                }
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        }
+        int drainedAfterWrites = operationOutbox.drain();
+
+        assertTrue(drainedAfterWrites < deposits, "перенос не шёл параллельно с записью");
+        assertEquals(deposits / 2, operationCount(firstId));
+        assertEquals(deposits / 2, operationCount(secondId));
+        assertEquals(deposits, jdbcTemplate.queryForObject("select count(distinct ledger_seq) from operations"
+                + " where customer_id in (?, ?)", Integer.class, firstId, secondId));
+
+        List<Long> sequence = EventCollector.EVENTS.stream()
+                .filter(event -> event.customerId().equals(firstId))
+                .map(OperationEvent::ledgerSeq)
+                .toList();
+        assertEquals(deposits / 2, sequence.size());
+        assertEquals(sequence.stream().sorted().toList(), sequence);
+        assertTrue(ledgerService.findMismatches(firstId, secondId).isEmpty());
+    }
+
+    // Ошибка подписчика не теряет события: они публикуются повторно при следующем переносе, в прежнем порядке
+    @Test
+    void failedDeliveryIsRetriedOnNextDrain() {
+        customerService.putMoney(firstId, Money.of("1.00"));
+        customerService.putMoney(firstId, Money.of("2.00"));
+        customerService.putMoney(firstId, Money.of("3.00"));
+
+        EventCollector.FAILURES.set(1);
+        assertEquals(3, operationOutbox.drain());
+        assertEquals(3, operationCount(firstId));
+        assertTrue(EventCollector.EVENTS.isEmpty());
+        assertEquals(3, meterRegistry.get("outbox.undelivered").gauge().value());
+
+        assertEquals(0, operationOutbox.drain());
+        assertEquals(List.of(new BigDecimal("1.00"), new BigDecimal("2.00"), new BigDecimal("3.00")),
+                EventCollector.EVENTS.stream().map(OperationEvent::amount).toList());
+        assertEquals(0, meterRegistry.get("outbox.undelivered").gauge().value());
+    }
+
+    // Заполненная очередь недоставленных событий приостанавливает перенос: операции остаются в outbox
+    @Test
+    void fullUndeliveredQueuePausesDrain() {
+        for (int i = 1; i <= 20; i++) {
+            customerService.putMoney(firstId, Money.of(i + ".00"));
+        }
+
+        EventCollector.FAILURES.set(Integer.MAX_VALUE);
+        assertEquals(14, operationOutbox.drain());
+        assertEquals(0, operationOutbox.drain());
+        assertEquals(14, operationCount(firstId));
+        assertEquals(6, outboxCount());
+        assertEquals(14, meterRegistry.get("outbox.undelivered").gauge().value());
+
+        EventCollector.FAILURES.set(0);
+        assertEquals(6, operationOutbox.drain());
+        assertEquals(0, outboxCount());
+        List<Long> sequence = EventCollector.EVENTS.stream().map(OperationEvent::ledgerSeq).toList();
+        assertEquals(20, sequence.size());
+        assertEquals(sequence.stream().sorted().toList(), sequence);
+        assertEquals(0, meterRegistry.get("outbox.undelivered").gauge().value());
+    }
+
+    private int operationCount(Long customerId) {
+        return jdbcTemplate.queryForObject("select count(*) from operations where customer_id = ?",
+                Integer.class, customerId);
+    }
+
+    private int outboxCount() {
+        return jdbcTemplate.queryForObject("select count(*) from operation_outbox where customer_id in (?, ?)",
+                Integer.class, firstId, secondId);
+    }
+
+    private List<String> journalTypes(Long customerId) {
+        return jdbcTemplate.queryForList("select type from operations where customer_id = ? order by ledger_seq",
+                String.class, customerId);
+    }
+}
@@ -0,0 +1,137 @@
+package com.skillfactory.practice.integration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.YearMonth;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Сравнение секционированной по месяцам таблицы операций с обычной на синтетических данных.
+// Запуск: mvn test -Dtest=PartitioningLoadTests -Dloadtest=true [-Dloadtest.rows=5000000]
+// Обе таблицы создаются в отдельной схеме с теми же столбцами и индексами, что у operations: 24 месяца истории,
+// 10 000 клиентов. Замеры: история клиента за месяц, сумма операций всех клиентов за месяц,
+// VACUUM после удаления части операций последнего месяца
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+@SpringBootTest(properties = "app.generator.mode=off")
+class PartitioningLoadTests {
+
+    private static final String SCHEMA = "partitioning_load_test";
+    private static final int MONTHS = 24;
+    private static final int CUSTOMERS = 10_000;
+    private static final int ROUNDS = 200;
+    // Autovacuum отключён, чтобы не мешать замерам VACUUM
+    private static final String AUTOVACUUM_OFF = " with (autovacuum_enabled = false)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final int rows = Integer.getInteger("loadtest.rows", 5_000_000);
+    private final YearMonth lastMonth = YearMonth.now();
+    private final YearMonth firstMonth = lastMonth.minusMonths(MONTHS - 1);
+
+    @BeforeEach
+    void createTables() {
+        jdbcTemplate.execute("drop schema if exists " + SCHEMA + " cascade");
+        jdbcTemplate.execute("create schema " + SCHEMA);
+        for (String table : new String[]{"plain", "partitioned"}) {
+            jdbcTemplate.execute("create table " + SCHEMA + "." + table + " (operation_id bigint not null,"
+                    + " amount numeric(38, 2) not null, created_at timestamptz not null, type varchar(255) not null,"
+                    + " customer_id bigint not null, ledger_seq bigint not null, primary key (operation_id, created_at))"
+                    + (table.equals("partitioned") ? " partition by range (created_at)" : AUTOVACUUM_OFF));
+        }
+        for (YearMonth month = firstMonth; !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+            jdbcTemplate.execute(String.format("create table %s.partitioned_%d_%02d partition of %s.partitioned"
+                            + " for values from ('%s') to ('%s')" + AUTOVACUUM_OFF, SCHEMA, month.getYear(), month.getMonthValue(), SCHEMA,
+                    month.atDay(1), month.plusMonths(1).atDay(1)));
+        }
+
+        // Операции равномерно по времени и клиентам
+        for (String table : new String[]{"plain", "partitioned"}) {
+            jdbcTemplate.update("insert into " + SCHEMA + "." + table
+                    + " select g, (g % 1000) + 1, ?::timestamptz + ((g - 1)::float8 / ?) * (?::timestamptz - ?::timestamptz),"
+                    + " case when g % 2 = 0 then 'DEPOSIT' else 'WITHDRAWAL' end, g % ?, g"
+                    + " from generate_series(1, ?) g",
+                    firstMonth.atDay(1).toString(), rows, lastMonth.plusMonths(1).atDay(1).toString(),
+                    firstMonth.atDay(1).toString(), CUSTOMERS, rows);
+            jdbcTemplate.execute("create index on " + SCHEMA + "." + table + " (customer_id, created_at, operation_id)");
+            jdbcTemplate.execute("create index on " + SCHEMA + "." + table + " (customer_id, ledger_seq) include (type, amount)");
+        }
+        jdbcTemplate.execute("vacuum analyze " + SCHEMA + ".plain");
+        jdbcTemplate.execute("vacuum analyze " + SCHEMA + ".partitioned");
+    }
+
+    @AfterEach
+    void dropTables() {
+        jdbcTemplate.execute("drop schema if exists " + SCHEMA + " cascade");
+    }
+
+    @Test
+    void partitioningSpeedsUpRangeQueriesAndVacuum() {
+        String from = lastMonth.minusMonths(1).atDay(1).toString();
+        String to = lastMonth.atDay(1).toString();
+
+        double plainHistory = averageMillis(ROUNDS, table -> jdbcTemplate.queryForList("select operation_id, amount from "
+                + table + " where customer_id = ? and created_at >= ?::timestamptz and created_at < ?::timestamptz"
+                + " order by created_at, operation_id", randomCustomer(), from, to), "plain");
+        double partitionedHistory = averageMillis(ROUNDS, table -> jdbcTemplate.queryForList("select operation_id, amount from "
+                + table + " where customer_id = ? and created_at >= ?::timestamptz and created_at < ?::timestamptz"
+                + " order by created_at, operation_id", randomCustomer(), from, to), "partitioned");
+
+        double plainMonth = averageMillis(3, table -> jdbcTemplate.queryForObject("select sum(amount) from " + table
+                + " where created_at >= ?::timestamptz and created_at < ?::timestamptz", Object.class, from, to), "plain");
+        double partitionedMonth = averageMillis(3, table -> jdbcTemplate.queryForObject("select sum(amount) from " + table
+                + " where created_at >= ?::timestamptz and created_at < ?::timestamptz", Object.class, from, to), "partitioned");
+
+        // Удаление 10% операций последнего месяца. Autovacuum обрабатывает секции по отдельности, поэтому
+        // у секционированной таблицы сравнивается VACUUM только текущей секции, у обычной - всей таблицы.
+        // index_cleanup on - индексы чистятся всегда, даже если мёртвых строк немного
+        String lastMonthStart = lastMonth.atDay(1).toString();
+        for (String table : new String[]{"plain", "partitioned"}) {
+            jdbcTemplate.update("delete from " + SCHEMA + "." + table
+                    + " where created_at >= ?::timestamptz and operation_id % 10 = 0", lastMonthStart);
+        }
+        String currentPartition = String.format("partitioned_%d_%02d", lastMonth.getYear(), lastMonth.getMonthValue());
+        double plainVacuum = millis(() -> jdbcTemplate.execute("vacuum (index_cleanup on) " + SCHEMA + ".plain"));
+        double partitionedVacuum = millis(() -> jdbcTemplate.execute("vacuum (index_cleanup on) " + SCHEMA + "."
+                + currentPartition));
+
+        System.out.printf("%d операций, %d месяцев%n", rows, MONTHS);
+        System.out.printf("История клиента за месяц: обычная %.2f мс, секционированная %.2f мс%n",
+                plainHistory, partitionedHistory);
+        System.out.printf("Сумма за месяц по всем клиентам: обычная %.0f мс, секционированная %.0f мс%n",
+                plainMonth, partitionedMonth);
+        System.out.printf("VACUUM после удаления в последнем месяце: обычная %.0f мс, текущая секция %.0f мс%n",
+                plainVacuum, partitionedVacuum);
+
+        assertTrue(partitionedMonth < plainMonth);
+        assertTrue(partitionedVacuum < plainVacuum);
+    }
+
+    private double averageMillis(int rounds, Consumer<String> query, String table) {
+        String qualified = SCHEMA + "." + table;
+        query.accept(qualified);
+        long started = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            query.accept(qualified);
+        }
+        return (System.nanoTime() - started) / 1_000_000.0 / rounds;
+    }
+
+    private static double millis(Runnable action) {
+        long started = System.nanoTime();
+        action.run();
+        return (System.nanoTime() - started) / 1_000_000.0;
+    }
+
+    private static long randomCustomer() {
+        return ThreadLocalRandom.current().nextInt(CUSTOMERS);
+    }
+}
@@ -0,0 +1,162 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.config.ApiJsonConfig;
+import com.skillfactory.practice.dto.BalanceView;
+import com.skillfactory.practice.dto.OperationPage;
+import com.skillfactory.practice.dto.OperationView;
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.enums.OperationType;
+import com.skillfactory.practice.repository.CustomerRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Реактивный вариант API (профиль reactive) на реальной БД через HTTP
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.r2dbc.pool.max-size=5", "spring.datasource.hikari.maximum-pool-size=2"})
+@ActiveProfiles("reactive")
+class ReactiveApiTests {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long senderId;
+    private Long recipientId;
+
+    @BeforeEach
+    void setup() {
+        senderId = customerRepository.save(new Customer(Money.of("100.00"))).getId();
+        recipientId = customerRepository.save(new Customer(Money.of("0.00"))).getId();
+    }
+
+    @AfterEach
+    void cleanup() {
+        jdbcTemplate.update("delete from operations where customer_id in (?, ?)", senderId, recipientId);
+        jdbcTemplate.update("delete from customer where id in (?, ?)", senderId, recipientId);
+    }
+
+    @Test
+    void balanceAndMissingCustomer() {
+        webTestClient.get().uri("/api/customers/{id}/balance", senderId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BalanceView.class).isEqualTo(BalanceView.rub(senderId, Money.of("100.00")));
+
+        webTestClient.get().uri("/api/customers/{id}/balance", senderId)
+                .accept(MediaType.TEXT_PLAIN)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).value(body -> assertTrue(body.contains("100"), body));
+
+        webTestClient.get().uri("/api/customers/{id}/balance", Long.MAX_VALUE)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void putTakeAndHistory() {
+        post("/api/customers/{id}/putmoney?amount=50.00", senderId).expectStatus().isOk();
+        post("/api/customers/{id}/takemoney?amount=30.00", senderId).expectStatus().isOk();
+        post("/api/customers/{id}/takemoney?amount=1000.00", senderId).expectStatus().isBadRequest();
+
+        assertEquals(0, new BigDecimal("120.00").compareTo(balance(senderId)));
+
+        List<OperationView> history = webTestClient.get().uri("/api/customers/{id}/operations", senderId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(OperationView.class)
+                .returnResult().getResponseBody();
+        assertNotNull(history);
+        assertEquals(List.of(OperationType.DEPOSIT, OperationType.WITHDRAWAL),
+                history.stream().map(OperationView::type).toList());
+
+        OperationPage page = webTestClient.get().uri("/api/customers/{id}/operations?limit=1", senderId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(OperationPage.class)
+                .returnResult().getResponseBody();
+        assertNotNull(page);
+        assertEquals(1, page.items().size());
+        assertEquals(history.get(0).operationId(), page.items().get(0).operationId());
+        assertNotNull(page.nextCursor());
+
+        OperationPage next = webTestClient.get()
+                .uri(uri -> uri.path("/api/customers/{id}/operations")
+                        .queryParam("limit", 1)
+                        .queryParam("after", page.nextCursor())
+                        .build(senderId))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(OperationPage.class)
+                .returnResult().getResponseBody();
+        assertNotNull(next);
+        assertEquals(history.get(1).operationId(), next.items().get(0).operationId());
+
+        webTestClient.get().uri("/api/customers/{id}/operations", senderId)
+                .accept(ApiJsonConfig.V1_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(ApiJsonConfig.V1_JSON)
+                .expectBody(String.class).value(body -> assertTrue(
+                        body.startsWith("[[" + history.get(0).operationId() + ",\"DEPOSIT\",50.00,"), body));
+
+        webTestClient.get().uri("/api/customers/{id}/operations?from=bad", senderId)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    // Встречные переводы не теряют деньги и не превышают баланс отправителя
+    @Test
+    void concurrentTransfersKeepTotal() throws Exception {
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<?>> futures = new java.util.ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                boolean forward = i % 2 == 0;
+                futures.add(executor.submit(() -> post("/api/customers/{from}/transfermoney/{to}?amount=10.00",
+                        forward ? senderId : recipientId, forward ? recipientId : senderId)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        BigDecimal sender = balance(senderId);
+        BigDecimal recipient = balance(recipientId);
+        assertEquals(0, new BigDecimal("100.00").compareTo(sender.add(recipient)));
+        assertTrue(sender.signum() >= 0 && recipient.signum() >= 0);
+
+        post("/api/customers/{from}/transfermoney/{to}?amount=1000.00", senderId, recipientId)
+                .expectStatus().isBadRequest();
+        post("/api/customers/{from}/transfermoney/{to}?amount=1.00", senderId, Long.MAX_VALUE)
+                .expectStatus().isBadRequest();
+    }
+
+    private WebTestClient.ResponseSpec post(String uri, Object... variables) {
+        return webTestClient.post().uri(uri, variables).exchange();
+    }
+
+    private BigDecimal balance(Long customerId) {
+        return jdbcTemplate.queryForObject("select balance from customer where id = ?", BigDecimal.class, customerId);
+    }
+}
@@ -0,0 +1,35 @@
+package com.skillfactory.practice.integration;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Запоминает SQL, подготовленный Hibernate. Подключается свойством hibernate.session_factory.statement_inspector
+public class RecordingStatementInspector implements StatementInspector {
+
+    private static final List<String> STATEMENTS = new ArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        synchronized (STATEMENTS) {
+            STATEMENTS.add(sql);
+        }
+        return sql;
+    }
+
+    public static void clear() {
+        synchronized (STATEMENTS) {
+            STATEMENTS.clear();
+        }
+    }
+
+    // Выполненные запросы без обращений к последовательностям ID (они случаются раз в 50 вставок)
+    public static List<String> statementsWithoutSequenceCalls() {
+        synchronized (STATEMENTS) {
+            return STATEMENTS.stream()
+                    .filter(sql -> !sql.contains("nextval"))
+                    .toList();
+        }
+    }
+}
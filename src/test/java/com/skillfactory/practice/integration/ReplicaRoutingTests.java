@@ -0,0 +1,143 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.config.ReplicaDataSource;
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.service.CustomerService;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Маршрутизация чтения на реплики. Вместо реплики - та же локальная БД, соединения которой отличаются
+// ApplicationName, и недоступный адрес как отказавшая реплика
+@SpringBootTest(properties = {
+        "app.replicas.urls=jdbc:postgresql://localhost:5432/MoneyService?ApplicationName=" + ReplicaRoutingTests.REPLICA
+                + ",jdbc:postgresql://localhost:1/MoneyService",
+        "app.replicas.connection-timeout=250ms",
+        "app.replicas.check-interval=200ms",
+        "app.replicas.maximum-pool-size=2",
+        "spring.datasource.hikari.maximum-pool-size=2"})
+class ReplicaRoutingTests {
+
+    static final String REPLICA = "replica-stand-in";
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private HikariDataSource primaryDataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Long customerId;
+
+    @BeforeEach
+    void setup() {
+        customerId = customerRepository.save(new Customer(Money.ZERO)).getId();
+    }
+
+    @AfterEach
+    void cleanup() {
+        jdbcTemplate.update("delete from operations where customer_id = ?", customerId);
+        jdbcTemplate.update("delete from customer where id = ?", customerId);
+    }
+
+    // Транзакция только для чтения получает соединение реплики, остальные - основной БД
+    @Test
+    void readOnlyTransactionsUseReplica() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        assertEquals(REPLICA, readOnly.execute(status -> applicationName()));
+        assertNotEquals(REPLICA, new TransactionTemplate(transactionManager).execute(status -> applicationName()));
+        assertNotEquals(REPLICA, applicationName());
+    }
+
+    // История читается с доступной реплики, отказавшая реплика пропускается, деньги движутся на основной БД
+    @Test
+    void historyReadsGoToAvailableReplica() {
+        double replicaConnections = replicaConnections(1);
+        customerService.putMoney(customerId, Money.of("10.00"));
+        assertEquals(replicaConnections, replicaConnections(1));
+
+        assertEquals(1, customerService.getOperationList(customerId, null, null).size());
+        assertEquals(1, customerService.getOperationPage(customerId, null, 10).items().size());
+        assertEquals(replicaConnections + 2, replicaConnections(1));
+
+        assertEquals(0, meterRegistry.get("db.replica.available").tag("replica", "money-pool-replica-2").gauge().value());
+        assertEquals(0, replicaConnections(2));
+    }
+
+    // Без доступных реплик и при отставании больше допустимого чтение идёт на основную БД
+    @Test
+    void fallsBackToPrimary() throws Exception {
+        try (HikariDataSource replica = replicaPool("stale-replica"); HikariDataSource deadReplica = replicaPool("dead-replica")) {
+            deadReplica.setJdbcUrl("jdbc:postgresql://localhost:1/MoneyService");
+
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            try (ReplicaDataSource stale = new ReplicaDataSource(primaryDataSource, List.of(replica), Duration.ofSeconds(5),
+                    Duration.ofHours(1), "select 60000", registry);
+                 ReplicaDataSource down = new ReplicaDataSource(primaryDataSource, List.of(deadReplica),
+                         Duration.ofSeconds(5), Duration.ofHours(1), ReplicaDataSource.DEFAULT_LAG_QUERY, registry)) {
+                assertNotEquals(REPLICA, applicationName(stale));
+                assertNotEquals(REPLICA, applicationName(down));
+                assertEquals(2, registry.get("db.replica.fallback").counter().count());
+            }
+        }
+    }
+
+    private String applicationName() {
+        return jdbcTemplate.queryForObject("select current_setting('application_name')", String.class);
+    }
+
+    private static String applicationName(ReplicaDataSource dataSource) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("select current_setting('application_name')")) {
+            result.next();
+            return result.getString(1);
+        }
+    }
+
+    private static HikariDataSource replicaPool(String name) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName(name);
+        pool.setJdbcUrl("jdbc:postgresql://localhost:5432/MoneyService?ApplicationName=" + REPLICA);
+        pool.setUsername("postgres");
+        pool.setPassword("12345");
+        pool.setConnectionTimeout(250);
+        pool.setInitializationFailTimeout(-1);
+        return pool;
+    }
+
+    private double replicaConnections(int replica) {
+        return meterRegistry.get("db.replica.connections").tag("replica", "money-pool-replica-" + replica)
+                .counter().count();
+    }
+}
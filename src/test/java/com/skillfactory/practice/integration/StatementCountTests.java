@@ -0,0 +1,94 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.repository.OperationRepository;
+import com.skillfactory.practice.service.CustomerService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Проверяем количество SQL-запросов на операцию с помощью статистики Hibernate
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.skillfactory.practice.integration.RecordingStatementInspector"
+})
+class StatementCountTests {
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private OperationRepository operationRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private Long customerId;
+
+    @BeforeEach
+    void setup() {
+        customerId = customerRepository.save(new Customer(Money.of("100.00"))).getId();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        RecordingStatementInspector.clear();
+    }
+
+    @AfterEach
+    void cleanup() {
+        operationRepository.deleteAll(operationRepository.findAllByCustomer_Id(customerId));
+        customerRepository.deleteById(customerId);
+    }
+
+    // Пополнение: один UPDATE и один INSERT
+    @Test
+    void depositUsesOneUpdateAndOneInsert() {
+        customerService.putMoney(customerId, Money.of("50.00"));
+
+        assertUpdateAndInsert(RecordingStatementInspector.statementsWithoutSequenceCalls());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(Money.of("150.00"), customerService.getBalance(customerId).orElseThrow());
+    }
+
+    // Снятие: один UPDATE и один INSERT
+    @Test
+    void withdrawalUsesOneUpdateAndOneInsert() {
+        assertTrue(customerService.takeMoney(customerId, Money.of("40.00")));
+
+        assertUpdateAndInsert(RecordingStatementInspector.statementsWithoutSequenceCalls());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(Money.of("60.00"), customerService.getBalance(customerId).orElseThrow());
+    }
+
+    // Снятие при недостатке средств: только UPDATE, который не изменил ни одной строки
+    @Test
+    void rejectedWithdrawalUsesSingleUpdate() {
+        assertFalse(customerService.takeMoney(customerId, Money.of("150.00")));
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(1, RecordingStatementInspector.statementsWithoutSequenceCalls().size());
+        assertEquals(Money.of("100.00"), customerService.getBalance(customerId).orElseThrow());
+    }
+
+    // ID операции берётся из последовательности блоками по 50, поэтому обращения к ней в подсчёт не входят
+    private static void assertUpdateAndInsert(List<String> statements) {
+        assertEquals(2, statements.size(), statements::toString);
+        assertTrue(statements.get(0).startsWith("update customer"), statements.get(0));
+        assertTrue(statements.get(1).startsWith("insert into operations"), statements.get(1));
+    }
+}
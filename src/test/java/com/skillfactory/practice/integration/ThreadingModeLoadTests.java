@@ -0,0 +1,170 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.PracticeApplication;
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.repository.CustomerRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Нагрузочное сравнение обработки запросов на потоках платформы, на виртуальных потоках
+// и в реактивном варианте (профиль reactive, WebFlux + R2DBC).
+// Запуск: mvn test -Dtest=ThreadingModeLoadTests -Dloadtest=true [-Dloadtest.clients=1000,5000,10000]
+// Каждый клиент в цикле выполняет чтение баланса и пополнение случайного клиента, в отчёте -
+// пропускная способность, перцентили задержки и количество ошибок для каждого режима и числа клиентов
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class ThreadingModeLoadTests {
+
+    private static final int CUSTOMERS = 1000;
+    private static final Duration WARMUP = Duration.ofSeconds(5);
+    private static final Duration MEASUREMENT = Duration.ofSeconds(15);
+
+    private enum Mode {
+        PLATFORM("Платформенные потоки"),
+        VIRTUAL("Виртуальные потоки"),
+        REACTIVE("WebFlux + R2DBC");
+
+        private final String title;
+
+        Mode(String title) {
+            this.title = title;
+        }
+    }
+
+    @Test
+    void compareThreadingModes() throws Exception {
+        int[] clients = Arrays.stream(System.getProperty("loadtest.clients", "1000,5000,10000").split(","))
+                .mapToInt(Integer::parseInt)
+                .toArray();
+
+        for (Mode mode : Mode.values()) {
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(PracticeApplication.class)
+                    .profiles(mode == Mode.REACTIVE ? "reactive" : "default")
+                    .properties("server.port=0",
+                            "spring.threads.virtual.enabled=" + (mode == Mode.VIRTUAL),
+                            "server.tomcat.max-connections=20000",
+                            "app.generator.mode=off",
+                            "spring.jpa.show-sql=false",
+                            "logging.level.root=warn")
+                    .run()) {
+                int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+                long[] customerIds = createCustomers(context);
+                try {
+                    for (int clientCount : clients) {
+                        run(port, customerIds, clientCount, WARMUP);
+                        Result result = run(port, customerIds, clientCount, MEASUREMENT);
+                        System.out.printf("%s, %d клиентов: %s%n", mode.title, clientCount, result);
+                        assertTrue(result.requests() > 0);
+                    }
+                } finally {
+                    deleteCustomers(context, customerIds);
+                }
+            }
+        }
+    }
+
+    private static Result run(int port, long[] customerIds, int clientCount, Duration duration) throws Exception {
+        long deadline = System.nanoTime() + duration.toNanos();
+        AtomicLong errors = new AtomicLong();
+        List<long[]> latencies = new ArrayList<>();
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient http = HttpClient.newBuilder()
+                     .executor(clients)
+                     .connectTimeout(Duration.ofSeconds(30))
+                     .build()) {
+            List<java.util.concurrent.Future<long[]>> futures = new ArrayList<>();
+            for (int i = 0; i < clientCount; i++) {
+                futures.add(clients.submit(() -> client(http, port, customerIds, deadline, errors)));
+            }
+            for (java.util.concurrent.Future<long[]> future : futures) {
+                latencies.add(future.get());
+            }
+        }
+
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Result(all.length, all.length * 1_000_000_000.0 / duration.toNanos(),
+                percentile(all, 0.50), percentile(all, 0.99), errors.get());
+    }
+
+    // Один клиент: запросы по очереди до истечения времени, возвращает задержки успешных запросов в наносекундах
+    private static long[] client(HttpClient http, int port, long[] customerIds, long deadline, AtomicLong errors) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] latencies = new long[1024];
+        int count = 0;
+        while (System.nanoTime() < deadline) {
+            long customerId = customerIds[random.nextInt(customerIds.length)];
+            HttpRequest request = random.nextBoolean()
+                    ? HttpRequest.newBuilder(URI.create("http://localhost:" + port
+                            + "/api/customers/" + customerId + "/balance")).GET().build()
+                    : HttpRequest.newBuilder(URI.create("http://localhost:" + port
+                            + "/api/customers/" + customerId + "/putmoney?amount=1.00"))
+                            .POST(HttpRequest.BodyPublishers.noBody()).build();
+            long start = System.nanoTime();
+            try {
+                HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() != 200) {
+                    errors.incrementAndGet();
+                    continue;
+                }
+            } catch (Exception e) {
+                errors.incrementAndGet();
+                continue;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = System.nanoTime() - start;
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private static long[] createCustomers(ConfigurableApplicationContext context) {
+        CustomerRepository repository = context.getBean(CustomerRepository.class);
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers.add(new Customer(Money.ZERO));
+        }
+        return repository.saveAll(customers).stream().mapToLong(Customer::getId).toArray();
+    }
+
+    private static void deleteCustomers(ConfigurableApplicationContext context, long[] customerIds) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        Long[] ids = Arrays.stream(customerIds).boxed().toArray(Long[]::new);
+        jdbcTemplate.update("delete from operations where customer_id = any(?)", (Object) ids);
+        jdbcTemplate.update("delete from customer where id = any(?)", (Object) ids);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(quantile * (sorted.length - 1)))] / 1_000_000.0;
+    }
+
+    private record Result(long requests, double throughput, double p50Millis, double p99Millis, long errors) {
+        @Override
+        public String toString() {
+            return String.format("%.0f запросов/с, p50 %.1f мс, p99 %.1f мс, ошибок %d",
+                    throughput, p50Millis, p99Millis, errors);
+        }
+    }
+}
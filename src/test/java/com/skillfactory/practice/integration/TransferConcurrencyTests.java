@@ -0,0 +1,145 @@
+package com.skillfactory.practice.integration;
+
+import com.skillfactory.practice.dto.TransferRequest;
+import com.skillfactory.practice.dto.TransferResult;
+import com.skillfactory.practice.entity.Customer;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.enums.TransferStatus;
+import com.skillfactory.practice.repository.CustomerRepository;
+import com.skillfactory.practice.repository.OperationRepository;
+import com.skillfactory.practice.service.CustomerService;
+import com.skillfactory.practice.service.TransferBatchService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Нагрузочный тест переводов на реальной БД: деньги не должны появляться и исчезать
+@SpringBootTest
+class TransferConcurrencyTests {
+
+    private static final int CUSTOMERS = 10;
+    private static final int THREADS = 16;
+    private static final int TRANSFERS_PER_THREAD = 200;
+    private static final Money INITIAL_BALANCE = Money.of("1000.00");
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private OperationRepository operationRepository;
+
+    @Autowired
+    private TransferBatchService transferBatchService;
+
+    private final List<Long> customerIds = new ArrayList<>();
+
+    @BeforeEach
+    void createCustomers() {
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customerIds.add(customerRepository.save(new Customer(INITIAL_BALANCE)).getId());
+        }
+    }
+
+    @AfterEach
+    void deleteCustomers() {
+        for (Long customerId : customerIds) {
+            operationRepository.deleteAll(operationRepository.findAllByCustomer_Id(customerId));
+            customerRepository.deleteById(customerId);
+        }
+    }
+
+    // Тестируем, что при параллельных встречных переводах сумма балансов не меняется и не уходит в минус
+    @Test
+    void concurrentTransfersPreserveTotalBalance() throws Exception {
+        AtomicInteger successfulTransfers = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    Long senderId = customerIds.get(random.nextInt(CUSTOMERS));
+                    Long recipientId = customerIds.get(random.nextInt(CUSTOMERS));
+                    Money amount = Money.ofMinorUnits(random.nextInt(1, 300) * 100L);
+                    if (customerService.transferMoney(senderId, recipientId, amount)) {
+                        successfulTransfers.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        Money total = Money.ZERO;
+        int operations = 0;
+        for (Long customerId : customerIds) {
+            Money balance = customerService.getBalance(customerId).orElseThrow();
+            assertTrue(balance.signum() >= 0, "Отрицательный баланс у клиента " + customerId);
+            total = total.plus(balance);
+            operations += operationRepository.findAllByCustomer_Id(customerId).size();
+        }
+
+        assertEquals(Money.ofMinorUnits(INITIAL_BALANCE.minorUnits() * CUSTOMERS), total);
+        assertEquals(successfulTransfers.get() * 2, operations);
+    }
+
+    // Тестируем параллельные пакеты переводов с пересекающимися участниками в произвольном порядке:
+    // взаимоблокировок нет, сумма балансов сохраняется
+    @Test
+    void concurrentTransferBatchesPreserveTotalBalance() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<List<TransferResult>>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<TransferRequest> batch = new ArrayList<>();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    batch.add(new TransferRequest(customerIds.get(random.nextInt(CUSTOMERS)),
+                            customerIds.get(random.nextInt(CUSTOMERS)), Money.ofMinorUnits(random.nextInt(1, 300) * 100L)));
+                }
+                return transferBatchService.transfer(batch);
+            }));
+        }
+
+        long completed = 0;
+        for (Future<List<TransferResult>> future : futures) {
+            List<TransferResult> results = future.get();
+            assertEquals(TRANSFERS_PER_THREAD, results.size());
+            completed += results.stream().filter(result -> result.status() == TransferStatus.COMPLETED).count();
+        }
+        executor.shutdown();
+
+        Money total = Money.ZERO;
+        int operations = 0;
+        for (Long customerId : customerIds) {
+            Money balance = customerService.getBalance(customerId).orElseThrow();
+            assertTrue(balance.signum() >= 0, "Отрицательный баланс у клиента " + customerId);
+            total = total.plus(balance);
+            operations += operationRepository.findAllByCustomer_Id(customerId).size();
+        }
+
+        assertEquals(Money.ofMinorUnits(INITIAL_BALANCE.minorUnits() * CUSTOMERS), total);
+        assertEquals(completed * 2, operations);
+    }
+}
@@ -1,18 +1,29 @@
 package com.skillfactory.practice.service;
 
+import com.skillfactory.practice.dto.OperationHistory;
+import com.skillfactory.practice.dto.OperationView;
+import com.skillfactory.practice.dto.TransferRequest;
+import com.skillfactory.practice.dto.TransferResult;
+import com.skillfactory.practice.entity.Money;
+import com.skillfactory.practice.enums.OperationType;
+import com.skillfactory.practice.enums.TransferStatus;
 import com.skillfactory.practice.repository.CustomerRepository;
 import com.skillfactory.practice.repository.OperationRepository;
 import com.skillfactory.practice.entity.Customer;
 import com.skillfactory.practice.entity.Operation;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
 
-import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -20,6 +31,7 @@ import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,6 +46,31 @@ class CustomerServiceTest {
     @Mock
     private OperationRepository operationRepository;
 
+    @Mock
+    private OperationOutbox operationOutbox;
+
+    @Mock
+    private AccountEngine accountEngine;
+
+    @Spy
+    private MoneyMetrics metrics = new MoneyMetrics(new SimpleMeterRegistry());
+
+    @Spy
+    private CustomerLocks customerLocks = new CustomerLocks(16, metrics);
+
+    @Spy
+    private BalanceCache balanceCache = new BalanceCache(false, 0, Duration.ZERO, new SimpleMeterRegistry());
+
+    @Mock
+    private OperationTotalsService totalsService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private OperationHistoryCache historyCache = new OperationHistoryCache(true, 1000, Duration.ofHours(1),
+            Duration.ofMinutes(10), new SimpleMeterRegistry());
+
     @BeforeEach
     void setup() {}
 
@@ -41,10 +78,10 @@ class CustomerServiceTest {
     @Test
     void returnBalanceWhenCustomerExists() {
         long customerId = 1L;
-        BigDecimal balance = new BigDecimal("100.00");
+        Money balance = Money.of("100.00");
         when(customerRepository.findById(customerId)).thenReturn(Optional.of(new Customer(balance)));
 
-        Optional<BigDecimal> actualBalance = service.getBalance(customerId);
+        Optional<Money> actualBalance = service.getBalance(customerId);
 
         assertEquals(Optional.of(balance), actualBalance);
     }
@@ -55,7 +92,7 @@ class CustomerServiceTest {
         long customerId = 1L;
         when(customerRepository.findById(customerId)).thenReturn(Optional.empty());
 
-        Optional<BigDecimal> actualBalance = service.getBalance(customerId);
+        Optional<Money> actualBalance = service.getBalance(customerId);
 
         assertTrue(actualBalance.isEmpty());
     }
@@ -64,50 +101,52 @@ class CustomerServiceTest {
     @Test
     void depositMoneySuccessfully() {
         long customerId = 1L;
-        BigDecimal currentBalance = new BigDecimal("100.00");
-        BigDecimal depositAmount = new BigDecimal("50.00");
-        BigDecimal expectedBalance = currentBalance.add(depositAmount);
+        Money depositAmount = Money.of("50.00");
+        when(customerRepository.deposit(customerId, depositAmount)).thenReturn(1);
 
-        Customer customer = new Customer(currentBalance);
-        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+        service.putMoney(customerId, depositAmount);
+
+        verify(customerRepository, never()).findById(any());
+        verify(customerRepository).getReferenceById(customerId);
+        verify(operationRepository).save(any(Operation.class));
+    }
+
+    // Тестируем, что пополнение несуществующего клиента не создаёт операцию
+    @Test
+    void skipOperationWhenDepositCustomerDoesntExist() {
+        long customerId = 1L;
+        Money depositAmount = Money.of("50.00");
+        when(customerRepository.deposit(customerId, depositAmount)).thenReturn(0);
 
         service.putMoney(customerId, depositAmount);
 
-        verify(customerRepository).save(customer);
-        assertEquals(expectedBalance, customer.getBalance());
+        verify(operationRepository, never()).save(any());
     }
 
     // Тестируем снятие средств со счета клиента
     @Test
     void withdrawMoneySuccessfully() {
         long customerId = 1L;
-        BigDecimal currentBalance = new BigDecimal("100.00");
-        BigDecimal withdrawAmount = new BigDecimal("50.00");
-        BigDecimal expectedBalance = currentBalance.subtract(withdrawAmount);
-
-        Customer customer = new Customer(currentBalance);
-        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+        Money withdrawAmount = Money.of("50.00");
+        when(customerRepository.withdraw(customerId, withdrawAmount)).thenReturn(1);
 
         boolean success = service.takeMoney(customerId, withdrawAmount);
 
-        verify(customerRepository).save(customer);
         assertTrue(success);
-        assertEquals(expectedBalance, customer.getBalance());
+        verify(customerRepository, never()).findById(any());
+        verify(operationRepository).save(any(Operation.class));
     }
 
     // Тестируем списание денег больше, чем есть на счете клиента
     @Test
     void failWithdrawIfInsufficientFunds() {
         long customerId = 1L;
-        BigDecimal currentBalance = new BigDecimal("100.00");
-        BigDecimal withdrawAmount = new BigDecimal("150.00");
-
-        Customer customer = new Customer(currentBalance);
-        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+        Money withdrawAmount = Money.of("150.00");
+        when(customerRepository.withdraw(customerId, withdrawAmount)).thenReturn(0);
 
         boolean success = service.takeMoney(customerId, withdrawAmount);
 
-        verify(customerRepository, never()).save(any());
+        verify(operationRepository, never()).save(any());
         assertFalse(success);
     }
 
@@ -116,21 +155,21 @@ class CustomerServiceTest {
     void transferMoneySuccessfully() {
         long senderId = 1L;
         long recipientId = 2L;
-        BigDecimal transferAmount = new BigDecimal("50.00");
+        Money transferAmount = Money.of("50.00");
 
-        Customer sender = new Customer(new BigDecimal("100.00"));
-        Customer recipient = new Customer(new BigDecimal("80.00"));
+        Customer sender = new Customer(Money.of("100.00"));
+        Customer recipient = new Customer(Money.of("80.00"));
 
-        when(customerRepository.findById(senderId)).thenReturn(Optional.of(sender));
-        when(customerRepository.findById(recipientId)).thenReturn(Optional.of(recipient));
+        when(customerRepository.findByIdForUpdate(senderId)).thenReturn(Optional.of(sender));
+        when(customerRepository.findByIdForUpdate(recipientId)).thenReturn(Optional.of(recipient));
 
         boolean success = service.transferMoney(senderId, recipientId, transferAmount);
 
         verify(customerRepository).save(sender);
         verify(customerRepository).save(recipient);
         assertTrue(success);
-        assertEquals(new BigDecimal("50.00"), sender.getBalance());
-        assertEquals(new BigDecimal("130.00"), recipient.getBalance());
+        assertEquals(Money.of("50.00"), sender.getBalance());
+        assertEquals(Money.of("130.00"), recipient.getBalance());
     }
 
     // Тестируем попытку перевода средств больше, чем есть на счете клиента
@@ -138,13 +177,13 @@ class CustomerServiceTest {
     void failTransferIfSenderHasNoEnoughFunds() {
         long senderId = 1L;
         long recipientId = 2L;
-        BigDecimal transferAmount = new BigDecimal("150.00");
+        Money transferAmount = Money.of("150.00");
 
-        Customer sender = new Customer(new BigDecimal("100.00"));
-        Customer recipient = new Customer(new BigDecimal("80.00"));
+        Customer sender = new Customer(Money.of("100.00"));
+        Customer recipient = new Customer(Money.of("80.00"));
 
-        when(customerRepository.findById(senderId)).thenReturn(Optional.of(sender));
-        when(customerRepository.findById(recipientId)).thenReturn(Optional.of(recipient));
+        when(customerRepository.findByIdForUpdate(senderId)).thenReturn(Optional.of(sender));
+        when(customerRepository.findByIdForUpdate(recipientId)).thenReturn(Optional.of(recipient));
 
         boolean success = service.transferMoney(senderId, recipientId, transferAmount);
 
@@ -152,6 +191,29 @@ class CustomerServiceTest {
         assertFalse(success);
     }
 
+    // Тестируем пакет переводов: переводы применяются по очереди, операции сохраняются одним вызовом
+    @Test
+    void applyTransferBatchWithPerItemResults() {
+        Customer first = new Customer(1L, Money.of("100.00"));
+        Customer second = new Customer(2L, Money.of("10.00"));
+        when(customerRepository.findAllByIdForUpdate(List.of(1L, 2L, 3L))).thenReturn(List.of(first, second));
+
+        List<TransferResult> results = service.applyTransfers(List.of(
+                new TransferRequest(1L, 2L, Money.of("60.00")),
+                new TransferRequest(1L, 2L, Money.of("60.00")),
+                new TransferRequest(2L, 3L, Money.of("1.00")),
+                new TransferRequest(2L, 1L, Money.of("-5.00")),
+                new TransferRequest(2L, 1L, Money.of("70.00"))), 10);
+
+        assertEquals(List.of(TransferStatus.COMPLETED, TransferStatus.INSUFFICIENT_FUNDS,
+                        TransferStatus.CUSTOMER_NOT_FOUND, TransferStatus.INVALID_AMOUNT, TransferStatus.COMPLETED),
+                results.stream().map(TransferResult::status).toList());
+        assertEquals(10, results.get(0).index());
+        assertEquals(Money.of("110.00"), first.getBalance());
+        assertEquals(Money.of("0.00"), second.getBalance());
+        verify(operationRepository).saveAll(argThat(operations -> ((List<?>) operations).size() == 4));
+    }
+
     // Тестируем получение списка операций за период
     @Test
     void shouldRetrieveOperationsWithinGivenPeriod() {
@@ -159,25 +221,86 @@ class CustomerServiceTest {
         LocalDateTime startDate = LocalDateTime.now().minusDays(7);
         LocalDateTime endDate = LocalDateTime.now();
 
-        List<Operation> operations = new ArrayList<>();
-        when(operationRepository.findByCustomer_IdAndCreatedAtBetween(customerId, startDate, endDate))
+        List<OperationView> operations = new ArrayList<>();
+        when(operationRepository.findViewsByCustomerIdAndCreatedAtBetween(customerId, startDate, endDate,
+                Limit.of(CustomerService.MAX_OPERATION_LIST)))
                 .thenReturn(operations);
 
-        List<Operation> retrievedOperations = service.getOperationList(customerId, startDate, endDate);
+        List<OperationView> retrievedOperations = service.getOperationList(customerId, startDate, endDate);
 
         assertEquals(retrievedOperations, operations);
     }
 
+    // Тестируем, что период только с одной границей читается отдельным запросом, без null во второй границе
+    @Test
+    void shouldRetrieveOperationsForOpenEndedPeriod() {
+        long customerId = 1L;
+        LocalDateTime startDate = LocalDateTime.now().minusDays(7);
+        Limit limit = Limit.of(CustomerService.MAX_OPERATION_LIST);
+
+        List<OperationView> fromOperations = new ArrayList<>();
+        List<OperationView> untilOperations = new ArrayList<>();
+        when(operationRepository.findViewsByCustomerIdAndCreatedAtFrom(customerId, startDate, limit))
+                .thenReturn(fromOperations);
+        when(operationRepository.findViewsByCustomerIdAndCreatedAtUntil(customerId, startDate, limit))
+                .thenReturn(untilOperations);
+
+        assertSame(fromOperations, service.getOperationList(customerId, startDate, null));
+        assertSame(untilOperations, service.getOperationList(customerId, null, startDate));
+        verify(operationRepository, never()).findViewsByCustomerIdAndCreatedAtBetween(any(), any(), any(), any());
+    }
+
     // Тестируем получение списка всех операций
     @Test
     void shouldRetrieveAllOperationsForCustomer() {
         long customerId = 1L;
 
-        List<Operation> operations = new ArrayList<>();
-        when(operationRepository.findAllByCustomer_Id(customerId)).thenReturn(operations);
+        List<OperationView> operations = new ArrayList<>();
+        when(operationRepository.findViewsByCustomerId(customerId, Limit.of(CustomerService.MAX_OPERATION_LIST)))
+                .thenReturn(operations);
 
-        List<Operation> retrievedOperations = service.getOperationList(customerId, null, null);
+        List<OperationView> retrievedOperations = service.getOperationList(customerId, null, null);
 
         assertEquals(retrievedOperations, operations);
     }
-}
\ No newline at end of file
+
+    // Тестируем историю с версией: известная клиенту версия - без чтения операций, закрытый период - из кэша
+    // до смены версии, открытый период не кэшируется
+    @Test
+    void shouldServeOperationHistoryByVersion() {
+        long customerId = 1L;
+        LocalDateTime startDate = LocalDateTime.now().minusDays(7);
+        LocalDateTime endDate = LocalDateTime.now().minusDays(1);
+        Limit limit = Limit.of(CustomerService.MAX_OPERATION_LIST);
+        List<OperationView> operations = List.of(new OperationView(10L, OperationType.DEPOSIT, Money.of("5.00"),
+                startDate.plusDays(1)));
+        when(operationRepository.findViewsByCustomerIdAndCreatedAtBetween(customerId, startDate, endDate, limit))
+                .thenReturn(operations);
+        when(operationRepository.findViewsByCustomerIdAndCreatedAtFrom(customerId, startDate, limit))
+                .thenReturn(operations);
+        when(totalsService.historyVersion(customerId, startDate, endDate)).thenReturn("1-a", "1-a", "1-a", "2-b");
+        when(totalsService.historyVersion(customerId, startDate, null)).thenReturn("1-a");
+
+        OperationHistory notModified = service.getOperationHistory(customerId, startDate, endDate, "1-a"::equals);
+        assertTrue(notModified.notModified());
+        assertTrue(notModified.closed());
+        verify(operationRepository, never()).findViewsByCustomerIdAndCreatedAtBetween(any(), any(), any(), any());
+
+        assertEquals(operations, service.getOperationHistory(customerId, startDate, endDate, version -> false)
+                .operations());
+        assertEquals(operations, service.getOperationHistory(customerId, startDate, endDate, version -> false)
+                .operations());
+        verify(operationRepository, times(1)).findViewsByCustomerIdAndCreatedAtBetween(customerId, startDate, endDate,
+                limit);
+
+        OperationHistory changed = service.getOperationHistory(customerId, startDate, endDate, "1-a"::equals);
+        assertEquals("2-b", changed.version());
+        assertEquals(operations, changed.operations());
+        verify(operationRepository, times(2)).findViewsByCustomerIdAndCreatedAtBetween(customerId, startDate, endDate,
+                limit);
+
+        assertFalse(service.getOperationHistory(customerId, startDate, null, version -> false).closed());
+        service.getOperationHistory(customerId, startDate, null, version -> false);
+        verify(operationRepository, times(2)).findViewsByCustomerIdAndCreatedAtFrom(customerId, startDate, limit);
+    }
+}